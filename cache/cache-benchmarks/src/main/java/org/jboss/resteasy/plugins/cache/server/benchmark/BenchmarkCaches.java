@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server.benchmark;
+
+import java.io.IOException;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.parsing.ConfigurationBuilderHolder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.jboss.resteasy.plugins.cache.server.InfinispanCache;
+import org.jboss.resteasy.plugins.cache.server.LocalServerCache;
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+
+/**
+ * Creates the {@link ServerCache} implementations the benchmarks are parameterized with, along with the response and
+ * request headers the benchmarks cache and look up entries with.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class BenchmarkCaches {
+    /**
+     * The {@link LocalServerCache}.
+     */
+    static final String LOCAL = "local";
+    /**
+     * The {@link InfinispanCache} backed by a local, non-clustered, Infinispan cache.
+     */
+    static final String INFINISPAN = "infinispan";
+
+    private static final String CACHE_NAME = "resteasy-benchmark-cache";
+
+    private final ServerCache cache;
+    private final EmbeddedCacheManager manager;
+
+    private BenchmarkCaches(final ServerCache cache, final EmbeddedCacheManager manager) {
+        this.cache = cache;
+        this.manager = manager;
+    }
+
+    /**
+     * Creates the cache of the type.
+     *
+     * @param type either {@link #LOCAL} or {@link #INFINISPAN}
+     *
+     * @return the cache which must be {@linkplain #close() closed}
+     */
+    static BenchmarkCaches create(final String type) {
+        if (LOCAL.equals(type)) {
+            return new BenchmarkCaches(new LocalServerCache(), null);
+        }
+        if (INFINISPAN.equals(type)) {
+            final ConfigurationBuilderHolder holder = new ConfigurationBuilderHolder();
+            holder.getGlobalConfigurationBuilder()
+                    .defaultCacheName(CACHE_NAME)
+                    .build();
+            holder.newConfigurationBuilder(CACHE_NAME)
+                    .build();
+            final EmbeddedCacheManager manager = new DefaultCacheManager(holder, true);
+            final Cache<Object, Object> cache = manager.getCache(CACHE_NAME);
+            return new BenchmarkCaches(new InfinispanCache(cache), manager);
+        }
+        throw new IllegalArgumentException("Unknown cache type " + type);
+    }
+
+    ServerCache get() {
+        return cache;
+    }
+
+    void close() throws IOException {
+        cache.clear();
+        if (manager != null) {
+            manager.close();
+        }
+    }
+
+    /**
+     * Creates a cache control which keeps entries fresh for the length of a benchmark.
+     *
+     * @return the cache control
+     */
+    static CacheControl cacheControl() {
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(3600);
+        return cc;
+    }
+
+    /**
+     * Creates response headers, the values are strings so creating the header snapshot measures the cache rather than
+     * the header delegates.
+     *
+     * @param count the number of headers
+     *
+     * @return the headers
+     */
+    static MultivaluedMap<String, Object> responseHeaders(final int count) {
+        final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            headers.putSingle("X-Response-" + i, "value-" + i);
+        }
+        return headers;
+    }
+
+    /**
+     * Creates the request headers a response varies on.
+     *
+     * @param count the number of headers
+     *
+     * @return the vary headers
+     */
+    static MultivaluedMap<String, String> varyHeaders(final int count) {
+        final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            headers.putSingle("X-Vary-" + i, "value-" + i);
+        }
+        return headers;
+    }
+
+    /**
+     * Creates request headers which match the {@linkplain #varyHeaders(int) vary headers} and contain the headers a
+     * typical request sends along with them.
+     *
+     * @param varyCount the number of vary headers
+     *
+     * @return the request headers
+     */
+    static MultivaluedMap<String, String> requestHeaders(final int varyCount) {
+        final MultivaluedMap<String, String> headers = varyHeaders(varyCount);
+        headers.putSingle("Accept", "application/json");
+        headers.putSingle("Accept-Encoding", "gzip, deflate, br");
+        headers.putSingle("Host", "localhost:8080");
+        headers.putSingle("User-Agent", "benchmark");
+        return headers;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the contention of readers and a writer on a single URI. The readers look up the entry while the writer
+ * keeps replacing it, as happens when a popular resource is refreshed. The {@code readOnly} group is the baseline
+ * without a writer.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheContentionBenchmark {
+    private static final String URI = "http://localhost:8080/resource";
+
+    @Param({ BenchmarkCaches.LOCAL, BenchmarkCaches.INFINISPAN })
+    public String cacheType;
+
+    private BenchmarkCaches caches;
+    private ServerCache cache;
+    private CacheControl cc;
+    private MultivaluedMap<String, Object> headers;
+    private MultivaluedMap<String, String> varyHeaders;
+    private MultivaluedMap<String, String> requestHeaders;
+    private byte[] entity;
+
+    @Setup
+    public void setup() {
+        caches = BenchmarkCaches.create(cacheType);
+        cache = caches.get();
+        cc = BenchmarkCaches.cacheControl();
+        headers = BenchmarkCaches.responseHeaders(8);
+        varyHeaders = BenchmarkCaches.varyHeaders(2);
+        requestHeaders = BenchmarkCaches.requestHeaders(2);
+        entity = new byte[4096];
+        new Random(42L).nextBytes(entity);
+        write();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        caches.close();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public ServerCache.Entry read() {
+        return cache.get(URI, MediaType.APPLICATION_JSON_TYPE, requestHeaders);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public ServerCache.Entry write() {
+        return cache.add(URI, MediaType.APPLICATION_JSON_TYPE, cc, headers, entity, "\"etag\"", varyHeaders);
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(4)
+    public ServerCache.Entry readOnly() {
+        return cache.get(URI, MediaType.APPLICATION_JSON_TYPE, requestHeaders);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.core.MediaType;
+
+import org.jboss.resteasy.plugins.cache.server.InfinispanCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures serializing an {@link InfinispanCache.CacheEntry}, as a clustered or persistent Infinispan cache does on
+ * each write, and deserializing it again, as it does on each remote or persistent read.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheEntrySerializationBenchmark {
+
+    @Param({ "256", "16384", "1048576" })
+    public int size;
+
+    @Param({ "4", "16" })
+    public int headerCount;
+
+    private BenchmarkCaches caches;
+    private Object entry;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        caches = BenchmarkCaches.create(BenchmarkCaches.INFINISPAN);
+        final byte[] entity = new byte[size];
+        new Random(42L).nextBytes(entity);
+        entry = caches.get().add("http://localhost:8080/resource", MediaType.APPLICATION_JSON_TYPE,
+                BenchmarkCaches.cacheControl(), BenchmarkCaches.responseHeaders(headerCount), entity, "\"etag\"",
+                BenchmarkCaches.varyHeaders(2));
+        serialized = serialize();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        caches.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(size + 1024);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(entry);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public Object roundTrip() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize()))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.plugins.cache.server.HeaderSnapshot;
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the lookup the {@code ServerCacheHitFilter} performs for a cached {@code GET}: finding the variant matching
+ * the request with {@link ServerCache#mayVary(ServerCache.Entry, MultivaluedMap)} and reading the header snapshot and
+ * entity it is served from. The cost is reported by the number of response headers and the number of request headers
+ * the response varies on.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheHitBenchmark {
+    private static final String URI = "http://localhost:8080/resource";
+
+    @Param({ BenchmarkCaches.LOCAL, BenchmarkCaches.INFINISPAN })
+    public String cacheType;
+
+    @Param({ "4", "16", "64" })
+    public int headerCount;
+
+    @Param({ "0", "2", "8" })
+    public int varyCount;
+
+    private BenchmarkCaches caches;
+    private ServerCache cache;
+    private ServerCache.Entry entry;
+    private MultivaluedMap<String, String> requestHeaders;
+
+    @Setup
+    public void setup() {
+        caches = BenchmarkCaches.create(cacheType);
+        cache = caches.get();
+        final byte[] entity = new byte[1024];
+        new Random(42L).nextBytes(entity);
+        entry = cache.add(URI, MediaType.APPLICATION_JSON_TYPE, BenchmarkCaches.cacheControl(),
+                BenchmarkCaches.responseHeaders(headerCount), entity, "\"etag\"",
+                BenchmarkCaches.varyHeaders(varyCount));
+        requestHeaders = BenchmarkCaches.requestHeaders(varyCount);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        caches.close();
+    }
+
+    @Benchmark
+    public void hit(final Blackhole blackhole) {
+        final ServerCache.Entry entry = cache.get(URI, MediaType.APPLICATION_JSON_TYPE, requestHeaders);
+        final HeaderSnapshot snapshot = entry.getHeaderSnapshot();
+        blackhole.consume(entry.isExpired());
+        blackhole.consume(snapshot);
+        blackhole.consume(entry.getCachedBuffer());
+    }
+
+    @Benchmark
+    public boolean mayVary() {
+        return ServerCache.mayVary(entry, requestHeaders);
+    }
+}
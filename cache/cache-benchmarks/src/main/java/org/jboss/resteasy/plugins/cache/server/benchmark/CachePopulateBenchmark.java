@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.plugins.cache.server.EtagGenerator;
+import org.jboss.resteasy.plugins.cache.server.MessageDigestEtagGenerator;
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the work the {@code ServerCacheInterceptor} adds to a response which missed the cache: generating the
+ * {@code ETag} of the buffered entity, copying the response headers and adding the entry. Each invocation replaces the
+ * same variant so the size of the cache stays constant. The cost is reported by the size of the entity.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CachePopulateBenchmark {
+    private static final String URI = "http://localhost:8080/resource";
+
+    @Param({ BenchmarkCaches.LOCAL, BenchmarkCaches.INFINISPAN })
+    public String cacheType;
+
+    @Param({ "256", "16384", "1048576" })
+    public int size;
+
+    private BenchmarkCaches caches;
+    private ServerCache cache;
+    private EtagGenerator etagGenerator;
+    private CacheControl cc;
+    private MultivaluedMap<String, Object> headers;
+    private MultivaluedMap<String, String> varyHeaders;
+    private byte[] entity;
+
+    @Setup
+    public void setup() {
+        caches = BenchmarkCaches.create(cacheType);
+        cache = caches.get();
+        // The default generator of the interceptor
+        etagGenerator = MessageDigestEtagGenerator.MD5;
+        cc = BenchmarkCaches.cacheControl();
+        headers = BenchmarkCaches.responseHeaders(8);
+        varyHeaders = BenchmarkCaches.varyHeaders(2);
+        entity = new byte[size];
+        new Random(42L).nextBytes(entity);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        caches.close();
+    }
+
+    @Benchmark
+    public ServerCache.Entry populate() {
+        final String etag = etagGenerator.generate(entity);
+        final MultivaluedMap<String, Object> cachedHeaders = new MultivaluedHashMap<>(headers);
+        return cache.add(URI, MediaType.APPLICATION_JSON_TYPE, cc, cachedHeaders, entity, etag, varyHeaders);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server.benchmark;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.resteasy.plugins.cache.server.EtagGenerator;
+import org.jboss.resteasy.plugins.cache.server.MessageDigestEtagGenerator;
+import org.jboss.resteasy.plugins.cache.server.Murmur3EtagGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of generating an {@code ETag} with the available {@link EtagGenerator generators} and with the
+ * previous implementation, which created a new MD5 digest and hex encoded through a {@link StringBuffer} per call.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EtagGeneratorBenchmark {
+
+    private static final String[] PSEUDO = { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "A", "B", "C", "D", "E",
+            "F" };
+
+    @Param({ "256", "16384", "1048576" })
+    public int size;
+
+    private byte[] entity;
+
+    @Setup
+    public void setup() {
+        entity = new byte[size];
+        new Random(42L).nextBytes(entity);
+    }
+
+    @Benchmark
+    public String legacyMd5() throws NoSuchAlgorithmException {
+        final byte[] digest = MessageDigest.getInstance("MD5").digest(entity);
+        final StringBuffer out = new StringBuffer(digest.length * 2);
+        for (byte b : digest) {
+            out.append(PSEUDO[(b & 0xF0) >>> 4]);
+            out.append(PSEUDO[b & 0x0F]);
+        }
+        return out.toString();
+    }
+
+    @Benchmark
+    public String md5() {
+        return MessageDigestEtagGenerator.MD5.generate(entity);
+    }
+
+    @Benchmark
+    public String murmur3() {
+        return Murmur3EtagGenerator.INSTANCE.generate(entity);
+    }
+}
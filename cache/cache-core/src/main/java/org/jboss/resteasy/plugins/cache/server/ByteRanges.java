@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Serves the byte ranges of RFC 9110 requested by the {@code Range} header from a cached entity.
+ * <p>
+ * Each range is written from a slice of the cached buffer, the entity is never copied. A single range is sent as the
+ * body of the {@code 206} response, multiple ranges are sent as a {@code multipart/byteranges} body. A {@code Range}
+ * header which is not valid, contains more than {@link #MAX_RANGES} ranges or fails the {@code If-Range} condition is
+ * ignored and the full entity is sent.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class ByteRanges {
+    static final String ACCEPT_RANGES = "Accept-Ranges";
+    static final String BYTES = "bytes";
+    static final String CONTENT_RANGE = "Content-Range";
+    static final String IF_RANGE = "If-Range";
+    static final String RANGE = "Range";
+    // Many small or overlapping ranges are a known denial of service vector, ignore the header instead
+    static final int MAX_RANGES = 16;
+    private static final String UNIT_PREFIX = BYTES + '=';
+
+    private final long[] starts;
+    private final long[] ends;
+
+    private ByteRanges(final long[] starts, final long[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Evaluates the {@code Range} and {@code If-Range} headers of the request against the representation.
+     *
+     * @param headers      the request headers
+     * @param etag         the entity tag of the representation, may be {@code null}
+     * @param lastModified the last modification time in milliseconds or -1 if not known
+     * @param length       the length of the representation
+     *
+     * @return the ranges to send, {@code null} if the full representation should be sent or an empty instance if
+     *         none of the ranges can be satisfied
+     */
+    static ByteRanges evaluate(final MultivaluedMap<String, String> headers, final String etag,
+            final long lastModified, final long length) {
+        final String range = headers.getFirst(RANGE);
+        if (range == null || !isCurrent(headers.getFirst(IF_RANGE), etag, lastModified)) {
+            return null;
+        }
+        return parse(range, length);
+    }
+
+    /**
+     * Parses the value of a {@code Range} header.
+     *
+     * @param value  the header value
+     * @param length the length of the representation
+     *
+     * @return the satisfiable ranges, {@code null} if the header should be ignored or an empty instance if none of the
+     *         ranges can be satisfied
+     */
+    static ByteRanges parse(final String value, final long length) {
+        final String trimmed = value.trim();
+        if (!trimmed.regionMatches(true, 0, UNIT_PREFIX, 0, UNIT_PREFIX.length())) {
+            return null;
+        }
+        final String[] specs = trimmed.substring(UNIT_PREFIX.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        final long[] starts = new long[specs.length];
+        final long[] ends = new long[specs.length];
+        int count = 0;
+        for (String spec : specs) {
+            final String s = spec.trim();
+            final int dash = s.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            final long first = parseLong(s.substring(0, dash));
+            final long last = parseLong(s.substring(dash + 1));
+            final long start;
+            final long end;
+            if (dash == 0) {
+                // Suffix range, the last N bytes
+                if (last <= 0L) {
+                    if (last < 0L) {
+                        return null;
+                    }
+                    continue;
+                }
+                start = Math.max(0L, length - last);
+                end = length - 1L;
+            } else {
+                if (first < 0L || (dash < s.length() - 1 && (last < 0L || last < first))) {
+                    return null;
+                }
+                start = first;
+                end = dash == s.length() - 1 ? length - 1L : Math.min(last, length - 1L);
+            }
+            if (start < length) {
+                starts[count] = start;
+                ends[count] = end;
+                count++;
+            }
+        }
+        return new ByteRanges(trimArray(starts, count), trimArray(ends, count));
+    }
+
+    /**
+     * Indicates whether none of the requested ranges can be satisfied.
+     *
+     * @return {@code true} if a {@code 416} should be sent
+     */
+    boolean isUnsatisfiable() {
+        return starts.length == 0;
+    }
+
+    /**
+     * Indicates whether the ranges are sent as a {@code multipart/byteranges} body.
+     *
+     * @return {@code true} if more than one range is sent
+     */
+    boolean isMultipart() {
+        return starts.length > 1;
+    }
+
+    /**
+     * Creates the {@code 206} or {@code 416} response for the ranges. The entity headers of the full representation,
+     * other than the {@code Content-Type} of a multipart response, are left for the caller to add.
+     *
+     * @param buffer      the full entity
+     * @param contentType the media type of the entity, may be {@code null}
+     *
+     * @return the response builder
+     */
+    Response.ResponseBuilder createResponse(final ByteBuffer buffer, final String contentType) {
+        final int length = buffer.remaining();
+        if (isUnsatisfiable()) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(CONTENT_RANGE, BYTES + " */" + length);
+        }
+        final Response.ResponseBuilder builder = Response.status(Response.Status.PARTIAL_CONTENT);
+        if (starts.length == 1) {
+            final CachedEntityOutput output = new CachedEntityOutput(slice(buffer, 0));
+            return builder.entity(output)
+                    .header(CONTENT_RANGE, contentRange(0, length))
+                    .header(HttpHeaders.CONTENT_LENGTH, output.getLength());
+        }
+        final String boundary = UUID.randomUUID().toString();
+        final CachedEntityOutput output = createMultipart(buffer, contentType, length, boundary);
+        return builder.entity(output)
+                .header(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary)
+                .header(HttpHeaders.CONTENT_LENGTH, output.getLength());
+    }
+
+    /**
+     * Creates the parts of a {@code multipart/byteranges} body. The part headers are created up front so the length of
+     * the body is known before it is written.
+     */
+    private CachedEntityOutput createMultipart(final ByteBuffer buffer, final String contentType, final long length,
+            final String boundary) {
+        final ByteBuffer[] parts = new ByteBuffer[starts.length * 2 + 1];
+        for (int i = 0; i < starts.length; i++) {
+            final StringBuilder part = new StringBuilder();
+            part.append("\r\n--").append(boundary).append("\r\n");
+            if (contentType != null) {
+                part.append(HttpHeaders.CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+            }
+            part.append(CONTENT_RANGE).append(": ").append(contentRange(i, length)).append("\r\n\r\n");
+            parts[i * 2] = ByteBuffer.wrap(part.toString().getBytes(StandardCharsets.US_ASCII));
+            parts[i * 2 + 1] = slice(buffer, i);
+        }
+        parts[parts.length - 1] = ByteBuffer.wrap(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return new CachedEntityOutput(parts);
+    }
+
+    private ByteBuffer slice(final ByteBuffer buffer, final int index) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(buffer.position() + (int) starts[index]);
+        slice.limit(buffer.position() + (int) ends[index] + 1);
+        return slice.slice();
+    }
+
+    private String contentRange(final int index, final long length) {
+        return BYTES + ' ' + starts[index] + '-' + ends[index] + '/' + length;
+    }
+
+    /**
+     * Indicates whether the {@code If-Range} validator matches the current representation. A date only matches if the
+     * representation has not been modified since, an entity tag only matches using the strong comparison. A value
+     * which is not an HTTP date is compared as an entity tag, as the generated entity tags are not quoted.
+     */
+    private static boolean isCurrent(final String ifRange, final String etag, final long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        final String value = ifRange.trim();
+        if (!value.startsWith("\"") && !Preconditions.isWeak(value)) {
+            final long date = Preconditions.parseDate(value);
+            if (date >= 0L) {
+                return lastModified >= 0L && lastModified <= date;
+            }
+        }
+        return etag != null && !Preconditions.isWeak(value) && !Preconditions.isWeak(etag)
+                && Preconditions.opaqueTag(value).equals(Preconditions.opaqueTag(etag));
+    }
+
+    private static long parseLong(final String value) {
+        final String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return -1L;
+        }
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (!Character.isDigit(trimmed.charAt(i))) {
+                return -2L;
+            }
+        }
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException e) {
+            // Larger than any entity, treat it as the end of the entity
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static long[] trimArray(final long[] values, final int count) {
+        if (values.length == count) {
+            return values;
+        }
+        final long[] result = new long[count];
+        System.arraycopy(values, 0, result, 0, count);
+        return result;
+    }
+}
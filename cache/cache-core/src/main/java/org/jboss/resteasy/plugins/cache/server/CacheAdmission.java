@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Overrides the limits the {@link DefaultCacheAdmissionPolicy} applies to the responses of a resource. An annotation
+ * on the method takes precedence over one on the class.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface CacheAdmission {
+
+    /**
+     * The maximum size, in bytes, of an entry which is cached. A negative value, the default, uses the configured
+     * limit. Use {@link Long#MAX_VALUE} to cache entries of any size.
+     *
+     * @return the maximum size of an entry
+     */
+    long maxSize() default -1L;
+
+    /**
+     * The number of times a URI must have been requested, within the sampling period of the frequency sketch, before
+     * it is cached. A negative value, the default, uses the configured frequency. A value of 1 or less caches the
+     * first response.
+     *
+     * @return the minimum request frequency
+     */
+    int minFrequency() default -1;
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.reflect.Method;
+
+/**
+ * Decides whether a cacheable response is added to the cache.
+ * <p>
+ * Implementations must be thread safe and fast, {@link #recordAccess(String, Method)} is invoked for every
+ * {@code GET} request.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public interface CacheAdmissionPolicy {
+
+    /**
+     * A policy which admits every entry.
+     */
+    CacheAdmissionPolicy ALWAYS = (key, resourceMethod, size) -> true;
+
+    /**
+     * Records a {@code GET} request for the key, whether or not it was served from the cache.
+     *
+     * @param key            the cache key
+     * @param resourceMethod the matched resource method or {@code null} if not known
+     */
+    default void recordAccess(String key, Method resourceMethod) {
+    }
+
+    /**
+     * Decides whether the entry is added to the cache.
+     *
+     * @param key            the cache key
+     * @param resourceMethod the matched resource method or {@code null} if not known
+     * @param size           the size, in bytes, of the entity and its compressed copy
+     *
+     * @return {@code true} to add the entry
+     */
+    boolean admit(String key, Method resourceMethod, long size);
+
+    /**
+     * Returns the policy for the name. The name may be {@code always}, {@code default} or the fully qualified class
+     * name of a {@link CacheAdmissionPolicy} with a public no-arg constructor.
+     *
+     * @param name the name of the policy
+     *
+     * @return the policy
+     */
+    static CacheAdmissionPolicy of(final String name) {
+        if ("always".equalsIgnoreCase(name)) {
+            return ALWAYS;
+        }
+        if ("default".equalsIgnoreCase(name)) {
+            return new DefaultCacheAdmissionPolicy();
+        }
+        try {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                loader = CacheAdmissionPolicy.class.getClassLoader();
+            }
+            return Class.forName(name, true, loader)
+                    .asSubclass(CacheAdmissionPolicy.class)
+                    .getConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.Map;
+
+import jakarta.ws.rs.core.CacheControl;
+
+/**
+ * Helpers for the {@code Cache-Control} extensions understood by the server cache.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class CacheDirectives {
+    static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+    static final String STALE_IF_ERROR = "stale-if-error";
+
+    private CacheDirectives() {
+    }
+
+    /**
+     * Returns the number of seconds the {@code stale-while-revalidate} extension allows a response to be served after
+     * it expired.
+     *
+     * @param cc the cache control
+     *
+     * @return the number of seconds or 0 if the extension is not present
+     */
+    static int staleWhileRevalidate(final CacheControl cc) {
+        return getSeconds(cc, STALE_WHILE_REVALIDATE);
+    }
+
+    /**
+     * Returns the number of seconds the {@code stale-if-error} extension allows a response to be served after it
+     * expired when the resource fails.
+     *
+     * @param cc the cache control
+     *
+     * @return the number of seconds or 0 if the extension is not present
+     */
+    static int staleIfError(final CacheControl cc) {
+        return getSeconds(cc, STALE_IF_ERROR);
+    }
+
+    /**
+     * Returns the number of seconds past its expiration the entry is.
+     *
+     * @param entry the entry
+     *
+     * @return the number of seconds the entry has been expired for, 0 if it has not expired
+     */
+    static int staleness(final ServerCache.Entry entry) {
+        return entry.isExpired() ? Math.max(0, -entry.getExpirationInSeconds()) : 0;
+    }
+
+    /**
+     * Returns the number of seconds the entry must be retained, including the time it may be served stale.
+     *
+     * @param entry the entry
+     *
+     * @return the number of seconds the entry must be retained for
+     */
+    static int retention(final ServerCache.Entry entry) {
+        return entry.getExpirationInSeconds() + Math.max(entry.getStaleWhileRevalidate(), entry.getStaleIfError());
+    }
+
+    /**
+     * Indicates whether the entry has expired and can no longer be served stale.
+     *
+     * @param entry the entry
+     *
+     * @return {@code true} if the entry can be discarded
+     */
+    static boolean isDiscardable(final ServerCache.Entry entry) {
+        return entry.isExpired() && retention(entry) <= 0;
+    }
+
+    private static int getSeconds(final CacheControl cc, final String name) {
+        final Map<String, String> extensions = cc.getCacheExtension();
+        if (extensions == null) {
+            return 0;
+        }
+        String value = extensions.get(name);
+        if (value == null) {
+            return 0;
+        }
+        value = value.trim();
+        if (value.length() > 1 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            value = value.substring(1, value.length() - 1);
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException ignore) {
+            return 0;
+        }
+    }
+}
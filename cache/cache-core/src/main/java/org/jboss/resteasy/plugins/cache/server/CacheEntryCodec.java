@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.plugins.cache.server.i18n.Messages;
+
+/**
+ * A compact, versioned, binary format for the {@link InfinispanCache} values.
+ * <p>
+ * The format starts with a version byte followed by a type byte. Strings, lengths and counts are written as unsigned
+ * variable length integers, headers are grouped by name and each value is tagged with its {@link HeaderHolder.Type}
+ * so the typed value can be restored. Any change to the layout must increment {@link #VERSION} and keep reading the
+ * previous versions.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class CacheEntryCodec {
+    static final int VERSION = 2;
+    // Version 1 did not contain the compressed entity
+    private static final int VERSION_1 = 1;
+    private static final int TYPE_ENTRY = 1;
+    private static final int TYPE_VARIANTS = 2;
+    private static final HeaderHolder.Type[] HEADER_TYPES = HeaderHolder.Type.values();
+
+    private CacheEntryCodec() {
+    }
+
+    /**
+     * The serialized form of a {@link InfinispanCache.CacheEntry} or {@link InfinispanCache.CacheVariants}. The values
+     * replace themselves with this form when serialized and this form resolves back to the value when deserialized.
+     */
+    static final class Serialized implements Externalizable {
+        private static final long serialVersionUID = 1L;
+
+        private Object value;
+
+        /**
+         * Required by {@link Externalizable}.
+         */
+        public Serialized() {
+        }
+
+        Serialized(final Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public void writeExternal(final ObjectOutput out) throws IOException {
+            write(out, value);
+        }
+
+        @Override
+        public void readExternal(final ObjectInput in) throws IOException {
+            value = read(in);
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return value;
+        }
+    }
+
+    /**
+     * Writes the value.
+     *
+     * @param out   the output to write to
+     * @param value either a {@link InfinispanCache.CacheEntry} or a {@link InfinispanCache.CacheVariants}
+     *
+     * @throws IOException if an error occurs writing the value
+     */
+    static void write(final DataOutput out, final Object value) throws IOException {
+        out.writeByte(VERSION);
+        if (value instanceof InfinispanCache.CacheVariants) {
+            out.writeByte(TYPE_VARIANTS);
+            final List<InfinispanCache.CacheEntry> entries = ((InfinispanCache.CacheVariants) value).getEntries();
+            writeVarInt(out, entries.size());
+            for (InfinispanCache.CacheEntry entry : entries) {
+                writeEntry(out, entry);
+            }
+        } else {
+            out.writeByte(TYPE_ENTRY);
+            writeEntry(out, (InfinispanCache.CacheEntry) value);
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #write(DataOutput, Object)}.
+     *
+     * @param in the input to read from
+     *
+     * @return the value
+     *
+     * @throws IOException if an error occurs reading the value or the format is not supported
+     */
+    static Object read(final DataInput in) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != VERSION && version != VERSION_1) {
+            throw new InvalidObjectException(Messages.MESSAGES.unsupportedCacheEntryVersion(version));
+        }
+        final int type = in.readUnsignedByte();
+        if (type == TYPE_VARIANTS) {
+            final InfinispanCache.CacheEntry[] entries = new InfinispanCache.CacheEntry[readVarInt(in)];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = readEntry(in, version);
+            }
+            return new InfinispanCache.CacheVariants(entries);
+        }
+        if (type == TYPE_ENTRY) {
+            return readEntry(in, version);
+        }
+        throw new InvalidObjectException(Messages.MESSAGES.malformedCacheEntry());
+    }
+
+    private static void writeEntry(final DataOutput out, final InfinispanCache.CacheEntry entry) throws IOException {
+        out.writeLong(entry.getTimestamp());
+        writeVarInt(out, entry.getMaxAge());
+        writeVarInt(out, entry.getStaleWhileRevalidate());
+        writeVarInt(out, entry.getStaleIfError());
+        writeNullableString(out, entry.getEtag());
+        writeString(out, entry.getMediaType().toString());
+        writeHeaders(out, entry.getSerializedHeaders(), true);
+        writeHeaders(out, entry.getVaryHeaders(), false);
+        final byte[] cached = entry.getCached();
+        writeVarInt(out, cached.length);
+        out.write(cached);
+        final byte[] gzipped = entry.getGzipped();
+        if (gzipped == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, gzipped.length + 1);
+            out.write(gzipped);
+        }
+    }
+
+    private static InfinispanCache.CacheEntry readEntry(final DataInput in, final int version) throws IOException {
+        final long timestamp = in.readLong();
+        final int maxAge = readVarInt(in);
+        final int staleWhileRevalidate = readVarInt(in);
+        final int staleIfError = readVarInt(in);
+        final String etag = readNullableString(in);
+        final MediaType mediaType = MediaType.valueOf(readString(in));
+        final MultivaluedMap<String, Object> headers = new MultivaluedTreeMap<>();
+        int names = readVarInt(in);
+        for (int i = 0; i < names; i++) {
+            final String name = readString(in);
+            final int count = readVarInt(in);
+            for (int j = 0; j < count; j++) {
+                final HeaderHolder.Type type = readHeaderType(in);
+                headers.add(name, new HeaderHolder(type, readString(in)));
+            }
+        }
+        final MultivaluedMap<String, String> varyHeaders = new MultivaluedTreeMap<>();
+        names = readVarInt(in);
+        for (int i = 0; i < names; i++) {
+            final String name = readString(in);
+            final int count = readVarInt(in);
+            for (int j = 0; j < count; j++) {
+                readHeaderType(in);
+                varyHeaders.add(name, readString(in));
+            }
+        }
+        final byte[] cached = new byte[readVarInt(in)];
+        in.readFully(cached);
+        byte[] gzipped = null;
+        if (version > VERSION_1) {
+            final int length = readVarInt(in);
+            if (length > 0) {
+                gzipped = new byte[length - 1];
+                in.readFully(gzipped);
+            }
+        }
+        return new InfinispanCache.CacheEntry(cached, gzipped, timestamp, maxAge, staleWhileRevalidate, staleIfError, etag,
+                mediaType, headers, varyHeaders);
+    }
+
+    private static void writeHeaders(final DataOutput out, final MultivaluedMap<String, ?> headers,
+            final boolean holders) throws IOException {
+        if (headers == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, headers.size());
+        for (Map.Entry<String, ? extends List<?>> header : headers.entrySet()) {
+            writeString(out, header.getKey());
+            final List<?> values = header.getValue();
+            writeVarInt(out, values.size());
+            for (Object value : values) {
+                if (holders && value instanceof HeaderHolder) {
+                    final HeaderHolder holder = (HeaderHolder) value;
+                    out.writeByte(holder.getType().ordinal());
+                    writeString(out, holder.getValue());
+                } else {
+                    out.writeByte(HeaderHolder.Type.OTHER.ordinal());
+                    writeString(out, String.valueOf(value));
+                }
+            }
+        }
+    }
+
+    private static HeaderHolder.Type readHeaderType(final DataInput in) throws IOException {
+        final int ordinal = in.readUnsignedByte();
+        return ordinal < HEADER_TYPES.length ? HEADER_TYPES[ordinal] : HeaderHolder.Type.OTHER;
+    }
+
+    static void writeNullableString(final DataOutput out, final String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    private static String readNullableString(final DataInput in) throws IOException {
+        final int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(final DataOutput out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInput in) throws IOException {
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarInt(final DataOutput out, final int value) throws IOException {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarInt(final DataInput in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new InvalidObjectException(Messages.MESSAGES.malformedCacheEntry());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The query parameters of a resource which are part of the cache key when the {@link NormalizingCacheKeyStrategy} is
+ * used. A name ending with {@code *} matches every parameter starting with the rest of the name.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface CacheKeyParameters {
+
+    /**
+     * The only parameters which are part of the key. When empty every parameter, which is not ignored, is part of the
+     * key.
+     *
+     * @return the included parameters
+     */
+    String[] include() default {};
+
+    /**
+     * The parameters which are not part of the key, in addition to the globally ignored parameters.
+     *
+     * @return the ignored parameters
+     */
+    String[] ignore() default {};
+}
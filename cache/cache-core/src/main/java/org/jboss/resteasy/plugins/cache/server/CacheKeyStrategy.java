@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.reflect.Method;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+
+/**
+ * Creates the key a request is cached with.
+ * <p>
+ * Implementations must be thread safe and fast, the key is created for every request.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public interface CacheKeyStrategy {
+
+    /**
+     * The default strategy which uses the request URI as sent by the client.
+     */
+    CacheKeyStrategy DEFAULT = (request, resourceMethod) -> request.getUriInfo().getRequestUri().toString();
+
+    /**
+     * Creates the cache key for the request.
+     *
+     * @param request        the request
+     * @param resourceMethod the matched resource method or {@code null} if not known
+     *
+     * @return the cache key
+     */
+    String createKey(ContainerRequestContext request, Method resourceMethod);
+
+    /**
+     * Returns the strategy for the name. The name may be {@code default}, {@code normalized} or the fully qualified
+     * class name of a {@link CacheKeyStrategy} with a public no-arg constructor.
+     *
+     * @param name the name of the strategy
+     *
+     * @return the strategy
+     */
+    static CacheKeyStrategy of(final String name) {
+        if ("default".equalsIgnoreCase(name)) {
+            return DEFAULT;
+        }
+        if ("normalized".equalsIgnoreCase(name)) {
+            return new NormalizingCacheKeyStrategy();
+        }
+        try {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                loader = CacheKeyStrategy.class.getClassLoader();
+            }
+            return Class.forName(name, true, loader)
+                    .asSubclass(CacheKeyStrategy.class)
+                    .getConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.HttpHeaders;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Refreshes stale cache entries in the background by replaying the request against the server.
+ * <p>
+ * The request is replayed against the configured base URI and never against the authority sent by the client, which
+ * the server cannot trust. Each replayed request carries a header with a random, single use,
+ * token which tells the {@link ServerCacheHitFilter} to bypass the cache and which cache key the response replaces, so
+ * the {@link ServerCacheInterceptor} replaces the stale entry. The headers the entry varies on, and the credentials of
+ * the request, are replayed so the refresh produces the same variant. If the refresh is rejected by the resource, the
+ * stale entry is removed rather than served until it can no longer be served stale.
+ * </p>
+ * <p>
+ * At most one refresh per URI is in flight and the number of concurrent refreshes is bounded, refreshes over the bound
+ * are dropped and retried on a later request.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+class CacheRevalidator {
+    static final String REVALIDATE_HEADER = "X-RESTEasy-Cache-Revalidate";
+    private static final Logger LOGGER = Logger.getLogger(CacheRevalidator.class);
+    private static final Duration TIMEOUT = Duration.ofSeconds(30L);
+    private static final String COOKIE = "Cookie";
+
+    // The tokens of the refreshes in flight mapped to the cache key the refresh replaces
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final int maxConcurrent;
+    private final URI baseUri;
+    private volatile HttpClient client;
+
+    /**
+     * Creates a new revalidator.
+     *
+     * @param maxConcurrent the maximum number of refreshes in flight at one time
+     * @param baseUri       the URI, only the scheme and authority are used, the refreshes are sent to
+     */
+    CacheRevalidator(final int maxConcurrent, final URI baseUri) {
+        this.maxConcurrent = maxConcurrent;
+        this.baseUri = Objects.requireNonNull(baseUri, "baseUri");
+    }
+
+    /**
+     * Returns the cache key the request refreshes if the request is a refresh sent by this revalidator. The token of a
+     * refresh is only accepted once.
+     *
+     * @param request the request
+     *
+     * @return the cache key the refresh replaces or {@code null} if the request is not a refresh
+     */
+    String getRevalidationKey(final ContainerRequestContext request) {
+        final String token = request.getHeaderString(REVALIDATE_HEADER);
+        return token == null ? null : tokens.remove(token);
+    }
+
+    /**
+     * Schedules a refresh of the entry unless one is already in flight for the key or the bound has been reached.
+     *
+     * @param key     the cache key
+     * @param request the request which found the stale entry
+     * @param entry   the stale entry
+     * @param cache   the cache the stale entry is removed from if the refresh is rejected
+     */
+    void revalidate(final String key, final ContainerRequestContext request, final ServerCache.Entry entry,
+            final ServerCache cache) {
+        if (inFlight.size() >= maxConcurrent || !inFlight.add(key)) {
+            return;
+        }
+        final String token = UUID.randomUUID().toString();
+        try {
+            final URI uri = resolve(request.getUriInfo().getRequestUri());
+            final HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                    .timeout(TIMEOUT)
+                    .header(REVALIDATE_HEADER, token);
+            // The refresh must produce the same variant, for the same user
+            copyHeader(request, builder, HttpHeaders.ACCEPT);
+            copyHeader(request, builder, HttpHeaders.AUTHORIZATION);
+            copyHeader(request, builder, COOKIE);
+            if (entry.getVaryHeaders() != null) {
+                for (String name : entry.getVaryHeaders().keySet()) {
+                    copyHeader(request, builder, name);
+                }
+            }
+            tokens.put(token, key);
+            getClient().sendAsync(builder.GET().build(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        tokens.remove(token);
+                        inFlight.remove(key);
+                        if (error != null) {
+                            LOGGER.debugf(error, "Failed to revalidate %s", key);
+                        } else if (response.statusCode() >= 400 && response.statusCode() < 500) {
+                            // The resource rejected the refresh, for example the credentials expired. Server errors
+                            // keep the entry, it may be served under stale-if-error.
+                            LOGGER.debugf("Revalidating %s failed with status %d", key, response.statusCode());
+                            cache.remove(key);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            tokens.remove(token);
+            inFlight.remove(key);
+            LOGGER.debugf(e, "Failed to revalidate %s", key);
+        }
+    }
+
+    /**
+     * Resolves the path and query of the request against the base URI. The authority of the request is sent by the
+     * client and is never used.
+     */
+    private URI resolve(final URI requestUri) {
+        final StringBuilder uri = new StringBuilder();
+        uri.append(baseUri.getScheme()).append("://").append(baseUri.getRawAuthority());
+        uri.append(requestUri.getRawPath());
+        if (requestUri.getRawQuery() != null) {
+            uri.append('?').append(requestUri.getRawQuery());
+        }
+        return URI.create(uri.toString());
+    }
+
+    private HttpClient getClient() {
+        HttpClient client = this.client;
+        if (client == null) {
+            synchronized (this) {
+                client = this.client;
+                if (client == null) {
+                    final AtomicInteger count = new AtomicInteger();
+                    final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60L,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                                final Thread thread = new Thread(r, "resteasy-cache-revalidator-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    client = HttpClient.newBuilder()
+                            .executor(executor)
+                            .followRedirects(HttpClient.Redirect.NEVER)
+                            .build();
+                    this.client = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    private static void copyHeader(final ContainerRequestContext request, final HttpRequest.Builder builder,
+            final String name) {
+        final String value = request.getHeaderString(name);
+        if (value != null) {
+            try {
+                builder.header(name, value);
+            } catch (IllegalArgumentException ignore) {
+                // Restricted headers, such as Host, cannot be set and are not relevant to the variant
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.plugins.cache.server.i18n.Messages;
+
+/**
+ * Writes and reads the snapshot file of a {@link LocalServerCache}.
+ * <p>
+ * The file starts with a magic number and a version byte followed by the number of URIs. Each URI is followed by its
+ * variants. Strings, lengths and counts are written as unsigned variable length integers in the same way as the
+ * {@link CacheEntryCodec}. Header values are stored as the strings of the {@link HeaderSnapshot}. The file is read
+ * through a memory mapped buffer so only the restored entries are copied.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class CacheSnapshot {
+    // "RSCS"
+    private static final int MAGIC = 0x52534353;
+    private static final int VERSION = 1;
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * Writes the entries to the file. The entries are written to a temporary file which then replaces the file.
+     *
+     * @param file    the snapshot file
+     * @param entries the URIs and their variants to write
+     *
+     * @throws IOException if an error occurs writing the file
+     */
+    static void write(final Path file, final List<Map.Entry<String, LocalServerCache.LocalEntry[]>> entries)
+            throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                CacheEntryCodec.writeVarInt(out, entries.size());
+                for (Map.Entry<String, LocalServerCache.LocalEntry[]> entry : entries) {
+                    CacheEntryCodec.writeString(out, entry.getKey());
+                    CacheEntryCodec.writeVarInt(out, entry.getValue().length);
+                    for (LocalServerCache.LocalEntry variant : entry.getValue()) {
+                        writeEntry(out, variant);
+                    }
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads the entries of the file. The entries are created for the cache, but not added to it.
+     *
+     * @param file     the snapshot file
+     * @param cache    the cache the entries are restored to
+     * @param consumer the consumer of the URI and each of its variants
+     *
+     * @throws IOException if the file could not be read or is not a valid snapshot
+     */
+    static void read(final Path file, final LocalServerCache cache,
+            final BiConsumer<String, LocalServerCache.LocalEntry> consumer) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new InvalidObjectException(Messages.MESSAGES.unsupportedCacheSnapshot(file));
+            }
+            // The mapping stays valid after the channel has been closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        try {
+            if (buffer.remaining() < 5 || buffer.getInt() != MAGIC || (buffer.get() & 0xFF) != VERSION) {
+                throw new InvalidObjectException(Messages.MESSAGES.unsupportedCacheSnapshot(file));
+            }
+            final int uris = readVarInt(buffer);
+            for (int i = 0; i < uris; i++) {
+                final String uri = readString(buffer);
+                final int variants = readVarInt(buffer);
+                for (int j = 0; j < variants; j++) {
+                    consumer.accept(uri, readEntry(buffer, cache));
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            final InvalidObjectException ioe = new InvalidObjectException(Messages.MESSAGES.malformedCacheEntry());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    private static void writeEntry(final DataOutputStream out, final LocalServerCache.LocalEntry entry)
+            throws IOException {
+        out.writeLong(entry.getTimestamp());
+        CacheEntryCodec.writeVarInt(out, entry.getMaxAge());
+        CacheEntryCodec.writeVarInt(out, entry.getStaleWhileRevalidate());
+        CacheEntryCodec.writeVarInt(out, entry.getStaleIfError());
+        CacheEntryCodec.writeNullableString(out, entry.getEtag());
+        CacheEntryCodec.writeString(out, entry.getMediaType().toString());
+        final HeaderSnapshot headers = entry.getHeaderSnapshot();
+        CacheEntryCodec.writeVarInt(out, headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            CacheEntryCodec.writeString(out, headers.getName(i));
+            CacheEntryCodec.writeString(out, headers.getValue(i));
+        }
+        final MultivaluedMap<String, String> varyHeaders = entry.getVaryHeaders();
+        if (varyHeaders == null) {
+            CacheEntryCodec.writeVarInt(out, 0);
+        } else {
+            CacheEntryCodec.writeVarInt(out, varyHeaders.size());
+            for (Map.Entry<String, List<String>> header : varyHeaders.entrySet()) {
+                CacheEntryCodec.writeString(out, header.getKey());
+                CacheEntryCodec.writeVarInt(out, header.getValue().size());
+                for (String value : header.getValue()) {
+                    CacheEntryCodec.writeString(out, value);
+                }
+            }
+        }
+        CacheEntryCodec.writeVarInt(out, entry.getTags().size());
+        for (String tag : entry.getTags()) {
+            CacheEntryCodec.writeString(out, tag);
+        }
+        writeBuffer(out, entry.getCachedBuffer());
+        final ByteBuffer gzipped = entry.getGzipBuffer();
+        if (gzipped == null) {
+            CacheEntryCodec.writeVarInt(out, 0);
+        } else {
+            CacheEntryCodec.writeVarInt(out, 1);
+            writeBuffer(out, gzipped);
+        }
+    }
+
+    private static LocalServerCache.LocalEntry readEntry(final ByteBuffer in, final LocalServerCache cache) {
+        final long timestamp = in.getLong();
+        final int maxAge = readVarInt(in);
+        final int staleWhileRevalidate = readVarInt(in);
+        final int staleIfError = readVarInt(in);
+        final String etag = readNullableString(in);
+        final MediaType mediaType = MediaType.valueOf(readString(in));
+        final MultivaluedMap<String, Object> headers = new MultivaluedTreeMap<>();
+        final int headerCount = readVarInt(in);
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(readString(in), readString(in));
+        }
+        final MultivaluedMap<String, String> varyHeaders = new MultivaluedTreeMap<>();
+        final int names = readVarInt(in);
+        for (int i = 0; i < names; i++) {
+            final String name = readString(in);
+            final int count = readVarInt(in);
+            for (int j = 0; j < count; j++) {
+                varyHeaders.add(name, readString(in));
+            }
+        }
+        final int tagCount = readVarInt(in);
+        final Set<String> tags = new HashSet<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(readString(in));
+        }
+        final ByteBuffer cached = cache.store(readBytes(in, readVarInt(in)));
+        final ByteBuffer gzipped = readVarInt(in) == 0 ? null : cache.store(readBytes(in, readVarInt(in)));
+        return new LocalServerCache.LocalEntry(headers, cached, gzipped, timestamp, maxAge, staleWhileRevalidate,
+                staleIfError, etag, mediaType, varyHeaders, Set.copyOf(tags));
+    }
+
+    private static void writeBuffer(final DataOutputStream out, final ByteBuffer buffer) throws IOException {
+        CacheEntryCodec.writeVarInt(out, buffer.remaining());
+        new CachedEntityOutput(buffer).write(out);
+    }
+
+    private static byte[] readBytes(final ByteBuffer in, final int length) {
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static String readString(final ByteBuffer in) {
+        return new String(readBytes(in, readVarInt(in)), StandardCharsets.UTF_8);
+    }
+
+    private static String readNullableString(final ByteBuffer in) {
+        final int length = readVarInt(in);
+        return length == 0 ? null : new String(readBytes(in, length - 1), StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(final ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.get() & 0xFF;
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException(Messages.MESSAGES.malformedCacheEntry());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The invalidation tags of a resource method.
+ * <p>
+ * The cached responses of a {@code GET} method are tagged with the tags. A successful response of any other method,
+ * other than {@code HEAD}, removes every URI cached with the tags. The tags of a response may also be set with the
+ * {@value ServerCacheHitFilter#CACHE_TAGS_HEADER} header which is not sent to the client.
+ * </p>
+ * <p>
+ * A {@code {name}} in a tag is replaced with the value of the path parameter, for example {@code order:{id}}.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface CacheTags {
+
+    /**
+     * The invalidation tags.
+     *
+     * @return the tags
+     */
+    String[] value();
+}
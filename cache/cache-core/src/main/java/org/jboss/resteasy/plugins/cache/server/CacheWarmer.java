@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Populates the cache by sending {@code GET} requests for a list of URIs to the application.
+ * <p>
+ * The requests are sent in parallel on daemon threads, so warming the cache never delays the deployment. The cache is
+ * typically configured before the server accepts connections, a request which fails to connect is retried every
+ * {@link #RETRY_DELAY} milliseconds up to {@link #MAX_ATTEMPTS} times.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class CacheWarmer {
+    private static final Logger LOGGER = Logger.getLogger(CacheWarmer.class);
+    static final int MAX_ATTEMPTS = 40;
+    static final long RETRY_DELAY = 250L;
+
+    private CacheWarmer() {
+    }
+
+    /**
+     * Starts sending the requests.
+     *
+     * @param uris        the absolute URIs to request
+     * @param concurrency the maximum number of requests sent at one time
+     *
+     * @return a future completed once every request has been sent
+     */
+    static CompletableFuture<Void> start(final List<URI> uris, final int concurrency) {
+        final AtomicInteger count = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            final Thread thread = new Thread(r, "resteasy-cache-warmer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10L))
+                .build();
+        final CompletableFuture<?>[] requests = new CompletableFuture<?>[uris.size()];
+        for (int i = 0; i < requests.length; i++) {
+            final URI uri = uris.get(i);
+            requests[i] = CompletableFuture.runAsync(() -> warm(client, uri), executor);
+        }
+        // Tasks already submitted are still run
+        executor.shutdown();
+        return CompletableFuture.allOf(requests);
+    }
+
+    private static void warm(final HttpClient client, final URI uri) {
+        final HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                final HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                LOGGER.debugf("Warmed the cache with %s: %d", uri, response.statusCode());
+                return;
+            } catch (ConnectException e) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } catch (IOException e) {
+                LOGGER.debugf(e, "Failed to warm the cache with %s", uri);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        LOGGER.debugf("Failed to connect to %s to warm the cache", uri);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Applies cache writes off the response path.
+ * <p>
+ * The number of writes queued or in flight is bounded by the capacity. Writes submitted while the bound is reached are
+ * dropped rather than queued, so a slow cache store never delays a response or grows the heap. A write is in flight
+ * until the {@link CompletionStage} returned by the write completes, which allows caches such as Infinispan to apply
+ * the write asynchronously without holding a writer thread.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+class CacheWriteBehind {
+    private final Semaphore permits;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a new write-behind queue.
+     *
+     * @param capacity the maximum number of writes queued or in flight at one time
+     * @param threads  the number of threads writes are submitted on
+     */
+    CacheWriteBehind(final int capacity, final int threads) {
+        this.permits = new Semaphore(capacity);
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    final Thread thread = new Thread(r, "resteasy-cache-writer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submits a write unless the capacity has been reached.
+     *
+     * @param write the write to apply
+     *
+     * @return a future completed once the write has been applied or {@code null} if the write was dropped
+     */
+    CompletableFuture<Object> submit(final Supplier<? extends CompletionStage<?>> write) {
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        result.whenComplete((value, error) -> permits.release());
+        try {
+            executor.execute(() -> {
+                try {
+                    write.get().whenComplete((value, error) -> {
+                        if (error == null) {
+                            result.complete(value);
+                        } else {
+                            result.completeExceptionally(error);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Stops accepting writes. Writes already submitted are still applied.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import jakarta.ws.rs.core.StreamingOutput;
+
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+/**
+ * Writes a cached entity held in one or more {@link ByteBuffer buffers} directly to the response without first copying
+ * it to a byte array.
+ * <p>
+ * The entity is written asynchronously by the {@link CachedEntityWriter}, so a hit may be served from an IO thread. A
+ * buffer which is not backed by an array is copied in chunks of {@value #CHUNK_SIZE} bytes.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+class CachedEntityOutput implements StreamingOutput {
+    static final int CHUNK_SIZE = 16384;
+    private final ByteBuffer[] buffers;
+
+    /**
+     * Creates a new output for the remaining bytes of the buffers, written in order. The positions of the buffers are
+     * not changed.
+     *
+     * @param buffers the buffers to write
+     */
+    CachedEntityOutput(final ByteBuffer... buffers) {
+        this.buffers = new ByteBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            this.buffers[i] = buffers[i].duplicate();
+        }
+    }
+
+    /**
+     * Returns the number of bytes which will be written.
+     *
+     * @return the length of the entity
+     */
+    long getLength() {
+        long length = 0L;
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        return length;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        WritableByteChannel channel = null;
+        for (ByteBuffer buffer : buffers) {
+            final ByteBuffer source = buffer.duplicate();
+            if (source.hasArray()) {
+                output.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+                continue;
+            }
+            if (channel == null) {
+                // Do not close the channel as that would close the response stream
+                channel = Channels.newChannel(output);
+            }
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+    }
+
+    /**
+     * Writes the entity without blocking. Each write is started once the previous one has completed.
+     *
+     * @param output the response stream
+     *
+     * @return the stage completed once the entity has been written
+     */
+    CompletionStage<Void> asyncWrite(final AsyncOutputStream output) {
+        CompletionStage<Void> result = CompletableFuture.completedFuture(null);
+        for (ByteBuffer buffer : buffers) {
+            final ByteBuffer source = buffer.duplicate();
+            if (source.hasArray()) {
+                result = result.thenCompose(
+                        v -> output.asyncWrite(source.array(), source.arrayOffset() + source.position(),
+                                source.remaining()));
+                continue;
+            }
+            while (source.hasRemaining()) {
+                final ByteBuffer chunk = source.slice();
+                chunk.limit(Math.min(chunk.remaining(), CHUNK_SIZE));
+                source.position(source.position() + chunk.remaining());
+                result = result.thenCompose(v -> {
+                    // Copied when written so only one chunk is held on the heap at a time
+                    final byte[] bytes = new byte[chunk.remaining()];
+                    chunk.duplicate().get(bytes);
+                    return output.asyncWrite(bytes, 0, bytes.length);
+                });
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletionStage;
+
+import jakarta.ws.rs.ConstrainedTo;
+import jakarta.ws.rs.RuntimeType;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.spi.AsyncMessageBodyWriter;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+/**
+ * Writes the {@link CachedEntityOutput} of a hit. Unlike a {@link jakarta.ws.rs.core.StreamingOutput}, the entity is
+ * written without blocking, which the container requires when the response is written from an IO thread with writer
+ * interceptors present.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@ConstrainedTo(RuntimeType.SERVER)
+final class CachedEntityWriter implements AsyncMessageBodyWriter<CachedEntityOutput> {
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType, final Annotation[] annotations,
+            final MediaType mediaType) {
+        return CachedEntityOutput.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(final CachedEntityOutput output, final Class<?> type, final Type genericType,
+            final Annotation[] annotations, final MediaType mediaType) {
+        // The Content-Length is set by the ServerCacheHitFilter, unless an encoding interceptor changes the length
+        return -1L;
+    }
+
+    @Override
+    public void writeTo(final CachedEntityOutput output, final Class<?> type, final Type genericType,
+            final Annotation[] annotations, final MediaType mediaType, final MultivaluedMap<String, Object> httpHeaders,
+            final OutputStream entityStream) throws IOException {
+        output.write(entityStream);
+    }
+
+    @Override
+    public CompletionStage<Void> asyncWriteTo(final CachedEntityOutput output, final Class<?> type,
+            final Type genericType, final Annotation[] annotations, final MediaType mediaType,
+            final MultivaluedMap<String, Object> httpHeaders, final AsyncOutputStream entityStream) {
+        return output.asyncWrite(entityStream);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Captures the bytes of an entity for the cache, up to a limit.
+ * <p>
+ * In write-through mode each write is also sent to the delegate as it happens. Otherwise the bytes are only captured
+ * and must be written with {@link #writeTo(OutputStream)}. Once the limit is exceeded the capture is abandoned, any
+ * bytes captured and not yet written are flushed to the delegate and all further writes go directly to the delegate.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+class CachingOutputStream extends OutputStream {
+    private static final int DEFAULT_CAPACITY = 512;
+    // Some VMs reserve header words in an array
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final OutputStream delegate;
+    private final boolean writeThrough;
+    private final long limit;
+    private byte[] buffer;
+    private int count;
+    private boolean overflowed;
+
+    /**
+     * Creates a new caching stream.
+     *
+     * @param delegate     the stream to write to when writing through or once the limit has been exceeded
+     * @param writeThrough {@code true} if writes should be sent to the delegate as they happen
+     * @param limit        the maximum number of bytes to capture, a negative value means no limit
+     */
+    CachingOutputStream(final OutputStream delegate, final boolean writeThrough, final long limit) {
+        this.delegate = delegate;
+        this.writeThrough = writeThrough;
+        this.limit = limit < 0 ? MAX_CAPACITY : Math.min(limit, MAX_CAPACITY);
+        this.buffer = new byte[(int) Math.min(DEFAULT_CAPACITY, this.limit)];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (!overflowed) {
+            if (count + 1L > limit) {
+                overflow();
+            } else {
+                ensureCapacity(count + 1);
+                buffer[count++] = (byte) b;
+                if (writeThrough) {
+                    delegate.write(b);
+                }
+                return;
+            }
+        }
+        delegate.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (!overflowed) {
+            if (count + (long) len > limit) {
+                overflow();
+            } else {
+                ensureCapacity(count + len);
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+                if (writeThrough) {
+                    delegate.write(b, off, len);
+                }
+                return;
+            }
+        }
+        delegate.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (writeThrough || overflowed) {
+            delegate.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The delegate is owned, and closed, by the container
+        flush();
+    }
+
+    /**
+     * Indicates whether the limit was exceeded and the capture abandoned.
+     *
+     * @return {@code true} if the entity was not captured
+     */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Indicates whether the captured bytes have already been written to the delegate.
+     *
+     * @return {@code true} if the bytes were written through
+     */
+    boolean isWriteThrough() {
+        return writeThrough;
+    }
+
+    /**
+     * Returns the internal buffer. Only the first {@link #size()} bytes are valid.
+     *
+     * @return the internal buffer
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the number of bytes captured.
+     *
+     * @return the number of bytes captured
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns the captured bytes. If the internal buffer is exactly the size of the captured bytes it is returned as
+     * is, otherwise a copy is made.
+     *
+     * @return the captured bytes
+     */
+    byte[] toByteArray() {
+        return buffer.length == count ? buffer : Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * Writes the captured bytes to the stream.
+     *
+     * @param out the stream to write to
+     *
+     * @throws IOException if an error occurs writing the bytes
+     */
+    void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    private void overflow() throws IOException {
+        overflowed = true;
+        if (!writeThrough && count > 0) {
+            delegate.write(buffer, 0, count);
+        }
+        buffer = null;
+        count = 0;
+    }
+
+    private void ensureCapacity(final int minCapacity) {
+        if (minCapacity > buffer.length) {
+            final long newCapacity = Math.max((long) buffer.length << 1, minCapacity);
+            buffer = Arrays.copyOf(buffer, (int) Math.min(newCapacity, limit));
+        }
+    }
+}
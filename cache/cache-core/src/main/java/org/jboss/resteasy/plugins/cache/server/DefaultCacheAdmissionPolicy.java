@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An admission policy which limits the size of cached entries and, optionally, only admits URIs which are requested
+ * frequently.
+ * <p>
+ * Entries larger than the maximum entry size are never cached, so a single large response cannot evict many small and
+ * frequently hit entries. When the minimum frequency is greater than 1 the requests are counted by a TinyLFU style
+ * {@linkplain FrequencySketch frequency sketch} and a URI is only cached once it has been requested that many times
+ * recently. Both limits can be overridden for a resource with {@link CacheAdmission}, and the size with
+ * {@link ServerCached#maxSize()}. The overrides are resolved once per resource method.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class DefaultCacheAdmissionPolicy implements CacheAdmissionPolicy {
+
+    /**
+     * The default number of distinct URIs the frequency sketch is sized for.
+     */
+    public static final int DEFAULT_SKETCH_SIZE = 8192;
+
+    private static final class Limits {
+        private final long maxSize;
+        private final int minFrequency;
+
+        private Limits(final long maxSize, final int minFrequency) {
+            this.maxSize = maxSize;
+            this.minFrequency = minFrequency;
+        }
+    }
+
+    private final Limits defaults;
+    private final FrequencySketch sketch;
+    private final Map<Method, Limits> limits;
+
+    /**
+     * Creates a policy which admits entries of any size on the first request, unless overridden with
+     * {@link CacheAdmission}.
+     */
+    public DefaultCacheAdmissionPolicy() {
+        this(-1L, 0, DEFAULT_SKETCH_SIZE);
+    }
+
+    /**
+     * Creates a new policy.
+     *
+     * @param maxEntrySize the maximum size, in bytes, of an entry, a negative value means there is no limit
+     * @param minFrequency the number of times a URI must be requested before it is cached, a value of 1 or less caches
+     *                     the first response
+     * @param sketchSize   the number of distinct URIs the frequency sketch is sized for
+     */
+    public DefaultCacheAdmissionPolicy(final long maxEntrySize, final int minFrequency, final int sketchSize) {
+        this.defaults = new Limits(maxEntrySize, minFrequency);
+        this.sketch = new FrequencySketch(sketchSize);
+        this.limits = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void recordAccess(final String key, final Method resourceMethod) {
+        if (getLimits(resourceMethod).minFrequency > 1) {
+            sketch.increment(key);
+        }
+    }
+
+    @Override
+    public boolean admit(final String key, final Method resourceMethod, final long size) {
+        final Limits limits = getLimits(resourceMethod);
+        if (limits.maxSize >= 0L && size > limits.maxSize) {
+            return false;
+        }
+        return limits.minFrequency <= 1 || sketch.frequency(key) >= limits.minFrequency;
+    }
+
+    private Limits getLimits(final Method method) {
+        if (method == null) {
+            return defaults;
+        }
+        final Limits result = limits.get(method);
+        if (result != null) {
+            return result;
+        }
+        return limits.computeIfAbsent(method, this::createLimits);
+    }
+
+    private Limits createLimits(final Method method) {
+        CacheAdmission admission = method.getAnnotation(CacheAdmission.class);
+        if (admission == null) {
+            admission = method.getDeclaringClass().getAnnotation(CacheAdmission.class);
+        }
+        if (admission == null) {
+            final ServerCached cached = ResourceCachePolicy.find(null, method);
+            return cached == null || cached.maxSize() < 0L ? defaults
+                    : new Limits(cached.maxSize(), defaults.minFrequency);
+        }
+        return new Limits(admission.maxSize() < 0L ? defaults.maxSize : admission.maxSize(),
+                admission.minFrequency() < 0 ? defaults.minFrequency : admission.minFrequency());
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The default {@link ServerCacheMetrics} which keeps {@link LongAdder} based counters and latency histograms for each
+ * resource template.
+ * <p>
+ * The statistics can be pulled with {@link #snapshot()} and {@link #getTotal()}, or exposed over JMX with
+ * {@link #registerMBean(String)}.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class DefaultServerCacheMetrics implements ServerCacheMetrics, ServerCacheMetricsMXBean {
+
+    /**
+     * The domain and type of the object name used to register the metrics with JMX.
+     */
+    public static final String OBJECT_NAME_PREFIX = "org.jboss.resteasy.cache:type=ServerCacheMetrics,name=";
+
+    /**
+     * The resource used when the resource template is not known.
+     */
+    public static final String UNKNOWN_RESOURCE = "<unknown>";
+
+    private static class Counters {
+        private final LongAdder[] counters;
+        private final LatencyHistogram getLatency;
+        private final LatencyHistogram addLatency;
+
+        private Counters() {
+            counters = new LongAdder[ServerCacheStatistics.COUNTERS];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = new LongAdder();
+            }
+            getLatency = new LatencyHistogram();
+            addLatency = new LatencyHistogram();
+        }
+
+        private ServerCacheStatistics snapshot() {
+            final long[] values = new long[counters.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = counters[i].sum();
+            }
+            return new ServerCacheStatistics(values, getLatency.snapshot(), getLatency.getTotalNanos(),
+                    addLatency.snapshot(), addLatency.getTotalNanos());
+        }
+
+        private void reset() {
+            for (LongAdder counter : counters) {
+                counter.reset();
+            }
+            getLatency.reset();
+            addLatency.reset();
+        }
+    }
+
+    // The metrics registered with each object name, guarded by itself. A deployment which is released after the
+    // application has been redeployed must not unregister the metrics of the new deployment.
+    private static final Map<ObjectName, DefaultServerCacheMetrics> REGISTERED = new HashMap<>();
+
+    private final Map<String, Counters> resources = new ConcurrentHashMap<>();
+    // Evictions are not attributed to a resource
+    private final Counters cache = new Counters();
+    private volatile ObjectName objectName;
+
+    @Override
+    public void recordHit(final String resource, final boolean stale) {
+        final Counters counters = getCounters(resource);
+        counters.counters[ServerCacheStatistics.HITS].increment();
+        if (stale) {
+            counters.counters[ServerCacheStatistics.STALE_HITS].increment();
+        }
+    }
+
+    @Override
+    public void recordMiss(final String resource, final Miss reason) {
+        final Counters counters = getCounters(resource);
+        counters.counters[ServerCacheStatistics.MISSES].increment();
+        switch (reason) {
+            case EXPIRED:
+                counters.counters[ServerCacheStatistics.EXPIRED].increment();
+                break;
+            case VARY_MISMATCH:
+                counters.counters[ServerCacheStatistics.VARY_MISMATCHES].increment();
+                break;
+            case MEDIA_TYPE_MISMATCH:
+                counters.counters[ServerCacheStatistics.MEDIA_TYPE_MISMATCHES].increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void recordGet(final String resource, final long nanos) {
+        getCounters(resource).getLatency.record(nanos);
+    }
+
+    @Override
+    public void recordAdd(final String resource, final long bytes, final long nanos) {
+        final Counters counters = getCounters(resource);
+        counters.counters[ServerCacheStatistics.ADDS].increment();
+        counters.counters[ServerCacheStatistics.BYTES_STORED].add(bytes);
+        counters.addLatency.record(nanos);
+    }
+
+    @Override
+    public void recordDroppedAdd(final String resource) {
+        getCounters(resource).counters[ServerCacheStatistics.DROPPED_ADDS].increment();
+    }
+
+    @Override
+    public void recordRejectedAdd(final String resource) {
+        getCounters(resource).counters[ServerCacheStatistics.REJECTED_ADDS].increment();
+    }
+
+    @Override
+    public void recordEviction(final long count, final long bytes) {
+        cache.counters[ServerCacheStatistics.EVICTIONS].add(count);
+        cache.counters[ServerCacheStatistics.EVICTED_BYTES].add(bytes);
+    }
+
+    @Override
+    public void recordExpiration(final long count, final long bytes) {
+        cache.counters[ServerCacheStatistics.EXPIRATIONS].add(count);
+        cache.counters[ServerCacheStatistics.EXPIRED_BYTES].add(bytes);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of each resource template.
+     *
+     * @return the statistics keyed, and sorted, by resource template
+     */
+    public Map<String, ServerCacheStatistics> snapshot() {
+        final Map<String, ServerCacheStatistics> result = new TreeMap<>();
+        for (Map.Entry<String, Counters> entry : resources.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, ServerCacheStatistics> getResources() {
+        return snapshot();
+    }
+
+    @Override
+    public ServerCacheStatistics getTotal() {
+        ServerCacheStatistics total = cache.snapshot();
+        for (Counters counters : resources.values()) {
+            total = total.plus(counters.snapshot());
+        }
+        return total;
+    }
+
+    @Override
+    public void reset() {
+        for (Counters counters : resources.values()) {
+            counters.reset();
+        }
+        cache.reset();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server. An MBean already registered with the same name, for
+     * example by a previous deployment of the application, is replaced.
+     *
+     * @param name the value of the {@code name} key of the object name
+     *
+     * @return the object name the metrics were registered with
+     *
+     * @throws JMException if the metrics could not be registered
+     */
+    public ObjectName registerMBean(final String name) throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+        synchronized (REGISTERED) {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            REGISTERED.put(objectName, this);
+        }
+        this.objectName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server if they were registered. Nothing is unregistered if the
+     * metrics have since been replaced by metrics registered with the same name.
+     *
+     * @throws JMException if the metrics could not be unregistered
+     */
+    public void unregisterMBean() throws JMException {
+        final ObjectName objectName = this.objectName;
+        if (objectName != null) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            synchronized (REGISTERED) {
+                if (REGISTERED.remove(objectName, this) && server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            }
+            this.objectName = null;
+        }
+    }
+
+    private Counters getCounters(final String resource) {
+        final String key = resource == null ? UNKNOWN_RESOURCE : resource;
+        final Counters counters = resources.get(key);
+        return counters == null ? resources.computeIfAbsent(key, k -> new Counters()) : counters;
+    }
+}
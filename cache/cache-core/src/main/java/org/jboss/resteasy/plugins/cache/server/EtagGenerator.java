@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+/**
+ * Generates the {@code ETag} for a cached entity when the application did not provide one.
+ * <p>
+ * Implementations must be thread safe.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public interface EtagGenerator {
+
+    /**
+     * Generates the entity tag value, without quotes, for the bytes of the entity.
+     *
+     * @param entity the entity bytes
+     * @param offset the offset of the first byte of the entity
+     * @param length the number of bytes of the entity
+     *
+     * @return the entity tag value
+     */
+    String generate(byte[] entity, int offset, int length);
+
+    /**
+     * Generates the entity tag value, without quotes, for the bytes of the entity.
+     *
+     * @param entity the entity bytes
+     *
+     * @return the entity tag value
+     */
+    default String generate(final byte[] entity) {
+        return generate(entity, 0, entity.length);
+    }
+
+    /**
+     * Returns the generator for the name. The name may be {@code md5}, {@code murmur3} or the fully qualified class
+     * name of an {@link EtagGenerator} with a public no-arg constructor.
+     *
+     * @param name the name of the generator
+     *
+     * @return the generator
+     */
+    static EtagGenerator of(final String name) {
+        if ("md5".equalsIgnoreCase(name)) {
+            return MessageDigestEtagGenerator.MD5;
+        }
+        if ("murmur3".equalsIgnoreCase(name)) {
+            return Murmur3EtagGenerator.INSTANCE;
+        }
+        try {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                loader = EtagGenerator.class.getClassLoader();
+            }
+            return Class.forName(name, true, loader)
+                    .asSubclass(EtagGenerator.class)
+                    .getConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
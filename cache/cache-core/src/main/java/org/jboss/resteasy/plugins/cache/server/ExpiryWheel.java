@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel which fires timers once their deadline has passed.
+ * <p>
+ * Time is divided in ticks and each tick maps to one of a fixed number of slots. Scheduling a timer adds it to the slot
+ * of its deadline and {@linkplain #advance(long, Consumer) advancing} the wheel visits only the slots of the ticks which
+ * have elapsed, so neither depends on the number of timers. Timers with a deadline further than one rotation away stay
+ * in their slot until the rotation of their deadline.
+ * </p>
+ * <p>
+ * Timers are never cancelled. The consumer is expected to check whether the value a timer fires for is still current,
+ * and due, and schedule it again if required.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class ExpiryWheel<T> {
+    private static final class Timer<T> {
+        final T value;
+        final long tick;
+
+        private Timer(final T value, final long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Timer<T>>[] slots;
+    private final long tickMillis;
+    private final AtomicBoolean advancing;
+    // The next tick to be visited
+    private volatile long currentTick;
+
+    /**
+     * Creates a new wheel.
+     *
+     * @param slots      the number of slots, rounded up to a power of two
+     * @param tickMillis the duration of a tick in milliseconds
+     * @param now        the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    ExpiryWheel(final int slots, final long tickMillis, final long now) {
+        final int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.slots = new ConcurrentLinkedQueue[size];
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.tickMillis = tickMillis;
+        this.advancing = new AtomicBoolean();
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * Schedules a timer for the value. The timer fires on the first advance within, or after, the tick of the deadline
+     * so it may fire up to one tick early. A timer scheduled while the wheel is advanced by another thread may fire one
+     * rotation late.
+     *
+     * @param value    the value to fire the timer for
+     * @param deadline the deadline in milliseconds
+     */
+    void schedule(final T value, final long deadline) {
+        final long tick = Math.max(deadline / tickMillis, currentTick);
+        slots[(int) (tick & (slots.length - 1))].add(new Timer<>(value, tick));
+    }
+
+    /**
+     * Indicates whether a full tick has elapsed since the wheel was last {@linkplain #advance(long, Consumer) advanced}.
+     * This allows callers to advance the wheel opportunistically without advancing it on every call.
+     *
+     * @param now the current time in milliseconds
+     *
+     * @return {@code true} if at least one full tick has elapsed since the wheel was last advanced
+     */
+    boolean isDue(final long now) {
+        return now / tickMillis > currentTick;
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Advances the wheel up to the current time firing every timer whose deadline has passed. If the wheel is already
+     * being advanced by another thread this returns immediately.
+     *
+     * @param now      the current time in milliseconds
+     * @param consumer the consumer the values of the fired timers are passed to
+     */
+    void advance(final long now, final Consumer<T> consumer) {
+        if (!advancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final long target = now / tickMillis;
+            final long start = currentTick;
+            // Visiting every slot once fires every timer which is due, however long the wheel was not advanced
+            final long end = Math.min(target, start + slots.length - 1);
+            // Timers scheduled by the consumer are due on a later tick and are not visited again
+            currentTick = Math.max(start, target + 1);
+            for (long tick = start; tick <= end; tick++) {
+                final Iterator<Timer<T>> timers = slots[(int) (tick & (slots.length - 1))].iterator();
+                while (timers.hasNext()) {
+                    final Timer<T> timer = timers.next();
+                    if (timer.tick <= target) {
+                        timers.remove();
+                        consumer.accept(timer.value);
+                    }
+                }
+            }
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    /**
+     * Removes every timer.
+     */
+    void clear() {
+        for (ConcurrentLinkedQueue<Timer<T>> slot : slots) {
+            slot.clear();
+        }
+    }
+}
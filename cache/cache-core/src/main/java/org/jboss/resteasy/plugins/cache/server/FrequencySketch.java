@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Estimates how often a key has been seen recently, as used by the TinyLFU admission policy.
+ * <p>
+ * A doorkeeper bloom filter absorbs the first occurrence of each key so one-hit wonders never reach the count-min
+ * sketch. The sketch has {@link #DEPTH} rows of 4-bit saturating counters which are only incremented when they hold the
+ * current minimum. Once the number of additions reaches the sample size every counter is halved and the doorkeeper is
+ * cleared, so the estimates favour recent history.
+ * </p>
+ * <p>
+ * The counters are updated without synchronization. A lost update only makes an estimate lower, which is acceptable
+ * for an admission filter.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class FrequencySketch {
+    static final int DEPTH = 4;
+    static final int MAX_COUNT = 15;
+    // Multipliers used to derive a hash for each row
+    private static final int[] SEEDS = { 0x97cb3127, 0x2c64c2b1, 0x5b3a9a3b, 0x8ebc6af1 };
+
+    private final byte[] table;
+    private final int widthMask;
+    private final long[] doorkeeper;
+    private final int doorkeeperMask;
+    private final int sampleSize;
+    private final AtomicInteger additions;
+
+    /**
+     * Creates a new sketch.
+     *
+     * @param expectedKeys the number of distinct keys expected to be seen within a sample period
+     */
+    FrequencySketch(final int expectedKeys) {
+        final int width = Integer.highestOneBit(Math.max(16, Math.min(expectedKeys, 1 << 24) - 1) << 1);
+        this.table = new byte[DEPTH * width];
+        this.widthMask = width - 1;
+        // Roughly 8 bits per key keeps the false positive rate of the doorkeeper low
+        final int doorkeeperBits = width << 3;
+        this.doorkeeper = new long[doorkeeperBits >>> 6];
+        this.doorkeeperMask = doorkeeperBits - 1;
+        this.sampleSize = width * 10;
+        this.additions = new AtomicInteger();
+    }
+
+    /**
+     * Records an occurrence of the key.
+     *
+     * @param key the key
+     */
+    void increment(final String key) {
+        final int hash = spread(key.hashCode());
+        // The first occurrence only sets the doorkeeper
+        if (setDoorkeeper(hash)) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, table[index(hash, i)]);
+            }
+            if (min < MAX_COUNT) {
+                for (int i = 0; i < DEPTH; i++) {
+                    final int index = index(hash, i);
+                    if (table[index] == min) {
+                        table[index] = (byte) (min + 1);
+                    }
+                }
+            }
+        }
+        if (additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the key.
+     *
+     * @param key the key
+     *
+     * @return the estimated frequency
+     */
+    int frequency(final String key) {
+        final int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, table[index(hash, i)]);
+        }
+        // The doorkeeper holds the first occurrence since the last reset
+        return containsDoorkeeper(hash) ? min + 1 : min;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) (table[i] >>> 1);
+        }
+        for (int i = 0; i < doorkeeper.length; i++) {
+            doorkeeper[i] = 0L;
+        }
+        additions.set(0);
+    }
+
+    /**
+     * Sets the doorkeeper bits of the hash.
+     *
+     * @return {@code true} if all the bits were already set
+     */
+    private boolean setDoorkeeper(final int hash) {
+        boolean present = true;
+        for (int i = 0; i < 2; i++) {
+            final int bit = (hash * SEEDS[i] >>> 7) & doorkeeperMask;
+            final long mask = 1L << bit;
+            final int word = bit >>> 6;
+            if ((doorkeeper[word] & mask) == 0L) {
+                doorkeeper[word] |= mask;
+                present = false;
+            }
+        }
+        return present;
+    }
+
+    private boolean containsDoorkeeper(final int hash) {
+        for (int i = 0; i < 2; i++) {
+            final int bit = (hash * SEEDS[i] >>> 7) & doorkeeperMask;
+            if ((doorkeeper[bit >>> 6] & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(final int hash, final int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return (row * (widthMask + 1)) + (h & widthMask);
+    }
+
+    private static int spread(final int hashCode) {
+        // The finalizer of MurmurHash3 so similar keys are spread over the table
+        int h = hashCode;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
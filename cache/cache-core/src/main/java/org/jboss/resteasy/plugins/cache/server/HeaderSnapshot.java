@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.RuntimeDelegate;
+
+/**
+ * An immutable, pre-serialized, copy of the headers of a cached response.
+ * <p>
+ * Each header value is converted to its string form once, when the snapshot is created, so a cache hit only copies
+ * strings to the response. The {@code Cache-Control} header is not part of the snapshot as it is computed for each
+ * hit.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class HeaderSnapshot {
+    private static final HeaderSnapshot EMPTY = new HeaderSnapshot(new String[0], new String[0], -1L);
+
+    private final String[] names;
+    private final String[] values;
+    private final long lastModified;
+
+    private HeaderSnapshot(final String[] names, final String[] values, final long lastModified) {
+        this.names = names;
+        this.values = values;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Creates a snapshot of the headers. Values are converted with the {@link RuntimeDelegate.HeaderDelegate} for
+     * their type, if there is one, otherwise with {@link Object#toString()}.
+     *
+     * @param headers the headers, may be {@code null}
+     *
+     * @return the snapshot
+     */
+    public static HeaderSnapshot of(final MultivaluedMap<String, ?> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return EMPTY;
+        }
+        final List<String> names = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        long lastModified = -1L;
+        for (Map.Entry<String, ? extends List<?>> header : headers.entrySet()) {
+            if (HttpHeaders.CACHE_CONTROL.equalsIgnoreCase(header.getKey()) || header.getValue() == null) {
+                continue;
+            }
+            for (Object value : header.getValue()) {
+                if (value != null) {
+                    final String stringValue = toString(value);
+                    names.add(header.getKey());
+                    values.add(stringValue);
+                    if (lastModified < 0L && HttpHeaders.LAST_MODIFIED.equalsIgnoreCase(header.getKey())) {
+                        lastModified = Preconditions.parseDate(stringValue);
+                    }
+                }
+            }
+        }
+        return new HeaderSnapshot(names.toArray(new String[0]), values.toArray(new String[0]), lastModified);
+    }
+
+    /**
+     * Returns the value of the {@code Last-Modified} header.
+     *
+     * @return the last modification time in milliseconds or -1 if the header is absent or not a valid date
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the number of header values in the snapshot.
+     *
+     * @return the number of header values
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the name of the header at the index.
+     *
+     * @param index the index of the header value
+     *
+     * @return the header name
+     */
+    public String getName(final int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns the value of the header at the index.
+     *
+     * @param index the index of the header value
+     *
+     * @return the header value
+     */
+    public String getValue(final int index) {
+        return values[index];
+    }
+
+    /**
+     * Adds the headers to the response being built.
+     *
+     * @param builder the response builder
+     */
+    public void applyTo(final Response.ResponseBuilder builder) {
+        for (int i = 0; i < names.length; i++) {
+            builder.header(names[i], values[i]);
+        }
+    }
+
+    /**
+     * Adds the headers to the response headers.
+     *
+     * @param headers the response headers
+     */
+    public void applyTo(final MultivaluedMap<String, Object> headers) {
+        for (int i = 0; i < names.length; i++) {
+            headers.add(names[i], values[i]);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static String toString(final Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof HeaderHolder) {
+            return ((HeaderHolder) value).getValue();
+        }
+        final RuntimeDelegate.HeaderDelegate delegate = RuntimeDelegate.getInstance()
+                .createHeaderDelegate(value.getClass());
+        return delegate == null ? value.toString() : delegate.toString(value);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Upper case hexadecimal encoding which only allocates the resulting string.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class HexEncoding {
+    private static final byte[] DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private HexEncoding() {
+    }
+
+    /**
+     * Encodes the bytes as an upper case hexadecimal string.
+     *
+     * @param bytes the bytes to encode
+     *
+     * @return the hexadecimal string
+     */
+    static String toHexString(final byte[] bytes) {
+        final byte[] out = new byte[bytes.length << 1];
+        int pos = 0;
+        for (byte b : bytes) {
+            out[pos++] = DIGITS[(b >>> 4) & 0x0F];
+            out[pos++] = DIGITS[b & 0x0F];
+        }
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encodes the two values, most significant byte first, as a 32 character upper case hexadecimal string.
+     *
+     * @param high the first 64 bits
+     * @param low  the last 64 bits
+     *
+     * @return the hexadecimal string
+     */
+    static String toHexString(final long high, final long low) {
+        final byte[] out = new byte[32];
+        for (int i = 15; i >= 0; i--) {
+            out[i] = DIGITS[(int) (high >>> ((15 - i) << 2)) & 0x0F];
+            out[i + 16] = DIGITS[(int) (low >>> ((15 - i) << 2)) & 0x0F];
+        }
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+}
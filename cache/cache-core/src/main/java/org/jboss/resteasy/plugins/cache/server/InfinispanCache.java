@@ -18,14 +18,20 @@ package org.jboss.resteasy.plugins.cache.server;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import jakarta.ws.rs.core.CacheControl;
 import jakarta.ws.rs.core.Cookie;
@@ -35,9 +41,25 @@ import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.NewCookie;
 
 import org.infinispan.Cache;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvent;
+import org.infinispan.util.function.SerializableBiFunction;
 
 /**
  * An HTTP cache that behaves somewhat the same way as a proxy (like Squid)
+ * <p>
+ * The URIs of each invalidation tag are stored in the same cache under a {@link TagKey}, and the URIs with a query
+ * under a {@link PathKey} of their path, so {@link #removeByTag(String)} and {@link #removeByPath(String)} do not visit
+ * the other keys of the cache. Removing by prefix iterates the keys of the cache. The index entries expire with the
+ * longest retained of their URIs, and the URIs which are no longer retained are dropped from an index entry whenever a
+ * URI is added to it.
+ * </p>
  *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
@@ -48,21 +70,48 @@ public class InfinispanCache implements ServerCache {
         private static final long serialVersionUID = 2848638331930090578L;
 
         private byte[] cached;
+        private byte[] gzipped;
         private int expires;
         private long timestamp = System.currentTimeMillis();
         private String etag;
-        private transient MultivaluedMap<String, Object> headers;
+        private int staleWhileRevalidate;
+        private int staleIfError;
+        private transient volatile MultivaluedMap<String, Object> headers;
+        // The serialized form of the headers, only set when deserialized
+        private transient MultivaluedMap<String, Object> headerHolders;
+        private transient volatile HeaderSnapshot headerSnapshot;
         private transient MediaType mediaType;
         private transient MultivaluedMap<String, String> varyHeaders;
+        private transient volatile VaryKey varyKey;
 
-        private CacheEntry(final MultivaluedMap<String, Object> headers, final byte[] cached, final int expires,
-                final String etag, final MediaType mediaType,
+        private CacheEntry(final MultivaluedMap<String, Object> headers, final byte[] cached, final byte[] gzipped,
+                final CacheControl cc, final String etag, final MediaType mediaType,
                 final MultivaluedMap<String, String> varyHeaders) {
             this.cached = cached;
-            this.expires = expires;
+            this.gzipped = gzipped;
+            this.expires = cc.getMaxAge();
+            this.staleWhileRevalidate = CacheDirectives.staleWhileRevalidate(cc);
+            this.staleIfError = CacheDirectives.staleIfError(cc);
             this.headers = headers;
+            this.headerSnapshot = HeaderSnapshot.of(headers);
+            this.etag = etag;
+            this.mediaType = mediaType;
+            this.varyHeaders = varyHeaders;
+            this.varyKey = VaryKey.of(varyHeaders);
+        }
+
+        CacheEntry(final byte[] cached, final byte[] gzipped, final long timestamp, final int expires,
+                final int staleWhileRevalidate, final int staleIfError, final String etag, final MediaType mediaType,
+                final MultivaluedMap<String, Object> headerHolders, final MultivaluedMap<String, String> varyHeaders) {
+            this.cached = cached;
+            this.gzipped = gzipped;
+            this.timestamp = timestamp;
+            this.expires = expires;
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            this.staleIfError = staleIfError;
             this.etag = etag;
             this.mediaType = mediaType;
+            this.headerHolders = headerHolders;
             this.varyHeaders = varyHeaders;
         }
 
@@ -78,40 +127,431 @@ public class InfinispanCache implements ServerCache {
             return etag;
         }
 
+        public int getStaleWhileRevalidate() {
+            return staleWhileRevalidate;
+        }
+
+        public int getStaleIfError() {
+            return staleIfError;
+        }
+
         public MultivaluedMap<String, Object> getHeaders() {
+            MultivaluedMap<String, Object> headers = this.headers;
+            if (headers == null) {
+                // Only parse the serialized headers if they are requested, hits use the snapshot
+                headers = unstringifyHeaders(headerHolders);
+                this.headers = headers;
+            }
             return headers;
         }
 
+        public HeaderSnapshot getHeaderSnapshot() {
+            HeaderSnapshot headerSnapshot = this.headerSnapshot;
+            if (headerSnapshot == null) {
+                // The holders already contain the string form of each header value
+                headerSnapshot = HeaderSnapshot.of(headerHolders);
+                this.headerSnapshot = headerSnapshot;
+            }
+            return headerSnapshot;
+        }
+
+        public int getAgeInSeconds() {
+            return (int) ((System.currentTimeMillis() - timestamp) / 1000);
+        }
+
         public MultivaluedMap<String, String> getVaryHeaders() {
             return varyHeaders;
         }
 
+        public VaryKey getVaryKey() {
+            VaryKey varyKey = this.varyKey;
+            if (varyKey == null) {
+                // Deserialized entries create the key on the first lookup
+                varyKey = VaryKey.of(varyHeaders);
+                this.varyKey = varyKey;
+            }
+            return varyKey;
+        }
+
         public byte[] getCached() {
             return cached;
         }
 
+        public ByteBuffer getGzipBuffer() {
+            return gzipped == null ? null : ByteBuffer.wrap(gzipped).asReadOnlyBuffer();
+        }
+
+        byte[] getGzipped() {
+            return gzipped;
+        }
+
         public MediaType getMediaType() {
             return mediaType;
         }
 
-        private void writeObject(ObjectOutputStream stream) throws IOException {
-            stream.defaultWriteObject();
-            stream.writeObject(stringifyHeaders(headers));
-            stream.writeObject(stringifyHeaders(varyHeaders));
-            stream.writeUTF(mediaType.toString());
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        int getMaxAge() {
+            return expires;
+        }
+
+        MultivaluedMap<String, ?> getSerializedHeaders() {
+            return headerHolders == null ? stringifyHeaders(headers) : headerHolders;
+        }
+
+        /**
+         * Entries are serialized in the compact {@link CacheEntryCodec} format. The {@link #readObject(ObjectInputStream)}
+         * method is kept to read entries persisted with the previous format.
+         */
+        private Object writeReplace() throws ObjectStreamException {
+            return new CacheEntryCodec.Serialized(this);
         }
 
         @SuppressWarnings("unchecked")
         private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
             stream.defaultReadObject();
-            headers = unstringifyHeaders(MultivaluedMap.class.cast(stream.readObject()));
+            headerHolders = MultivaluedMap.class.cast(stream.readObject());
             varyHeaders = unstringifyHeaders(MultivaluedMap.class.cast(stream.readObject()));
             mediaType = MediaType.valueOf(stream.readUTF());
         }
     }
 
+    /**
+     * All the media type and vary variants cached for a single URI. The variants are stored as a single cache value so
+     * a lookup requires a single cache read. Instances are immutable and replaced atomically on each change.
+     */
+    public static class CacheVariants implements Serializable {
+        private static final long serialVersionUID = -6434263465375367364L;
+
+        private final CacheEntry[] entries;
+
+        CacheVariants(final CacheEntry[] entries) {
+            this.entries = entries;
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+            return new CacheEntryCodec.Serialized(this);
+        }
+
+        /**
+         * Returns the cached variants.
+         *
+         * @return an unmodifiable list of the variants
+         */
+        public List<CacheEntry> getEntries() {
+            return List.of(entries);
+        }
+
+        /**
+         * Returns the longest time, in seconds, any of the variants must still be retained for, including the time it
+         * may be served stale.
+         *
+         * @return the longest time remaining of all the variants
+         */
+        int getMaxExpirationInSeconds() {
+            int result = 0;
+            for (CacheEntry entry : entries) {
+                result = Math.max(result, CacheDirectives.retention(entry));
+            }
+            return result;
+        }
+
+        /**
+         * Variants are equal if they hold the same cached responses. This allows the variants to be replaced
+         * conditionally, including by a copy read from another node.
+         */
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof CacheVariants)) {
+                return false;
+            }
+            final CacheEntry[] other = ((CacheVariants) obj).entries;
+            if (entries.length != other.length) {
+                return false;
+            }
+            for (int i = 0; i < entries.length; i++) {
+                final CacheEntry entry = entries[i];
+                if (entry.timestamp != other[i].timestamp || !Objects.equals(entry.etag, other[i].etag)
+                        || !AddVariant.isSameVariant(entry, other[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 1;
+            for (CacheEntry entry : entries) {
+                result = 31 * result + Long.hashCode(entry.timestamp);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Adds a variant to the {@link CacheVariants} of a URI replacing the same variant and dropping any expired ones
+     * which can no longer be served stale.
+     * This is a named, serializable, function so it can be used with clustered caches.
+     */
+    private static class AddVariant implements SerializableBiFunction<Object, Object, Object> {
+        private static final long serialVersionUID = 5208737384446539071L;
+
+        private final CacheEntry entry;
+
+        private AddVariant(final CacheEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object apply(final Object key, final Object current) {
+            final List<CacheEntry> entries = new ArrayList<>();
+            entries.add(entry);
+            // Anything other than variants is a legacy, pre-variant, index value which can be replaced
+            if (current instanceof CacheVariants) {
+                for (CacheEntry existing : ((CacheVariants) current).entries) {
+                    if (CacheDirectives.isDiscardable(existing) || isSameVariant(existing, entry)) {
+                        continue;
+                    }
+                    entries.add(existing);
+                }
+            }
+            return new CacheVariants(entries.toArray(new CacheEntry[0]));
+        }
+
+        private static boolean isSameVariant(final CacheEntry entry, final CacheEntry other) {
+            return entry.getMediaType().equals(other.getMediaType()) && entry.getVaryKey().equals(other.getVaryKey());
+        }
+    }
+
+    /**
+     * The key the URIs of an invalidation tag are stored with.
+     */
+    static final class TagKey implements Serializable {
+        private static final long serialVersionUID = -2914093553035473466L;
+
+        private final String tag;
+
+        TagKey(final String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof TagKey && tag.equals(((TagKey) obj).tag);
+        }
+
+        @Override
+        public int hashCode() {
+            return tag.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "TagKey(" + tag + ")";
+        }
+    }
+
+    /**
+     * The key the URIs with a query are stored with, by their path.
+     */
+    static final class PathKey implements Serializable {
+        private static final long serialVersionUID = 7320519566371282453L;
+
+        private final String path;
+
+        PathKey(final String path) {
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof PathKey && path.equals(((PathKey) obj).path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "PathKey(" + path + ")";
+        }
+    }
+
+    /**
+     * The URIs of an invalidation tag, or of a path, with the time each URI is retained until. Instances are
+     * immutable.
+     */
+    static final class TaggedUris implements Serializable {
+        private static final long serialVersionUID = 4415390718209046032L;
+
+        private final String[] uris;
+        // The time, in milliseconds, each URI is retained until
+        private final long[] retainedUntil;
+
+        private TaggedUris(final String[] uris, final long[] retainedUntil) {
+            this.uris = uris;
+            this.retainedUntil = retainedUntil;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof TaggedUris)) {
+                return false;
+            }
+            final TaggedUris other = (TaggedUris) obj;
+            return Arrays.equals(uris, other.uris) && Arrays.equals(retainedUntil, other.retainedUntil);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(uris) + Arrays.hashCode(retainedUntil);
+        }
+
+        /**
+         * Returns the longest time, in seconds, any of the URIs must still be retained for.
+         *
+         * @return the longest time remaining of all the URIs
+         */
+        int getMaxExpirationInSeconds() {
+            long max = 0L;
+            for (long until : retainedUntil) {
+                max = Math.max(max, until);
+            }
+            return (int) Math.max(0L, (max - System.currentTimeMillis() + 999L) / 1000L);
+        }
+    }
+
+    /**
+     * Adds a URI to the URIs of a tag, or of a path, dropping the URIs which are no longer retained. This is a named,
+     * serializable, function so it can be used with clustered caches.
+     */
+    private static class AddTaggedUri implements SerializableBiFunction<Object, Object, Object> {
+        private static final long serialVersionUID = 6032874187602143559L;
+
+        private final String uri;
+        private final long retainedUntil;
+
+        private AddTaggedUri(final String uri, final long retainedUntil) {
+            this.uri = uri;
+            this.retainedUntil = retainedUntil;
+        }
+
+        @Override
+        public Object apply(final Object key, final Object current) {
+            final List<String> uris = new ArrayList<>();
+            final List<Long> retained = new ArrayList<>();
+            uris.add(uri);
+            retained.add(retainedUntil);
+            if (current instanceof TaggedUris) {
+                final long now = System.currentTimeMillis();
+                final TaggedUris tagged = (TaggedUris) current;
+                for (int i = 0; i < tagged.uris.length; i++) {
+                    if (tagged.uris[i].equals(uri)) {
+                        retained.set(0, Math.max(retainedUntil, tagged.retainedUntil[i]));
+                    } else if (tagged.retainedUntil[i] > now) {
+                        uris.add(tagged.uris[i]);
+                        retained.add(tagged.retainedUntil[i]);
+                    }
+                }
+            } else if (current instanceof String[]) {
+                // A legacy index without retention times, keep its URIs as long as the added one
+                for (String existing : (String[]) current) {
+                    if (!existing.equals(uri)) {
+                        uris.add(existing);
+                        retained.add(retainedUntil);
+                    }
+                }
+            }
+            final long[] result = new long[retained.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = retained.get(i);
+            }
+            return new TaggedUris(uris.toArray(new String[0]), result);
+        }
+    }
+
+    /**
+     * Reports the evictions of the cache to the {@link ServerCacheMetrics}. Infinispan requires listeners to be public.
+     */
+    @Listener(sync = false)
+    public static class EvictionListener {
+        private final ServerCacheMetrics metrics;
+
+        EvictionListener(final ServerCacheMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @CacheEntriesEvicted
+        public void evicted(final CacheEntriesEvictedEvent<Object, Object> event) {
+            long count = 0L;
+            long bytes = 0L;
+            for (Object value : event.getEntries().values()) {
+                // Ignore the tag and path index
+                if (value instanceof CacheVariants) {
+                    count++;
+                    for (CacheEntry entry : ((CacheVariants) value).entries) {
+                        bytes += entry.cached.length + (entry.gzipped == null ? 0 : entry.gzipped.length);
+                    }
+                }
+            }
+            if (count > 0L) {
+                metrics.recordEviction(count, bytes);
+            }
+        }
+    }
+
+    /**
+     * Notifies an {@linkplain #addInvalidationListener(Consumer) invalidation listener} of the URIs removed from the
+     * cache, or changed by another node. The listener is clustered so, in a distributed cache, every node is notified
+     * and not only the owners of the entry. Infinispan requires listeners to be public.
+     */
+    @Listener(clustered = true)
+    public static class InvalidationListener {
+        private final Consumer<String> listener;
+
+        InvalidationListener(final Consumer<String> listener) {
+            this.listener = listener;
+        }
+
+        @CacheEntryCreated
+        @CacheEntryModified
+        public void changed(final CacheEntryEvent<Object, Object> event) {
+            // Entries added on this node are invalidated by the one adding them
+            if (!event.isOriginLocal()) {
+                notify(event);
+            }
+        }
+
+        @CacheEntryRemoved
+        @CacheEntryExpired
+        public void removed(final CacheEntryEvent<Object, Object> event) {
+            notify(event);
+        }
+
+        private void notify(final CacheEntryEvent<Object, Object> event) {
+            // Ignore the tag and path index
+            if (!event.isPre() && event.getKey() instanceof String) {
+                listener.accept((String) event.getKey());
+            }
+        }
+    }
+
+    // The number of times a value is merged and conditionally replaced before falling back to compute
+    private static final int MAX_MERGE_ATTEMPTS = 8;
     @SuppressWarnings("rawtypes")
     protected Cache cache;
+    private EvictionListener evictionListener;
 
     @SuppressWarnings("rawtypes")
     public InfinispanCache(final Cache cache) {
@@ -119,16 +559,23 @@ public class InfinispanCache implements ServerCache {
     }
 
     public Entry get(String uri, MediaType accept, MultivaluedMap<String, String> headers) {
-        @SuppressWarnings("unchecked")
-        Set<String> entries = (Set<String>) cache.get(uri);
-        if (entries == null)
+        final Object value = cache.get(uri);
+        if (!(value instanceof CacheVariants))
             return null;
 
-        for (String entry : entries) {
-            CacheEntry cacheEntry = (CacheEntry) cache.get(entry);
-            if (cacheEntry == null)
+        VaryKey requestKey = null;
+        long fingerprint = 0L;
+        for (CacheEntry cacheEntry : ((CacheVariants) value).entries) {
+            if (!accept.isCompatible(cacheEntry.getMediaType())) {
                 continue;
-            if (accept.isCompatible(cacheEntry.getMediaType()) && !ServerCache.mayVary(cacheEntry, headers)) {
+            }
+            // The request is only hashed once for the variants which vary on the same headers
+            final VaryKey varyKey = cacheEntry.getVaryKey();
+            if (requestKey == null || !requestKey.hasSameNames(varyKey)) {
+                requestKey = varyKey;
+                fingerprint = requestKey.fingerprint(headers);
+            }
+            if (varyKey.matches(headers, fingerprint)) {
                 return cacheEntry;
             }
         }
@@ -138,30 +585,172 @@ public class InfinispanCache implements ServerCache {
     @SuppressWarnings("unchecked")
     public Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers,
             byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders) {
-        // there's a race condition here with a concurrent get() method above.  Too bad JBoss Cache doesn't have a way to create
-        // a node before hand then insert it
-        CacheEntry cacheEntry = new CacheEntry(headers, entity, cc.getMaxAge(), etag, mediaType, varyHeaders);
-        StringBuffer varyHeadersString = new StringBuffer();
-        varyHeaders.forEach((name, values) -> values.forEach(value -> varyHeadersString.append(name).append(value)));
-        String entryName = uri + "    " + mediaType.toString() + "    " + varyHeadersString.toString();
-        Set<String> entries = (Set<String>) cache.get(uri);
-        Set<String> newEntries = new HashSet<String>();
-        newEntries.add(entryName);
-        if (entries != null) {
-            newEntries.addAll(entries);
-        }
-        cache.put(uri, newEntries);
-        cache.put(entryName, cacheEntry, cc.getMaxAge(), TimeUnit.SECONDS);
+        return add(uri, mediaType, cc, headers, entity, etag, varyHeaders, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers,
+            byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders, byte[] gzipped) {
+        return add(uri, mediaType, cc, headers, entity, etag, varyHeaders, gzipped, Set.of());
+    }
+
+    public Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers,
+            byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders, byte[] gzipped, Set<String> tags) {
+        CacheEntry cacheEntry = new CacheEntry(headers, entity, gzipped, cc, etag, mediaType, varyHeaders);
+        final CacheVariants variants = (CacheVariants) merge(uri, new AddVariant(cacheEntry));
+        final int lifespan = variants.getMaxExpirationInSeconds();
+        final int queryStart = uri.indexOf('?');
+        if (queryStart >= 0) {
+            merge(new PathKey(uri.substring(0, queryStart)), addTaggedUri(uri, lifespan));
+        }
+        if (tags != null) {
+            for (String tag : tags) {
+                merge(new TagKey(tag), addTaggedUri(uri, lifespan));
+            }
+        }
         return cacheEntry;
     }
 
+    @SuppressWarnings("unchecked")
+    public CompletionStage<Entry> addAsync(String uri, MediaType mediaType, CacheControl cc,
+            MultivaluedMap<String, Object> headers, byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders,
+            byte[] gzipped, Set<String> tags) {
+        final CacheEntry cacheEntry = new CacheEntry(headers, entity, gzipped, cc, etag, mediaType, varyHeaders);
+        return mergeAsync(uri, new AddVariant(cacheEntry), 0).<Entry> thenCompose(variants -> {
+            final int lifespan = ((CacheVariants) variants).getMaxExpirationInSeconds();
+            final List<CompletableFuture<?>> writes = new ArrayList<>();
+            final int queryStart = uri.indexOf('?');
+            if (queryStart >= 0) {
+                writes.add(mergeAsync(new PathKey(uri.substring(0, queryStart)), addTaggedUri(uri, lifespan), 0));
+            }
+            if (tags != null) {
+                for (String tag : tags) {
+                    writes.add(mergeAsync(new TagKey(tag), addTaggedUri(uri, lifespan), 0));
+                }
+            }
+            if (writes.isEmpty()) {
+                return CompletableFuture.completedFuture(cacheEntry);
+            }
+            return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).thenApply(v -> cacheEntry);
+        });
+    }
+
+    /**
+     * Merges into the value of the key and stores the result with a lifespan taken from the result itself, so the
+     * value is kept for as long as the longest retained variant, or URI of a tag, it holds. The lifespan of a value
+     * cannot be computed within {@link Cache#compute(Object, SerializableBiFunction, long, TimeUnit)}, so the value is
+     * read, merged and replaced only if it did not change in between, retrying otherwise. A value which keeps changing
+     * is merged with {@code compute} and the lifespan of the last attempt.
+     *
+     * @return the merged value
+     */
+    @SuppressWarnings("unchecked")
+    private Object merge(final Object key, final SerializableBiFunction<Object, Object, Object> function) {
+        Object merged = null;
+        for (int attempt = 0; attempt < MAX_MERGE_ATTEMPTS; attempt++) {
+            final Object current = cache.get(key);
+            merged = function.apply(key, current);
+            final int lifespan = getLifespan(merged);
+            if (current == null ? cache.putIfAbsent(key, merged, lifespan, TimeUnit.SECONDS) == null
+                    : cache.replace(key, current, merged, lifespan, TimeUnit.SECONDS)) {
+                return merged;
+            }
+        }
+        return cache.compute(key, function, getLifespan(merged), TimeUnit.SECONDS);
+    }
+
+    /**
+     * The asynchronous form of {@link #merge(Object, SerializableBiFunction)}.
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> mergeAsync(final Object key,
+            final SerializableBiFunction<Object, Object, Object> function, final int attempt) {
+        final CompletableFuture<Object> read = cache.getAsync(key);
+        return read.thenCompose(current -> {
+            final Object merged = function.apply(key, current);
+            final int lifespan = getLifespan(merged);
+            if (attempt >= MAX_MERGE_ATTEMPTS) {
+                return (CompletableFuture<Object>) cache.computeAsync(key, function, lifespan, TimeUnit.SECONDS);
+            }
+            final CompletableFuture<Boolean> written = current == null
+                    ? cache.putIfAbsentAsync(key, merged, lifespan, TimeUnit.SECONDS).thenApply(Objects::isNull)
+                    : cache.replaceAsync(key, current, merged, lifespan, TimeUnit.SECONDS);
+            return written.thenCompose(done -> done ? CompletableFuture.completedFuture(merged)
+                    : mergeAsync(key, function, attempt + 1));
+        });
+    }
+
+    /**
+     * The variants of a URI are kept for as long as the longest living variant, including the time it may be served
+     * stale, and a tag for as long as the longest retained of its URIs.
+     */
+    private static int getLifespan(final Object value) {
+        if (value instanceof CacheVariants) {
+            return ((CacheVariants) value).getMaxExpirationInSeconds();
+        }
+        return value instanceof TaggedUris ? ((TaggedUris) value).getMaxExpirationInSeconds() : 0;
+    }
+
+    private static AddTaggedUri addTaggedUri(final String uri, final int lifespan) {
+        return new AddTaggedUri(uri, System.currentTimeMillis() + (lifespan * 1000L));
+    }
+
+    public List<? extends Entry> getVariants(String uri) {
+        final Object value = cache.get(uri);
+        return value instanceof CacheVariants ? ((CacheVariants) value).getEntries() : List.of();
+    }
+
+    public synchronized void setMetrics(ServerCacheMetrics metrics) {
+        if (evictionListener != null) {
+            cache.removeListener(evictionListener);
+            evictionListener = null;
+        }
+        if (metrics != null) {
+            evictionListener = new EvictionListener(metrics);
+            cache.addListener(evictionListener);
+        }
+    }
+
+    public void addInvalidationListener(Consumer<String> listener) {
+        cache.addListener(new InvalidationListener(listener));
+    }
+
     public void remove(String uri) {
-        @SuppressWarnings("unchecked")
-        Set<String> entries = (Set<String>) cache.remove(uri);
-        if (entries == null)
-            return;
-        for (String entry : entries) {
-            cache.remove(entry);
+        cache.remove(uri);
+    }
+
+    public void removeByTag(String tag) {
+        removeIndexed(cache.remove(new TagKey(tag)));
+    }
+
+    public void removeByPath(String path) {
+        cache.remove(path);
+        removeIndexed(cache.remove(new PathKey(path)));
+    }
+
+    private void removeIndexed(final Object uris) {
+        if (uris instanceof TaggedUris) {
+            for (String uri : ((TaggedUris) uris).uris) {
+                cache.remove(uri);
+            }
+        } else if (uris instanceof String[]) {
+            for (String uri : (String[]) uris) {
+                cache.remove(uri);
+            }
+        }
+    }
+
+    public void removeByPrefix(String prefix) {
+        final List<Object> keys = new ArrayList<>();
+        for (Object key : cache.keySet()) {
+            // The path index of the removed URIs is removed with them
+            if (key instanceof String && ((String) key).startsWith(prefix)
+                    || key instanceof PathKey && ((PathKey) key).path.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        for (Object key : keys) {
+            cache.remove(key);
         }
     }
 
@@ -187,6 +776,8 @@ public class InfinispanCache implements ServerCache {
                     outList.add(new HeaderHolder(HeaderHolder.Type.COOKIE, Cookie.class.cast(o).toString()));
                 } else if (o instanceof EntityTag) {
                     outList.add(new HeaderHolder(HeaderHolder.Type.ENTITY_TAG, EntityTag.class.cast(o).toString()));
+                } else if (o instanceof Date) {
+                    outList.add(new HeaderHolder(HeaderHolder.Type.OTHER, Preconditions.formatDate(((Date) o).getTime())));
                 } else {
                     outList.add(new HeaderHolder(HeaderHolder.Type.OTHER, o.toString()));
                 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies with exponential buckets. The upper bound of bucket {@code i} is
+ * {@code 2^i} microseconds, the last bucket holds everything larger.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+class LatencyHistogram {
+    static final int BUCKETS = 25;
+
+    private final LongAdder[] counts;
+    private final LongAdder totalNanos;
+
+    LatencyHistogram() {
+        counts = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+        totalNanos = new LongAdder();
+    }
+
+    void record(final long nanos) {
+        final long micros = Math.max(0L, nanos) / 1000L;
+        final int index = micros <= 1L ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1L);
+        counts[Math.min(index, BUCKETS - 1)].increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Returns the counts of each bucket.
+     *
+     * @return a copy of the bucket counts
+     */
+    long[] snapshot() {
+        final long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = counts[i].sum();
+        }
+        return result;
+    }
+
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+        totalNanos.reset();
+    }
+
+    /**
+     * Returns the upper bound, in microseconds, of the bucket.
+     *
+     * @param bucket the bucket index
+     *
+     * @return the upper bound of the bucket or {@link Long#MAX_VALUE} for the last bucket
+     */
+    static long upperBound(final int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+}
@@ -0,0 +1,906 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+/**
+ * An in-process {@link ServerCache} which does not require Infinispan.
+ * <p>
+ * Entries are kept in a {@link ConcurrentHashMap} keyed by the request URI, where each value holds every media type and
+ * vary variant of that URI. Lookups never lock. The cache is bounded by the total byte weight of the cached entities
+ * and, optionally, by the number of cached URIs. Once a bound is exceeded a single thread evicts the least recently
+ * accessed URIs until the cache is back under {@link #EVICTION_FACTOR} of its bounds.
+ * </p>
+ * <p>
+ * A sorted set of the cached URIs and an index of the invalidation tags to their URIs are maintained with each change,
+ * so {@link #removeByPrefix(String)} and {@link #removeByTag(String)} only visit the URIs they remove.
+ * </p>
+ * <p>
+ * Each URI is scheduled on a hashed timing wheel at the time its next variant expires. Once every variant of a URI has
+ * expired and can no longer be served stale the URI is removed by the next {@linkplain #expire() expiry sweep}, even
+ * if it is never requested again. A URI has at most one pending timer. The sweep is run by the writes once a tick of
+ * the wheel has elapsed and can also be run in the background with {@link #startExpiry(long, TimeUnit)}, so URIs are
+ * removed even when nothing is written.
+ * The weight held by URIs whose variants have all expired, but may still be served stale, can be capped with
+ * {@link #setMaxStaleSize(long)}.
+ * </p>
+ * <p>
+ * The most frequently hit URIs can be {@linkplain #writeSnapshot(Path, int) written} to a snapshot file, for example on
+ * shutdown, and {@linkplain #restoreSnapshot(Path) restored} on startup so a new instance does not start empty.
+ * </p>
+ * <p>
+ * The entities may optionally be stored off-heap in direct buffers which allows for large caches without growing the
+ * heap.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class LocalServerCache implements ServerCache {
+
+    /**
+     * The default maximum weight, in bytes, of the cache.
+     */
+    public static final long DEFAULT_MAX_SIZE = 32L * 1024L * 1024L;
+
+    /**
+     * The fraction of the bounds the cache is reduced to when an eviction pass is run.
+     */
+    static final double EVICTION_FACTOR = 0.9d;
+
+    // Rough estimate of the per-entry overhead of the entry, the headers and the map node
+    private static final int ENTRY_OVERHEAD = 256;
+
+    // One second ticks, deadlines more than about 8 minutes away go around the wheel
+    private static final int WHEEL_SLOTS = 512;
+
+    public static class LocalEntry implements Entry {
+        private final ByteBuffer cached;
+        private final ByteBuffer gzipped;
+        private final int expires;
+        private final long timestamp;
+        private final String etag;
+        private final int staleWhileRevalidate;
+        private final int staleIfError;
+        private final MultivaluedMap<String, Object> headers;
+        private final HeaderSnapshot headerSnapshot;
+        private final MediaType mediaType;
+        private final MultivaluedMap<String, String> varyHeaders;
+        private final VaryKey varyKey;
+        private final Set<String> tags;
+
+        private LocalEntry(final MultivaluedMap<String, Object> headers, final ByteBuffer cached, final ByteBuffer gzipped,
+                final CacheControl cc, final String etag, final MediaType mediaType,
+                final MultivaluedMap<String, String> varyHeaders, final Set<String> tags) {
+            this(headers, cached, gzipped, System.currentTimeMillis(), cc.getMaxAge(),
+                    CacheDirectives.staleWhileRevalidate(cc), CacheDirectives.staleIfError(cc), etag, mediaType,
+                    varyHeaders, tags);
+        }
+
+        /**
+         * Creates an entry restored from a {@linkplain CacheSnapshot snapshot}.
+         */
+        LocalEntry(final MultivaluedMap<String, Object> headers, final ByteBuffer cached, final ByteBuffer gzipped,
+                final long timestamp, final int expires, final int staleWhileRevalidate, final int staleIfError,
+                final String etag, final MediaType mediaType, final MultivaluedMap<String, String> varyHeaders,
+                final Set<String> tags) {
+            this.cached = cached;
+            this.gzipped = gzipped;
+            this.timestamp = timestamp;
+            this.expires = expires;
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            this.staleIfError = staleIfError;
+            this.headers = headers;
+            this.headerSnapshot = HeaderSnapshot.of(headers);
+            this.etag = etag;
+            this.mediaType = mediaType;
+            this.varyHeaders = varyHeaders;
+            this.varyKey = VaryKey.of(varyHeaders);
+            this.tags = tags;
+        }
+
+        @Override
+        public int getExpirationInSeconds() {
+            return expires - (int) ((System.currentTimeMillis() - timestamp) / 1000);
+        }
+
+        @Override
+        public boolean isExpired() {
+            return System.currentTimeMillis() - timestamp >= expires * 1000L;
+        }
+
+        @Override
+        public String getEtag() {
+            return etag;
+        }
+
+        @Override
+        public int getStaleWhileRevalidate() {
+            return staleWhileRevalidate;
+        }
+
+        @Override
+        public int getStaleIfError() {
+            return staleIfError;
+        }
+
+        @Override
+        public MultivaluedMap<String, Object> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public HeaderSnapshot getHeaderSnapshot() {
+            return headerSnapshot;
+        }
+
+        @Override
+        public int getAgeInSeconds() {
+            return (int) ((System.currentTimeMillis() - timestamp) / 1000);
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getVaryHeaders() {
+            return varyHeaders;
+        }
+
+        @Override
+        public VaryKey getVaryKey() {
+            return varyKey;
+        }
+
+        @Override
+        public byte[] getCached() {
+            if (cached.hasArray() && cached.arrayOffset() == 0 && cached.array().length == cached.remaining()) {
+                return cached.array();
+            }
+            // Stored off-heap, copy the entity
+            final byte[] result = new byte[cached.remaining()];
+            cached.duplicate().get(result);
+            return result;
+        }
+
+        @Override
+        public ByteBuffer getCachedBuffer() {
+            return cached.asReadOnlyBuffer();
+        }
+
+        @Override
+        public ByteBuffer getGzipBuffer() {
+            return gzipped == null ? null : gzipped.asReadOnlyBuffer();
+        }
+
+        /**
+         * Returns the size of the cached entity in bytes.
+         *
+         * @return the size of the entity
+         */
+        public int getSize() {
+            return cached.remaining();
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        int getMaxAge() {
+            return expires;
+        }
+
+        Set<String> getTags() {
+            return tags;
+        }
+    }
+
+    /**
+     * The immutable set of variants cached for a single URI. A new instance replaces the old one on each change.
+     */
+    private static class Variants {
+        private final LocalEntry[] entries;
+        private final long weight;
+        // The union of the tags of the entries
+        private final Set<String> tags;
+        // The expiry timers only reference the token so replaced variants are not retained by the wheel. The token is
+        // handed over to the variants replacing these so a URI has a single pending timer.
+        private final ExpiryToken expiry;
+        private volatile long lastAccess;
+        // Only used to select the entries written to a snapshot, lost updates are acceptable
+        private volatile int hits;
+        // Every variant has expired, only changed while the URI is locked within the cache map
+        private volatile boolean stale;
+
+        private Variants(final ExpiryToken expiry, final LocalEntry[] entries, final long weight, final Set<String> tags) {
+            this.entries = entries;
+            this.weight = weight;
+            this.tags = tags;
+            this.expiry = expiry;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    private static final class ExpiryToken {
+        private final String uri;
+        // The deadline of the pending timer, timers which fire well before it have been superseded by an earlier one.
+        // Guarded by the token.
+        private long deadline;
+
+        private ExpiryToken(final String uri) {
+            this.uri = uri;
+            this.deadline = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Runs the expiry sweep of a cache until the cache is no longer reachable.
+     */
+    private static final class ExpiryTask implements Runnable {
+        private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+        static {
+            EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+                final Thread thread = new Thread(r, "resteasy-cache-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+
+        private final WeakReference<LocalServerCache> cache;
+        private volatile ScheduledFuture<?> future;
+
+        private ExpiryTask(final LocalServerCache cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+
+        private void start(final long interval, final TimeUnit unit) {
+            future = EXECUTOR.scheduleWithFixedDelay(this, interval, interval, unit);
+        }
+
+        private void stop() {
+            final ScheduledFuture<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            final LocalServerCache cache = this.cache.get();
+            if (cache == null) {
+                stop();
+                return;
+            }
+            cache.expire();
+        }
+    }
+
+    private final ConcurrentHashMap<String, Variants> cache;
+    // The indexes are only changed while the URI is locked within the cache map
+    private final ConcurrentSkipListSet<String> uris;
+    private final ConcurrentHashMap<String, Set<String>> tagIndex;
+    private final List<Consumer<String>> listeners;
+    private final AtomicLong weight;
+    private final AtomicLong staleWeight;
+    private final AtomicBoolean evicting;
+    private final ExpiryWheel<ExpiryToken> wheel;
+    private final long maxSize;
+    private final int maxEntries;
+    private final boolean offHeap;
+    private volatile long maxStaleSize;
+    private volatile ServerCacheMetrics metrics;
+    private ExpiryTask expiryTask;
+
+    /**
+     * Creates a new cache bounded by {@link #DEFAULT_MAX_SIZE} bytes.
+     */
+    public LocalServerCache() {
+        this(DEFAULT_MAX_SIZE, -1);
+    }
+
+    /**
+     * Creates a new cache which stores the entities on the heap.
+     *
+     * @param maxSize    the maximum weight, in bytes, of the cached entities
+     * @param maxEntries the maximum number of cached URIs, a value less than 1 means the number is not bounded
+     */
+    public LocalServerCache(final long maxSize, final int maxEntries) {
+        this(maxSize, maxEntries, false);
+    }
+
+    /**
+     * Creates a new cache.
+     * <p>
+     * When {@code offHeap} is {@code true} the cached entities are stored in direct buffers and only the headers and
+     * metadata of an entry stay on the heap. Note the direct memory is limited by the
+     * {@code -XX:MaxDirectMemorySize} JVM option.
+     * </p>
+     *
+     * @param maxSize    the maximum weight, in bytes, of the cached entities
+     * @param maxEntries the maximum number of cached URIs, a value less than 1 means the number is not bounded
+     * @param offHeap    {@code true} to store the entities outside of the heap
+     */
+    public LocalServerCache(final long maxSize, final int maxEntries, final boolean offHeap) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0: " + maxSize);
+        }
+        this.cache = new ConcurrentHashMap<>();
+        this.uris = new ConcurrentSkipListSet<>();
+        this.tagIndex = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.weight = new AtomicLong();
+        this.staleWeight = new AtomicLong();
+        this.evicting = new AtomicBoolean();
+        this.wheel = new ExpiryWheel<>(WHEEL_SLOTS, 1000L, System.currentTimeMillis());
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+        this.offHeap = offHeap;
+        this.maxStaleSize = -1L;
+    }
+
+    @Override
+    public Entry get(String uri, MediaType accept, MultivaluedMap<String, String> headers) {
+        final Variants variants = cache.get(uri);
+        if (variants == null)
+            return null;
+        variants.lastAccess = System.nanoTime();
+        variants.hits++;
+        VaryKey requestKey = null;
+        long fingerprint = 0L;
+        for (LocalEntry entry : variants.entries) {
+            if (!accept.isCompatible(entry.getMediaType())) {
+                continue;
+            }
+            // The request is only hashed once for the variants which vary on the same headers
+            if (requestKey == null || !requestKey.hasSameNames(entry.varyKey)) {
+                requestKey = entry.varyKey;
+                fingerprint = requestKey.fingerprint(headers);
+            }
+            if (entry.varyKey.matches(headers, fingerprint)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers,
+            byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders) {
+        return add(uri, mediaType, cc, headers, entity, etag, varyHeaders, null);
+    }
+
+    @Override
+    public Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers,
+            byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders, byte[] gzipped) {
+        return add(uri, mediaType, cc, headers, entity, etag, varyHeaders, gzipped, Set.of());
+    }
+
+    @Override
+    public Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers,
+            byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders, byte[] gzipped, Set<String> tags) {
+        final LocalEntry cacheEntry = new LocalEntry(headers, store(entity), gzipped == null ? null : store(gzipped), cc,
+                etag, mediaType, varyHeaders, tags == null ? Set.of() : Set.copyOf(tags));
+        put(uri, cacheEntry);
+        return cacheEntry;
+    }
+
+    @Override
+    public List<? extends Entry> getVariants(final String uri) {
+        final Variants variants = cache.get(uri);
+        return variants == null ? List.of() : List.of(variants.entries);
+    }
+
+    @Override
+    public void setMetrics(final ServerCacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void addInvalidationListener(final Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void remove(String uri) {
+        discard(uri, null);
+    }
+
+    @Override
+    public void removeByTag(final String tag) {
+        final Set<String> tagged = tagIndex.get(tag);
+        if (tagged != null) {
+            for (String uri : tagged.toArray(new String[0])) {
+                remove(uri);
+            }
+        }
+    }
+
+    @Override
+    public void removeByPrefix(final String prefix) {
+        for (String uri : uris.tailSet(prefix)) {
+            if (!uri.startsWith(prefix)) {
+                break;
+            }
+            remove(uri);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (String uri : cache.keySet()) {
+            remove(uri);
+        }
+    }
+
+    /**
+     * Sets the maximum weight, in bytes, of the URIs whose variants have all expired but may still be served stale.
+     * Once exceeded the least recently accessed of those URIs are removed. Note the weight is only accounted by the
+     * {@linkplain #expire() expiry sweep}.
+     *
+     * @param maxStaleSize the maximum weight of the stale URIs, a value less than 0 means it is not bounded
+     */
+    public void setMaxStaleSize(final long maxStaleSize) {
+        this.maxStaleSize = maxStaleSize;
+        if (isOverStaleBound(1d)) {
+            evict(true);
+        }
+    }
+
+    /**
+     * Returns the weight, in bytes, of the URIs whose variants have all expired but may still be served stale.
+     *
+     * @return the weight of the stale URIs
+     */
+    public long staleSize() {
+        return staleWeight.get();
+    }
+
+    /**
+     * Runs an expiry sweep. URIs whose variants have all expired, and can no longer be served stale, are removed.
+     *
+     * @return the number of URIs removed
+     */
+    public int expire() {
+        final int[] removed = new int[1];
+        final long[] removedWeight = new long[1];
+        wheel.advance(System.currentTimeMillis(), token -> {
+            final Variants variants = expire(token);
+            if (variants != null) {
+                removed[0]++;
+                removedWeight[0] += variants.weight;
+            }
+        });
+        final ServerCacheMetrics metrics = this.metrics;
+        if (metrics != null && removed[0] > 0) {
+            metrics.recordExpiration(removed[0], removedWeight[0]);
+        }
+        return removed[0];
+    }
+
+    /**
+     * Starts running the {@linkplain #expire() expiry sweep} in the background. The sweeps of every cache are run by a
+     * single daemon thread and stop once the cache is no longer reachable.
+     *
+     * @param interval the time between two sweeps
+     * @param unit     the unit of the interval
+     */
+    public synchronized void startExpiry(final long interval, final TimeUnit unit) {
+        stopExpiry();
+        expiryTask = new ExpiryTask(this);
+        expiryTask.start(interval, unit);
+    }
+
+    /**
+     * Stops running the expiry sweep in the background.
+     */
+    public synchronized void stopExpiry() {
+        if (expiryTask != null) {
+            expiryTask.stop();
+            expiryTask = null;
+        }
+    }
+
+    /**
+     * Writes the most frequently hit URIs, with all their variants, to a snapshot file which can be
+     * {@linkplain #restoreSnapshot(Path) restored} by a later instance of the cache. Entries which can no longer be
+     * served are not written. The file is replaced atomically, if the file system supports it.
+     *
+     * @param file       the snapshot file
+     * @param maxEntries the maximum number of URIs to write, a value less than 1 writes every URI
+     *
+     * @return the number of URIs written
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    public int writeSnapshot(final Path file, final int maxEntries) throws IOException {
+        final List<Map.Entry<String, LocalEntry[]>> hot = new ArrayList<>();
+        final List<Integer> hits = new ArrayList<>();
+        for (Map.Entry<String, Variants> entry : cache.entrySet()) {
+            final Variants variants = entry.getValue();
+            final List<LocalEntry> servable = new ArrayList<>(variants.entries.length);
+            for (LocalEntry e : variants.entries) {
+                if (!CacheDirectives.isDiscardable(e)) {
+                    servable.add(e);
+                }
+            }
+            if (!servable.isEmpty()) {
+                hot.add(Map.entry(entry.getKey(), servable.toArray(new LocalEntry[0])));
+                hits.add(variants.hits);
+            }
+        }
+        final Integer[] order = new Integer[hot.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(hits.get(b), hits.get(a)));
+        final int count = maxEntries > 0 ? Math.min(maxEntries, order.length) : order.length;
+        final List<Map.Entry<String, LocalEntry[]>> selected = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            selected.add(hot.get(order[i]));
+        }
+        CacheSnapshot.write(file, selected);
+        return count;
+    }
+
+    /**
+     * Restores the entries of a snapshot {@linkplain #writeSnapshot(Path, int) written} by another instance. Entries
+     * which can no longer be served are skipped, the age of the restored entries is retained.
+     *
+     * @param file the snapshot file
+     *
+     * @return the number of entries restored
+     *
+     * @throws IOException if the snapshot could not be read
+     */
+    public int restoreSnapshot(final Path file) throws IOException {
+        final int[] restored = new int[1];
+        CacheSnapshot.read(file, this, (uri, entry) -> {
+            if (!CacheDirectives.isDiscardable(entry)) {
+                put(uri, entry);
+                restored[0]++;
+            }
+        });
+        return restored[0];
+    }
+
+    /**
+     * Returns the current weight, in bytes, of the cached entries.
+     *
+     * @return the current weight of the cache
+     */
+    public long size() {
+        return weight.get();
+    }
+
+    /**
+     * Returns the number of URIs currently cached.
+     *
+     * @return the number of cached URIs
+     */
+    public int count() {
+        return cache.size();
+    }
+
+    /**
+     * Calculates the weight of the entry. By default this is the size of the cached entity, and its compressed copy,
+     * plus an estimated, fixed, overhead for the entry itself.
+     *
+     * @param uri   the URI the entry is cached for
+     * @param entry the entry to weigh
+     *
+     * @return the weight of the entry in bytes
+     */
+    protected long weigh(final String uri, final Entry entry) {
+        final ByteBuffer gzipped = entry.getGzipBuffer();
+        return entry.getCachedBuffer().remaining() + (gzipped == null ? 0 : gzipped.remaining()) + (uri.length() * 2L)
+                + ENTRY_OVERHEAD;
+    }
+
+    ByteBuffer store(final byte[] entity) {
+        if (!offHeap) {
+            return ByteBuffer.wrap(entity);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(entity.length);
+        buffer.put(entity).flip();
+        return buffer;
+    }
+
+    private void put(final String uri, final LocalEntry cacheEntry) {
+        final long[] delta = new long[2];
+        final Variants added = cache.compute(uri, (key, current) -> {
+            final List<LocalEntry> entries = new ArrayList<>();
+            long newWeight = weigh(key, cacheEntry);
+            entries.add(cacheEntry);
+            final Set<String> newTags = new HashSet<>(cacheEntry.tags);
+            if (current != null) {
+                delta[0] -= current.weight;
+                if (current.stale) {
+                    delta[1] -= current.weight;
+                }
+                for (LocalEntry entry : current.entries) {
+                    // Replace the same variant and drop anything which has expired and can no longer be served stale
+                    if (CacheDirectives.isDiscardable(entry) || isSameVariant(entry, cacheEntry)) {
+                        continue;
+                    }
+                    entries.add(entry);
+                    newWeight += weigh(key, entry);
+                    newTags.addAll(entry.tags);
+                }
+                unindex(key, current.tags, newTags);
+            } else {
+                uris.add(key);
+            }
+            index(key, newTags);
+            delta[0] += newWeight;
+            final ExpiryToken expiry = current == null ? new ExpiryToken(key) : current.expiry;
+            final Variants variants = new Variants(expiry, entries.toArray(new LocalEntry[0]), newWeight, newTags);
+            boolean stale = true;
+            for (LocalEntry entry : entries) {
+                stale &= entry.isExpired();
+            }
+            if (stale) {
+                // Restored, or cached, after it expired and may only be served stale
+                variants.stale = true;
+                delta[1] += newWeight;
+            }
+            return variants;
+        });
+        weight.addAndGet(delta[0]);
+        if (delta[1] != 0L && staleWeight.addAndGet(delta[1]) > 0L && isOverStaleBound(1d)) {
+            evict(true);
+        }
+        final long now = System.currentTimeMillis();
+        final long deadline = nextDeadline(added.entries, now);
+        // Nothing can be served, remove it on the next sweep
+        schedule(added.expiry, deadline == Long.MAX_VALUE ? now : deadline, false);
+        // Caches without a background sweep are swept by the writes, which are the only source of timers
+        if (wheel.isDue(now)) {
+            expire();
+        }
+        evictIfRequired();
+    }
+
+    /**
+     * Schedules the timer of the token unless a timer with an earlier, or the same, deadline is already pending.
+     *
+     * @param fired {@code true} if the pending timer of the token has fired
+     */
+    private void schedule(final ExpiryToken token, final long deadline, final boolean fired) {
+        synchronized (token) {
+            if (fired || deadline < token.deadline) {
+                token.deadline = deadline;
+                wheel.schedule(token, deadline);
+            }
+        }
+    }
+
+    /**
+     * Returns the time the next variant expires, or can no longer be served stale if every variant has expired.
+     *
+     * @param entries the variants
+     * @param now     the current time in milliseconds
+     *
+     * @return the time of the next deadline in milliseconds or {@link Long#MAX_VALUE} if every variant can be discarded
+     */
+    private static long nextDeadline(final LocalEntry[] entries, final long now) {
+        long expires = Long.MAX_VALUE;
+        long discardable = Long.MAX_VALUE;
+        for (LocalEntry entry : entries) {
+            final long expiresAt = entry.timestamp + (entry.expires * 1000L);
+            if (expiresAt > now) {
+                expires = Math.min(expires, expiresAt);
+            } else {
+                final long retainedAt = expiresAt + (Math.max(entry.staleWhileRevalidate, entry.staleIfError) * 1000L);
+                if (retainedAt > now) {
+                    discardable = Math.min(discardable, retainedAt);
+                }
+            }
+        }
+        return expires == Long.MAX_VALUE ? discardable : expires;
+    }
+
+    /**
+     * Handles a timer of the wheel. The URI is removed if none of its variants can be served, otherwise the next
+     * deadline is scheduled.
+     *
+     * @return the removed variants or {@code null} if the URI was not removed
+     */
+    private Variants expire(final ExpiryToken token) {
+        final Variants variants = cache.get(token.uri);
+        if (variants == null || variants.expiry != token) {
+            // Removed, a URI cached again scheduled the timer of a new token
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        synchronized (token) {
+            // Timers fire up to one tick early, a deadline further away belongs to the timer which superseded this one
+            if (token.deadline >= now + wheel.getTickMillis()) {
+                return null;
+            }
+        }
+        final long deadline = nextDeadline(variants.entries, now);
+        if (deadline == Long.MAX_VALUE) {
+            return discard(token.uri, variants);
+        }
+        boolean fresh = false;
+        for (LocalEntry entry : variants.entries) {
+            fresh |= !entry.isExpired();
+        }
+        if (!fresh) {
+            markStale(token.uri, variants);
+        }
+        schedule(token, deadline, true);
+        return null;
+    }
+
+    private void markStale(final String uri, final Variants variants) {
+        final boolean[] marked = new boolean[1];
+        cache.computeIfPresent(uri, (key, current) -> {
+            if (current == variants && !current.stale) {
+                current.stale = true;
+                marked[0] = true;
+            }
+            return current;
+        });
+        if (marked[0]) {
+            staleWeight.addAndGet(variants.weight);
+            if (isOverStaleBound(1d)) {
+                evict(true);
+            }
+        }
+    }
+
+    private boolean isOverBounds(final double factor) {
+        return weight.get() > (maxSize * factor) || (maxEntries > 0 && cache.size() > (maxEntries * factor));
+    }
+
+    private boolean isOverStaleBound(final double factor) {
+        final long maxStaleSize = this.maxStaleSize;
+        return maxStaleSize >= 0L && staleWeight.get() > (maxStaleSize * factor);
+    }
+
+    private void evictIfRequired() {
+        if (isOverBounds(1d)) {
+            evict(false);
+        }
+    }
+
+    /**
+     * Evicts the least recently accessed URIs until the cache, or the stale URIs if {@code staleOnly} is {@code true},
+     * are back under {@link #EVICTION_FACTOR} of the bounds.
+     */
+    private void evict(final boolean staleOnly) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // Sort a snapshot of the URIs by last access and remove the oldest until we're below the low-water mark.
+            // Evicting a batch at a time amortizes the cost of the sort over many inserts.
+            @SuppressWarnings("unchecked")
+            final Map.Entry<String, Variants>[] snapshot = cache.entrySet().toArray(new Map.Entry[0]);
+            final long[] accessed = new long[snapshot.length];
+            final Integer[] order = new Integer[snapshot.length];
+            for (int i = 0; i < snapshot.length; i++) {
+                accessed[i] = snapshot[i].getValue().lastAccess;
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(accessed[a], accessed[b]));
+            long evicted = 0L;
+            long evictedWeight = 0L;
+            for (int i = 0; i < order.length
+                    && (staleOnly ? isOverStaleBound(EVICTION_FACTOR) : isOverBounds(EVICTION_FACTOR)); i++) {
+                final Map.Entry<String, Variants> candidate = snapshot[order[i]];
+                if (staleOnly && !candidate.getValue().stale) {
+                    continue;
+                }
+                if (discard(candidate.getKey(), candidate.getValue()) != null) {
+                    evicted++;
+                    evictedWeight += candidate.getValue().weight;
+                }
+            }
+            final ServerCacheMetrics metrics = this.metrics;
+            if (metrics != null && evicted > 0L) {
+                metrics.recordEviction(evicted, evictedWeight);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Removes the URI and its indexes.
+     *
+     * @param uri      the URI to remove
+     * @param expected the variants expected to be cached or {@code null} to remove any variants
+     *
+     * @return the removed variants or {@code null} if nothing was removed
+     */
+    private Variants discard(final String uri, final Variants expected) {
+        final Variants[] removed = new Variants[1];
+        cache.computeIfPresent(uri, (key, current) -> {
+            if (expected != null && current != expected) {
+                return current;
+            }
+            removed[0] = current;
+            uris.remove(key);
+            unindex(key, current.tags, Set.of());
+            return null;
+        });
+        if (removed[0] != null) {
+            weight.addAndGet(-removed[0].weight);
+            if (removed[0].stale) {
+                staleWeight.addAndGet(-removed[0].weight);
+            }
+            for (Consumer<String> listener : listeners) {
+                listener.accept(uri);
+            }
+        }
+        return removed[0];
+    }
+
+    private void index(final String uri, final Set<String> tags) {
+        for (String tag : tags) {
+            tagIndex.compute(tag, (t, tagged) -> {
+                final Set<String> result = tagged == null ? ConcurrentHashMap.newKeySet() : tagged;
+                result.add(uri);
+                return result;
+            });
+        }
+    }
+
+    private void unindex(final String uri, final Set<String> tags, final Set<String> retained) {
+        for (String tag : tags) {
+            if (retained.contains(tag)) {
+                continue;
+            }
+            tagIndex.computeIfPresent(tag, (t, tagged) -> {
+                tagged.remove(uri);
+                return tagged.isEmpty() ? null : tagged;
+            });
+        }
+    }
+
+    private static boolean isSameVariant(final LocalEntry entry, final LocalEntry other) {
+        return entry.getMediaType().equals(other.getMediaType()) && entry.varyKey.equals(other.varyKey);
+    }
+}
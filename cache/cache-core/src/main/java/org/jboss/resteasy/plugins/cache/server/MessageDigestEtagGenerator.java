@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Generates entity tags with a {@link MessageDigest}. A digest is created once per thread and reused.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class MessageDigestEtagGenerator implements EtagGenerator {
+
+    /**
+     * The default generator which uses MD5, the algorithm the server cache has always used.
+     */
+    public static final MessageDigestEtagGenerator MD5 = new MessageDigestEtagGenerator("MD5");
+
+    private final ThreadLocal<MessageDigest> digest;
+
+    /**
+     * Creates a new generator.
+     *
+     * @param algorithm the name of the digest algorithm
+     *
+     * @throws IllegalArgumentException if the algorithm is not available
+     */
+    public MessageDigestEtagGenerator(final String algorithm) {
+        // Fail early if the algorithm is not available
+        createDigest(algorithm);
+        this.digest = ThreadLocal.withInitial(() -> createDigest(algorithm));
+    }
+
+    @Override
+    public String generate(final byte[] entity, final int offset, final int length) {
+        final MessageDigest messageDigest = digest.get();
+        messageDigest.update(entity, offset, length);
+        // digest() resets the digest for the next use
+        return HexEncoding.toHexString(messageDigest.digest());
+    }
+
+    private static MessageDigest createDigest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
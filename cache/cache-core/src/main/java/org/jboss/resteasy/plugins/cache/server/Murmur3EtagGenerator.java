@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+/**
+ * Generates entity tags with the non-cryptographic 128-bit x64 variant of MurmurHash3. This is considerably cheaper
+ * than a message digest for large entities and, as an entity tag only needs to change when the entity changes, is
+ * sufficient for the cache.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class Murmur3EtagGenerator implements EtagGenerator {
+
+    /**
+     * The shared instance, the generator has no state.
+     */
+    public static final Murmur3EtagGenerator INSTANCE = new Murmur3EtagGenerator();
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    @Override
+    public String generate(final byte[] entity, final int offset, final int length) {
+        long h1 = 0L;
+        long h2 = 0L;
+        final int blocks = length >>> 4;
+        int pos = offset;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(entity, pos);
+            long k2 = getLong(entity, pos + 8);
+            pos += 16;
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // The remaining, at most 15, bytes
+        final int remaining = length & 15;
+        long k1 = 0L;
+        long k2 = 0L;
+        for (int i = remaining - 1; i >= 8; i--) {
+            k2 ^= (entity[pos + i] & 0xffL) << ((i - 8) << 3);
+        }
+        if (remaining > 8) {
+            h2 ^= mixK2(k2);
+        }
+        for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+            k1 ^= (entity[pos + i] & 0xffL) << (i << 3);
+        }
+        if (remaining > 0) {
+            h1 ^= mixK1(k1);
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return HexEncoding.toHexString(h1, h2);
+    }
+
+    private static long getLong(final byte[] b, final int pos) {
+        // Little-endian, as specified by the reference implementation
+        return (b[pos] & 0xffL)
+                | (b[pos + 1] & 0xffL) << 8
+                | (b[pos + 2] & 0xffL) << 16
+                | (b[pos + 3] & 0xffL) << 24
+                | (b[pos + 4] & 0xffL) << 32
+                | (b[pos + 5] & 0xffL) << 40
+                | (b[pos + 6] & 0xffL) << 48
+                | (b[pos + 7] & 0xffL) << 56;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
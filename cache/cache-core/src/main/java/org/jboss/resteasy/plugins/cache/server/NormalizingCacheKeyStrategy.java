@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+
+/**
+ * A {@link CacheKeyStrategy} which normalizes the request URI so equivalent requests share a cache entry.
+ * <ul>
+ * <li>Percent-encoded unreserved characters are decoded and the remaining percent-encodings are upper cased.</li>
+ * <li>Ignored query parameters, for example tracking parameters like {@code utm_*}, are removed.</li>
+ * <li>The query parameters are sorted by name. The order of the values of the same parameter is kept.</li>
+ * </ul>
+ * <p>
+ * The parameters of a resource may be narrowed with {@link CacheKeyParameters}. The rules of each resource method are
+ * resolved once and reused.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class NormalizingCacheKeyStrategy implements CacheKeyStrategy {
+    private static final Comparator<String> BY_NAME = Comparator.comparing(NormalizingCacheKeyStrategy::getName);
+
+    private final ParameterFilter defaultFilter;
+    private final Map<Method, ParameterFilter> filters = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a strategy which does not ignore any query parameters.
+     */
+    public NormalizingCacheKeyStrategy() {
+        this(List.of());
+    }
+
+    /**
+     * Creates a strategy which ignores the query parameters. A name ending with {@code *} matches every parameter
+     * starting with the rest of the name.
+     *
+     * @param ignoredParameters the ignored query parameters
+     */
+    public NormalizingCacheKeyStrategy(final Collection<String> ignoredParameters) {
+        this.defaultFilter = new ParameterFilter(List.of(), ignoredParameters);
+    }
+
+    @Override
+    public String createKey(final ContainerRequestContext request, final Method resourceMethod) {
+        final String uri = request.getUriInfo().getRequestUri().toString();
+        final int queryStart = uri.indexOf('?');
+        final String base = queryStart < 0 ? uri : uri.substring(0, queryStart);
+        final String normalizedBase = normalizeEncoding(base);
+        if (queryStart < 0) {
+            return normalizedBase;
+        }
+        final ParameterFilter filter = getFilter(resourceMethod);
+        final String[] parameters = uri.substring(queryStart + 1).split("&");
+        int count = 0;
+        for (String parameter : parameters) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            final String normalized = normalizeEncoding(parameter);
+            if (filter.accepts(getName(normalized))) {
+                parameters[count++] = normalized;
+            }
+        }
+        if (count == 0) {
+            return normalizedBase;
+        }
+        // A stable sort keeps the order of the values of the same parameter
+        Arrays.sort(parameters, 0, count, BY_NAME);
+        final StringBuilder key = new StringBuilder(uri.length()).append(normalizedBase).append('?');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                key.append('&');
+            }
+            key.append(parameters[i]);
+        }
+        return key.toString();
+    }
+
+    private ParameterFilter getFilter(final Method resourceMethod) {
+        if (resourceMethod == null) {
+            return defaultFilter;
+        }
+        ParameterFilter filter = filters.get(resourceMethod);
+        if (filter == null) {
+            filter = createFilter(resourceMethod);
+            filters.putIfAbsent(resourceMethod, filter);
+        }
+        return filter;
+    }
+
+    private ParameterFilter createFilter(final Method resourceMethod) {
+        CacheKeyParameters parameters = resourceMethod.getAnnotation(CacheKeyParameters.class);
+        if (parameters == null) {
+            parameters = resourceMethod.getDeclaringClass().getAnnotation(CacheKeyParameters.class);
+        }
+        if (parameters == null) {
+            return defaultFilter;
+        }
+        final List<String> ignored = new ArrayList<>(defaultFilter.ignored);
+        ignored.addAll(Arrays.asList(parameters.ignore()));
+        return new ParameterFilter(Arrays.asList(parameters.include()), ignored);
+    }
+
+    private static String getName(final String parameter) {
+        final int index = parameter.indexOf('=');
+        return index < 0 ? parameter : parameter.substring(0, index);
+    }
+
+    /**
+     * Decodes the percent-encoded unreserved characters, as defined by RFC 3986, and upper cases the hexadecimal
+     * digits of the remaining percent-encodings.
+     */
+    private static String normalizeEncoding(final String value) {
+        int index = value.indexOf('%');
+        if (index < 0) {
+            return value;
+        }
+        final StringBuilder result = new StringBuilder(value.length());
+        result.append(value, 0, index);
+        while (index < value.length()) {
+            final char c = value.charAt(index);
+            if (c == '%' && index + 2 < value.length() && isHex(value.charAt(index + 1))
+                    && isHex(value.charAt(index + 2))) {
+                final int decoded = Character.digit(value.charAt(index + 1), 16) * 16
+                        + Character.digit(value.charAt(index + 2), 16);
+                if (isUnreserved(decoded)) {
+                    result.append((char) decoded);
+                } else {
+                    result.append('%')
+                            .append(Character.toUpperCase(value.charAt(index + 1)))
+                            .append(Character.toUpperCase(value.charAt(index + 2)));
+                }
+                index += 3;
+            } else {
+                result.append(c);
+                index++;
+            }
+        }
+        return result.toString();
+    }
+
+    private static boolean isHex(final char c) {
+        return Character.digit(c, 16) >= 0 && c < 128;
+    }
+
+    private static boolean isUnreserved(final int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.'
+                || c == '_' || c == '~';
+    }
+
+    /**
+     * The included and ignored query parameters of a resource, split into exact names and prefixes.
+     */
+    private static class ParameterFilter {
+        private final List<String> ignored;
+        private final String[] included;
+        private final String[] includedPrefixes;
+        private final String[] ignoredNames;
+        private final String[] ignoredPrefixes;
+
+        private ParameterFilter(final Collection<String> included, final Collection<String> ignored) {
+            this.ignored = List.copyOf(ignored);
+            this.included = included.isEmpty() ? null : names(included);
+            this.includedPrefixes = included.isEmpty() ? null : prefixes(included);
+            this.ignoredNames = names(ignored);
+            this.ignoredPrefixes = prefixes(ignored);
+        }
+
+        private boolean accepts(final String name) {
+            if (matches(name, ignoredNames, ignoredPrefixes)) {
+                return false;
+            }
+            return included == null || matches(name, included, includedPrefixes);
+        }
+
+        private static boolean matches(final String name, final String[] names, final String[] prefixes) {
+            for (String candidate : names) {
+                if (candidate.equals(name)) {
+                    return true;
+                }
+            }
+            for (String prefix : prefixes) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String[] names(final Collection<String> patterns) {
+            return patterns.stream()
+                    .map(String::trim)
+                    .filter(p -> !p.isEmpty() && !p.endsWith("*"))
+                    .toArray(String[]::new);
+        }
+
+        private static String[] prefixes(final Collection<String> patterns) {
+            return patterns.stream()
+                    .map(String::trim)
+                    .filter(p -> p.endsWith("*"))
+                    .map(p -> p.substring(0, p.length() - 1))
+                    .toArray(String[]::new);
+        }
+    }
+}
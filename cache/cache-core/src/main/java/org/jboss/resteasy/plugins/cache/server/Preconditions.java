@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Evaluates the conditional request headers of RFC 9110 against a cached representation.
+ * <p>
+ * Both the entity tag and the last modification date are evaluated. The {@code If-Match} and {@code If-None-Match}
+ * headers may contain a list of entity tags, {@code If-None-Match} uses the weak comparison. The date based
+ * conditions are only evaluated when the corresponding entity tag condition is absent.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class Preconditions {
+    private static final String WEAK_PREFIX = "W/";
+    // The RFC 1123 formatter does not pad the day of the month as required by the IMF-fixdate format
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'",
+            Locale.US);
+
+    private Preconditions() {
+    }
+
+    /**
+     * Checks if the request has any of the conditional headers evaluated by
+     * {@link #evaluate(MultivaluedMap, String, long)}.
+     *
+     * @param headers the request headers
+     *
+     * @return {@code true} if the request is conditional
+     */
+    static boolean isConditional(final MultivaluedMap<String, String> headers) {
+        return hasValue(headers, HttpHeaders.IF_MATCH) || hasValue(headers, HttpHeaders.IF_NONE_MATCH)
+                || hasValue(headers, HttpHeaders.IF_MODIFIED_SINCE) || hasValue(headers, HttpHeaders.IF_UNMODIFIED_SINCE);
+    }
+
+    /**
+     * Evaluates the conditional headers of a {@code GET} or {@code HEAD} request.
+     *
+     * @param headers      the request headers
+     * @param etag         the entity tag of the representation, quoted or not
+     * @param lastModified the last modification time in milliseconds or -1 if not known
+     *
+     * @return a {@code 304} or {@code 412} response builder or {@code null} if the request should be served
+     */
+    static Response.ResponseBuilder evaluate(final MultivaluedMap<String, String> headers, final String etag,
+            final long lastModified) {
+        final String opaqueTag = etag == null ? null : opaqueTag(etag);
+        final boolean weak = etag != null && isWeak(etag);
+        final List<String> ifMatch = headers.get(HttpHeaders.IF_MATCH);
+        if (ifMatch != null && !ifMatch.isEmpty()) {
+            if (!matches(ifMatch, opaqueTag, weak, true)) {
+                return Response.status(Response.Status.PRECONDITION_FAILED);
+            }
+        } else if (lastModified >= 0L) {
+            final long since = parseDate(headers.getFirst(HttpHeaders.IF_UNMODIFIED_SINCE));
+            if (since >= 0L && lastModified > since) {
+                return Response.status(Response.Status.PRECONDITION_FAILED);
+            }
+        }
+        final List<String> ifNoneMatch = headers.get(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && !ifNoneMatch.isEmpty()) {
+            return matches(ifNoneMatch, opaqueTag, weak, false) ? notModified(opaqueTag, weak, lastModified) : null;
+        }
+        if (lastModified >= 0L) {
+            final long since = parseDate(headers.getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+            if (since >= 0L && lastModified <= since) {
+                return notModified(opaqueTag, weak, lastModified);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the opaque value of the entity tag, without the weak indicator and the quotes.
+     *
+     * @param etag the entity tag
+     *
+     * @return the opaque value
+     */
+    static String opaqueTag(final String etag) {
+        int start = etag.startsWith(WEAK_PREFIX) ? WEAK_PREFIX.length() : 0;
+        int end = etag.length();
+        if (end - start >= 2 && etag.charAt(start) == '"' && etag.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        return etag.substring(start, end);
+    }
+
+    /**
+     * Indicates whether the entity tag is weak.
+     *
+     * @param etag the entity tag
+     *
+     * @return {@code true} if the entity tag is weak
+     */
+    static boolean isWeak(final String etag) {
+        return etag.startsWith(WEAK_PREFIX);
+    }
+
+    /**
+     * Formats the time as an HTTP date.
+     *
+     * @param millis the time in milliseconds
+     *
+     * @return the HTTP date
+     */
+    static String formatDate(final long millis) {
+        return HTTP_DATE.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+
+    /**
+     * Parses an HTTP date.
+     *
+     * @param value the date, may be {@code null}
+     *
+     * @return the time in milliseconds, truncated to seconds, or -1 if the value is not a valid date
+     */
+    static long parseDate(final String value) {
+        if (value == null || value.isEmpty()) {
+            return -1L;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond() * 1000L;
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
+    private static boolean hasValue(final MultivaluedMap<String, String> headers, final String name) {
+        final List<String> values = headers.get(name);
+        return values != null && !values.isEmpty();
+    }
+
+    private static boolean matches(final List<String> values, final String opaqueTag, final boolean weak,
+            final boolean strong) {
+        for (String value : values) {
+            int start = 0;
+            while (start < value.length()) {
+                final int end = nextTagEnd(value, start);
+                final String candidate = value.substring(start, end).trim();
+                if ("*".equals(candidate)) {
+                    return true;
+                }
+                if (opaqueTag != null && !candidate.isEmpty() && opaqueTag.equals(opaqueTag(candidate))
+                        && (!strong || (!weak && !isWeak(candidate)))) {
+                    return true;
+                }
+                start = end + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the comma ending the entity tag which starts at the index, commas within quotes are part
+     * of the tag.
+     */
+    private static int nextTagEnd(final String value, final int start) {
+        boolean quoted = false;
+        for (int i = start; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                return i;
+            }
+        }
+        return value.length();
+    }
+
+    private static Response.ResponseBuilder notModified(final String opaqueTag, final boolean weak,
+            final long lastModified) {
+        final Response.ResponseBuilder builder = Response.notModified();
+        if (opaqueTag != null) {
+            builder.tag(new EntityTag(opaqueTag, weak));
+        }
+        if (lastModified >= 0L) {
+            builder.header(HttpHeaders.LAST_MODIFIED, formatDate(lastModified));
+        }
+        return builder;
+    }
+}
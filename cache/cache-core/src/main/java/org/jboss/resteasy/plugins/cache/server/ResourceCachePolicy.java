@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import jakarta.ws.rs.core.CacheControl;
+
+/**
+ * The resolved {@link ServerCached} policy of a resource method.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class ResourceCachePolicy {
+    private final CacheControl cacheControl;
+    private final List<String> vary;
+    private final CacheKeyStrategy keyStrategy;
+    private final List<String> tags;
+
+    private ResourceCachePolicy(final CacheControl cacheControl, final List<String> vary,
+            final CacheKeyStrategy keyStrategy, final List<String> tags) {
+        this.cacheControl = cacheControl;
+        this.vary = vary;
+        this.keyStrategy = keyStrategy;
+        this.tags = tags;
+    }
+
+    /**
+     * Resolves the policy of the resource method.
+     *
+     * @param resourceClass the resource class, may be {@code null}
+     * @param method        the resource method
+     *
+     * @return the policy or {@code null} if the method is not annotated
+     */
+    static ResourceCachePolicy of(final Class<?> resourceClass, final Method method) {
+        final ServerCached annotation = find(resourceClass, method);
+        if (annotation == null) {
+            return null;
+        }
+        CacheControl cacheControl = null;
+        if (annotation.maxAge() >= 0) {
+            cacheControl = new CacheControl();
+            cacheControl.setMaxAge(annotation.maxAge());
+        }
+        CacheKeyStrategy keyStrategy = null;
+        if (annotation.keyStrategy() != CacheKeyStrategy.class) {
+            keyStrategy = CacheKeyStrategy.of(annotation.keyStrategy().getName());
+        }
+        return new ResourceCachePolicy(cacheControl, List.of(annotation.vary()), keyStrategy,
+                List.of(annotation.tags()));
+    }
+
+    /**
+     * Finds the annotation of the resource method.
+     *
+     * @param resourceClass the resource class, may be {@code null}
+     * @param method        the resource method
+     *
+     * @return the annotation or {@code null} if neither the method nor the class is annotated
+     */
+    static ServerCached find(final Class<?> resourceClass, final Method method) {
+        final ServerCached annotation = method.getAnnotation(ServerCached.class);
+        if (annotation != null) {
+            return annotation;
+        }
+        return (resourceClass == null ? method.getDeclaringClass() : resourceClass).getAnnotation(ServerCached.class);
+    }
+
+    /**
+     * Returns the cache control used when the response does not have a {@code Cache-Control} header. The instance is
+     * shared and must not be modified.
+     *
+     * @return the cache control or {@code null} if only responses with a {@code Cache-Control} header are cached
+     */
+    CacheControl getCacheControl() {
+        return cacheControl;
+    }
+
+    /**
+     * Returns the request headers the response varies on.
+     *
+     * @return the vary headers
+     */
+    List<String> getVary() {
+        return vary;
+    }
+
+    /**
+     * Returns the key strategy of the resource.
+     *
+     * @return the key strategy or {@code null} to use the configured strategy
+     */
+    CacheKeyStrategy getKeyStrategy() {
+        return keyStrategy;
+    }
+
+    /**
+     * Returns the invalidation tags, which may contain path parameter templates.
+     *
+     * @return the tags
+     */
+    List<String> getTags() {
+        return tags;
+    }
+}
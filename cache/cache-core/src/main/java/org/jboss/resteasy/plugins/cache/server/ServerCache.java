@@ -16,8 +16,12 @@
 
 package org.jboss.resteasy.plugins.cache.server;
 
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 
 import jakarta.ws.rs.core.CacheControl;
 import jakarta.ws.rs.core.MediaType;
@@ -28,13 +32,18 @@ import jakarta.ws.rs.core.MultivaluedMap;
  * @version $Revision: 1 $
  */
 public interface ServerCache {
+    /**
+     * Indicates whether the request headers differ from the headers the cached entry varies on. The values are
+     * compared by their {@linkplain VaryKey normalized} form. When selecting from several variants prefer matching the
+     * {@link Entry#getVaryKey() key} of each variant with a request fingerprint computed once.
+     *
+     * @param cached  the cached entry
+     * @param current the request headers
+     *
+     * @return {@code true} if the entry may not be served for the request
+     */
     static boolean mayVary(Entry cached, MultivaluedMap<String, String> current) {
-        boolean mayVary = false;
-        for (Map.Entry<String, List<String>> entry : cached.getVaryHeaders().entrySet()) {
-            String headerName = entry.getKey();
-            mayVary |= !(current.containsKey(headerName) && current.get(headerName).containsAll(entry.getValue()));
-        }
-        return mayVary;
+        return !cached.getVaryKey().matches(current);
     }
 
     interface Entry {
@@ -46,17 +55,230 @@ public interface ServerCache {
 
         byte[] getCached();
 
+        /**
+         * Returns the cached entity as a buffer. Implementations which store the entity outside of the heap should
+         * return a {@linkplain ByteBuffer#isDirect() direct} buffer so it can be written without being copied to the
+         * heap first.
+         *
+         * @return a buffer of the cached entity, the buffer must not be modified
+         */
+        default ByteBuffer getCachedBuffer() {
+            return ByteBuffer.wrap(getCached());
+        }
+
         MultivaluedMap<String, Object> getHeaders();
 
+        /**
+         * Returns an immutable, pre-serialized, snapshot of the {@linkplain #getHeaders() headers} without the
+         * {@code Cache-Control} header. Implementations should create the snapshot once and return the same instance.
+         *
+         * @return the header snapshot
+         */
+        default HeaderSnapshot getHeaderSnapshot() {
+            return HeaderSnapshot.of(getHeaders());
+        }
+
+        /**
+         * Returns the number of seconds since the entry was cached.
+         *
+         * @return the age of the entry in seconds or -1 if it is not known
+         */
+        default int getAgeInSeconds() {
+            return -1;
+        }
+
         MultivaluedMap<String, String> getVaryHeaders();
+
+        /**
+         * Returns the normalized and hashed {@linkplain #getVaryHeaders() vary headers}. Implementations should create
+         * the key once and return the same instance.
+         *
+         * @return the vary key
+         */
+        default VaryKey getVaryKey() {
+            return VaryKey.of(getVaryHeaders());
+        }
+
+        /**
+         * Returns the media type of the cached entity.
+         *
+         * @return the media type or {@code null} if not known
+         */
+        default MediaType getMediaType() {
+            return null;
+        }
+
+        /**
+         * Returns the number of seconds, after it expired, the entry may be served while it is refreshed in the
+         * background as defined by the {@code stale-while-revalidate} {@code Cache-Control} extension.
+         *
+         * @return the number of seconds or 0 if the entry may not be served stale
+         */
+        default int getStaleWhileRevalidate() {
+            return 0;
+        }
+
+        /**
+         * Returns the number of seconds, after it expired, the entry may be served if the resource fails as defined by
+         * the {@code stale-if-error} {@code Cache-Control} extension.
+         *
+         * @return the number of seconds or 0 if the entry may not be served stale
+         */
+        default int getStaleIfError() {
+            return 0;
+        }
+
+        /**
+         * Returns the time the cached representation was last modified, as sent in the {@code Last-Modified} header.
+         *
+         * @return the last modification time in milliseconds or -1 if not known
+         */
+        default long getLastModified() {
+            return getHeaderSnapshot().getLastModified();
+        }
+
+        /**
+         * Returns a read-only buffer containing the gzip compressed copy of the entity, if one was stored.
+         *
+         * @return the compressed entity or {@code null} if there is no compressed copy
+         */
+        default ByteBuffer getGzipBuffer() {
+            return null;
+        }
     }
 
     Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers, byte[] entity,
             String etag, MultivaluedMap<String, String> varyHeaders);
 
+    /**
+     * Adds an entry along with a gzip compressed copy of the entity. The default implementation ignores the compressed
+     * copy.
+     *
+     * @param uri         the URI of the entry
+     * @param mediaType   the media type of the entity
+     * @param cc          the cache control of the response
+     * @param headers     the response headers
+     * @param entity      the entity
+     * @param etag        the {@code ETag} of the entity
+     * @param varyHeaders the request headers the response varies on
+     * @param gzipped     the gzip compressed entity, may be {@code null}
+     *
+     * @return the new entry
+     */
+    default Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers,
+            byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders, byte[] gzipped) {
+        return add(uri, mediaType, cc, headers, entity, etag, varyHeaders);
+    }
+
+    /**
+     * Adds an entry which is invalidated by {@link #removeByTag(String)} with any of the tags. The tags apply to the
+     * URI, removing a tag removes every variant cached for the URI. The default implementation ignores the tags.
+     *
+     * @param uri         the URI of the entry
+     * @param mediaType   the media type of the entity
+     * @param cc          the cache control of the response
+     * @param headers     the response headers
+     * @param entity      the entity
+     * @param etag        the {@code ETag} of the entity
+     * @param varyHeaders the request headers the response varies on
+     * @param gzipped     the gzip compressed entity, may be {@code null}
+     * @param tags        the invalidation tags of the entry
+     *
+     * @return the new entry
+     */
+    default Entry add(String uri, MediaType mediaType, CacheControl cc, MultivaluedMap<String, Object> headers,
+            byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders, byte[] gzipped, Set<String> tags) {
+        return add(uri, mediaType, cc, headers, entity, etag, varyHeaders, gzipped);
+    }
+
+    /**
+     * Adds an entry without waiting for a remote or persistent store. The default implementation adds the entry
+     * synchronously on the calling thread.
+     *
+     * @param uri         the URI of the entry
+     * @param mediaType   the media type of the entity
+     * @param cc          the cache control of the response
+     * @param headers     the response headers, the map is not modified after this is invoked
+     * @param entity      the entity
+     * @param etag        the {@code ETag} of the entity
+     * @param varyHeaders the request headers the response varies on
+     * @param gzipped     the gzip compressed entity, may be {@code null}
+     * @param tags        the invalidation tags of the entry
+     *
+     * @return a stage completed with the new entry once it has been added
+     */
+    default CompletionStage<Entry> addAsync(String uri, MediaType mediaType, CacheControl cc,
+            MultivaluedMap<String, Object> headers, byte[] entity, String etag, MultivaluedMap<String, String> varyHeaders,
+            byte[] gzipped, Set<String> tags) {
+        try {
+            return CompletableFuture.completedFuture(add(uri, mediaType, cc, headers, entity, etag, varyHeaders,
+                    gzipped, tags));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     Entry get(String uri, MediaType accept, MultivaluedMap<String, String> headers);
 
+    /**
+     * Returns all the variants cached for the URI. This is used to report why a lookup missed and is optional.
+     *
+     * @param uri the URI
+     *
+     * @return the cached variants, an empty list if nothing is cached or {@code null} if not supported
+     */
+    default List<? extends Entry> getVariants(String uri) {
+        return null;
+    }
+
+    /**
+     * Sets the metrics evictions are reported to. Caches which do not evict, or cannot report evictions, ignore the
+     * metrics.
+     *
+     * @param metrics the metrics, {@code null} to stop reporting
+     */
+    default void setMetrics(ServerCacheMetrics metrics) {
+    }
+
+    /**
+     * Adds a listener which is notified with the URI when the entries of the URI are removed, or are changed by another
+     * node of a clustered cache. This allows a {@link TieredServerCache} to invalidate its near cache. Listeners must
+     * be fast and must not block. Caches which cannot notify listeners ignore them.
+     *
+     * @param listener the listener
+     */
+    default void addInvalidationListener(Consumer<String> listener) {
+    }
+
     void remove(String uri);
 
+    /**
+     * Removes every URI an entry was {@linkplain #add(String, MediaType, CacheControl, MultivaluedMap, byte[], String,
+     * MultivaluedMap, byte[], Set) added} for with the tag. Caches which do not support tags ignore this.
+     *
+     * @param tag the invalidation tag
+     */
+    default void removeByTag(String tag) {
+    }
+
+    /**
+     * Removes every URI which starts with the prefix. Caches which do not support this ignore it.
+     *
+     * @param prefix the prefix of the URIs to remove
+     */
+    default void removeByPrefix(String prefix) {
+    }
+
+    /**
+     * Removes the URI and every URI which only differs from it by its query. By default this removes the URIs which
+     * start with the path followed by {@code ?} with {@link #removeByPrefix(String)}.
+     *
+     * @param path the URI without a query
+     */
+    default void removeByPath(String path) {
+        remove(path);
+        removeByPrefix(path + '?');
+    }
+
     void clear();
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.container.DynamicFeature;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+
+/**
+ * Binds the cache to resource methods when the {@value ServerCacheFeature#MODE} property is {@code annotated}.
+ * <p>
+ * The {@link ServerCached} policy of each resource method is resolved once, at deployment. The filter and interceptor
+ * are bound to the annotated methods and the filter alone is bound to the methods, other than {@code GET} and
+ * {@code HEAD}, which invalidate the cache. Every other method does not pass through the cache at all.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+class ServerCacheDynamicFeature implements DynamicFeature {
+    private final ServerCacheHitFilter filter;
+    private final ServerCacheInterceptor interceptor;
+
+    ServerCacheDynamicFeature(final ServerCacheHitFilter filter, final ServerCacheInterceptor interceptor) {
+        this.filter = filter;
+        this.interceptor = interceptor;
+    }
+
+    @Override
+    public void configure(final ResourceInfo resourceInfo, final FeatureContext context) {
+        final Method method = resourceInfo.getResourceMethod();
+        if (method == null) {
+            return;
+        }
+        if (filter.getPolicy(resourceInfo.getResourceClass(), method) != null) {
+            context.register(filter);
+            context.register(interceptor);
+            return;
+        }
+        final String httpMethod = getHttpMethod(method);
+        if (httpMethod == null || !(httpMethod.equals(HttpMethod.GET) || httpMethod.equals(HttpMethod.HEAD))) {
+            context.register(filter);
+        }
+    }
+
+    private static String getHttpMethod(final Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            final HttpMethod httpMethod = annotation.annotationType().getAnnotation(HttpMethod.class);
+            if (httpMethod != null) {
+                return httpMethod.value();
+            }
+        }
+        return null;
+    }
+}
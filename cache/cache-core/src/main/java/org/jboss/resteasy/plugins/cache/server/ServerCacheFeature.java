@@ -17,7 +17,20 @@
 package org.jboss.resteasy.plugins.cache.server;
 
 import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+
+import jakarta.annotation.PreDestroy;
 import jakarta.ws.rs.core.Configurable;
 import jakarta.ws.rs.core.Feature;
 import jakarta.ws.rs.core.FeatureContext;
@@ -28,16 +41,202 @@ import org.infinispan.configuration.parsing.ConfigurationBuilderHolder;
 import org.infinispan.eviction.EvictionStrategy;
 import org.infinispan.manager.DefaultCacheManager;
 import org.infinispan.manager.EmbeddedCacheManager;
+import org.jboss.logging.Logger;
 import org.jboss.resteasy.plugins.cache.server.i18n.Messages;
 import org.jboss.resteasy.spi.config.Configuration;
 import org.jboss.resteasy.spi.config.ConfigurationFactory;
 
 /**
+ * Registers the server side cache.
+ * <p>
+ * The cache used is resolved in the following order:
+ * <ol>
+ * <li>The cache passed to the constructor</li>
+ * <li>A {@link ServerCache} set as the {@code org.jboss.resteasy.plugins.cache.server.ServerCache} property</li>
+ * <li>An Infinispan cache configured with the {@code server.request.cache.infinispan.config.file} and
+ * {@code server.request.cache.infinispan.cache.name} properties</li>
+ * <li>The default cache. If the {@code server.request.cache.type} property is {@code local} a {@link LocalServerCache}
+ * bounded by the {@code server.request.cache.local.max-size} (bytes) and {@code server.request.cache.local.max-entries}
+ * properties is used, otherwise a local Infinispan cache is used.</li>
+ * </ol>
+ * </p>
+ * <p>
+ * The resources created when the cache is configured, for example the {@linkplain #SNAPSHOT_FILE snapshot} to write,
+ * are released by {@link #close()}. RESTEasy does not close providers when a deployment is stopped, so the resources
+ * are also released once the stopped deployment has been garbage collected, or when the JVM exits, whichever is first.
+ * </p>
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class ServerCacheFeature implements Feature {
+    private static final Logger LOGGER = Logger.getLogger(ServerCacheFeature.class);
+
+    /**
+     * The property used to select the type of the default cache, either {@code infinispan} or {@code local}.
+     */
+    public static final String CACHE_TYPE = "server.request.cache.type";
+    /**
+     * The maximum weight, in bytes, of the cached entities for the {@code local} cache type.
+     */
+    public static final String LOCAL_MAX_SIZE = "server.request.cache.local.max-size";
+    /**
+     * The maximum number of cached URIs for the {@code local} cache type.
+     */
+    public static final String LOCAL_MAX_ENTRIES = "server.request.cache.local.max-entries";
+    /**
+     * Whether the {@code local} cache type stores the cached entities outside of the heap.
+     */
+    public static final String LOCAL_OFF_HEAP = "server.request.cache.local.off-heap";
+    /**
+     * The number of milliseconds between two background expiry sweeps of the {@code local} cache type, which remove the
+     * URIs none of whose entries can be served. The default is 1000, a value less than 1 disables the background sweep.
+     */
+    public static final String LOCAL_EXPIRY_INTERVAL = "server.request.cache.local.expiry-interval";
+    /**
+     * The maximum weight, in bytes, of the expired entries of the {@code local} cache type which are retained as they
+     * may still be served stale. The default is -1, no limit.
+     */
+    public static final String LOCAL_MAX_STALE_SIZE = "server.request.cache.local.max-stale-size";
+    /**
+     * Whether cacheable responses are written to the client as they are produced rather than buffered first.
+     */
+    public static final String STREAMING = "server.request.cache.streaming";
+    /**
+     * The maximum size, in bytes, of an entity which will be cached.
+     */
+    public static final String MAX_ENTITY_SIZE = "server.request.cache.max-entity-size";
+    /**
+     * The {@link EtagGenerator} used when the application does not set an {@code ETag}. Either {@code md5}, the
+     * default, {@code murmur3} or the fully qualified class name of a generator.
+     */
+    public static final String ETAG_GENERATOR = "server.request.cache.etag.generator";
+    /**
+     * The maximum time, in milliseconds, concurrent misses for the same URI wait for a single request to populate the
+     * cache. A value of 0, the default, disables coalescing the misses.
+     */
+    public static final String SINGLE_FLIGHT_TIMEOUT = "server.request.cache.single-flight.timeout";
+    /**
+     * The maximum number of entries, served under {@code stale-while-revalidate}, refreshed in the background at one
+     * time. The default is 4, a value of 0 disables serving entries under {@code stale-while-revalidate}. Entries are
+     * only refreshed when the {@link #REVALIDATION_BASE_URI} is configured.
+     */
+    public static final String MAX_REVALIDATIONS = "server.request.cache.revalidation.max-concurrent";
+    /**
+     * The base URI, for example {@code http://localhost:8080}, stale entries are refreshed against. Only the scheme and
+     * authority are used. There is no default, the authority sent by the client cannot be trusted, and without a base URI
+     * the {@code stale-while-revalidate} extension is ignored.
+     */
+    public static final String REVALIDATION_BASE_URI = "server.request.cache.revalidation.base-uri";
+    /**
+     * Whether a gzip compressed copy of each cached entity is stored and served to clients which accept it. The
+     * default is {@code false}.
+     */
+    public static final String COMPRESSION = "server.request.cache.compression";
+    /**
+     * The minimum size, in bytes, of an entity for a compressed copy to be stored. The default is 1024.
+     */
+    public static final String COMPRESSION_MIN_SIZE = "server.request.cache.compression.min-size";
+    /**
+     * Whether the {@link DefaultServerCacheMetrics} are recorded. The default is {@code false}. The metrics are
+     * available from the configuration property named by the {@link ServerCacheMetrics} class name. A
+     * {@link ServerCacheMetrics} instance set in that property is used instead of the default metrics.
+     */
+    public static final String METRICS = "server.request.cache.metrics";
+    /**
+     * The value of the {@code name} key of the JMX object name the {@link DefaultServerCacheMetrics} are registered
+     * with. The default is {@code default}, an empty value disables registering the metrics with JMX.
+     */
+    public static final String METRICS_JMX_NAME = "server.request.cache.metrics.jmx.name";
+    /**
+     * Whether an unsafe method also invalidates the URI with any query, its sub-resources and its ancestors. The
+     * default is {@code false}.
+     */
+    public static final String HIERARCHICAL_INVALIDATION = "server.request.cache.invalidation.hierarchical";
+    /**
+     * The {@link CacheKeyStrategy} used to create the cache key of a request. Either {@code default}, the default,
+     * {@code normalized} or the fully qualified class name of a strategy.
+     */
+    public static final String KEY_STRATEGY = "server.request.cache.key.strategy";
+    /**
+     * The comma separated query parameters the {@code normalized} key strategy ignores. A name ending with {@code *}
+     * matches every parameter starting with the rest of the name, for example {@code utm_*}.
+     */
+    public static final String KEY_IGNORED_PARAMETERS = "server.request.cache.key.ignored-parameters";
+    /**
+     * The maximum number of entries queued, or in flight, to be written to the cache off the response path. Entries
+     * are dropped when the queue is full. The default is 0 which writes the entries on the response path.
+     */
+    public static final String WRITE_BEHIND_CAPACITY = "server.request.cache.write-behind.capacity";
+    /**
+     * The number of threads the write-behind queue submits writes on. The default is 1.
+     */
+    public static final String WRITE_BEHIND_THREADS = "server.request.cache.write-behind.threads";
+    /**
+     * The {@link CacheAdmissionPolicy} which decides whether a cacheable response is cached. Either {@code default},
+     * the default, {@code always} or the fully qualified class name of a policy.
+     */
+    public static final String ADMISSION_POLICY = "server.request.cache.admission.policy";
+    /**
+     * The maximum size, in bytes, of the entity, and its compressed copy, of an entry admitted by the {@code default}
+     * admission policy. The default is -1, no limit. Unlike {@link #MAX_ENTITY_SIZE} this can be overridden for a
+     * resource with {@link CacheAdmission}.
+     */
+    public static final String ADMISSION_MAX_ENTRY_SIZE = "server.request.cache.admission.max-entry-size";
+    /**
+     * The number of times a URI must have been requested recently before the {@code default} admission policy caches
+     * it. The default is 0 which caches the first response, a value of 2 keeps one-hit wonders out of the cache.
+     */
+    public static final String ADMISSION_MIN_FREQUENCY = "server.request.cache.admission.min-frequency";
+    /**
+     * The number of distinct URIs the frequency sketch of the {@code default} admission policy is sized for. The
+     * default is 8192.
+     */
+    public static final String ADMISSION_SKETCH_SIZE = "server.request.cache.admission.sketch-size";
+    /**
+     * Which resource methods pass through the cache. Either {@code all}, the default, or {@code annotated}. With
+     * {@code annotated} only the {@code GET} methods annotated with {@link ServerCached} are cached and the other
+     * {@code GET} methods do not pass through the cache at all. The methods which may invalidate the cache always
+     * pass through it.
+     */
+    public static final String MODE = "server.request.cache.mode";
+    /**
+     * The file the most frequently hit entries of a {@link LocalServerCache} are written to when the application is
+     * undeployed, or the JVM shuts down, and restored from when the cache is configured. By default no snapshot is written.
+     */
+    public static final String SNAPSHOT_FILE = "server.request.cache.snapshot.file";
+    /**
+     * The maximum number of URIs written to the snapshot file. The default is 1000, a value less than 1 writes every
+     * URI.
+     */
+    public static final String SNAPSHOT_MAX_ENTRIES = "server.request.cache.snapshot.max-entries";
+    /**
+     * The comma separated absolute URIs requested, with {@code GET}, in the background to populate the cache once it
+     * has been configured.
+     */
+    public static final String WARM_UP_URIS = "server.request.cache.warm-up.uris";
+    /**
+     * The maximum number of warm-up requests sent at one time. The default is 4.
+     */
+    public static final String WARM_UP_CONCURRENCY = "server.request.cache.warm-up.concurrency";
+
+    /**
+     * The maximum number of URIs kept in a near cache layered over the cache with a {@link TieredServerCache}. The
+     * default is 0, no near cache.
+     */
+    public static final String NEAR_MAX_ENTRIES = "server.request.cache.near.max-entries";
+    /**
+     * The maximum number of seconds the entries of a URI are kept in the near cache. This bounds how stale the near
+     * cache can be when the cache cannot notify it of changes. The default is 10.
+     */
+    public static final String NEAR_MAX_AGE = "server.request.cache.near.max-age";
+
+    // Releases the resources of deployments which were stopped without closing the feature
+    private static final Cleaner CLEANER = Cleaner.create();
+
     private final Configuration configuration;
+    // The actions run, in reverse order, when the application is undeployed
+    private final CloseActions closeActions = new CloseActions();
     protected ServerCache cache;
 
     public ServerCacheFeature() {
@@ -55,11 +254,77 @@ public class ServerCacheFeature implements Feature {
         ServerCache cache = getCache(configurable);
         if (cache == null)
             return false;
-        configurable.register(new ServerCacheHitFilter(cache));
-        configurable.register(new ServerCacheInterceptor(cache));
+        // The configuration is the provider factory of the deployment, which is unreachable once it is stopped
+        closeActions.register(configurable.getConfiguration());
+        cache = getTieredCache(configurable, cache);
+        // Allows applications to invalidate the cache with the Configuration
+        configurable.property(ServerCache.class.getName(), cache);
+        warmUp(configurable, cache);
+        final ServerCacheMetrics metrics = getMetrics(configurable);
+        cache.setMetrics(metrics);
+        final ServerCacheHitFilter filter = new ServerCacheHitFilter(cache);
+        filter.setMetrics(metrics);
+        filter.setSingleFlightTimeout(getConfigValue(configurable, SINGLE_FLIGHT_TIMEOUT, Long.class, 0L),
+                TimeUnit.MILLISECONDS);
+        filter.setMaxRevalidations(getConfigValue(configurable, MAX_REVALIDATIONS, Integer.class, 4));
+        final String revalidationBaseUri = getConfigValue(configurable, REVALIDATION_BASE_URI, String.class, null);
+        if (revalidationBaseUri != null && !revalidationBaseUri.isBlank()) {
+            filter.setRevalidationBaseUri(URI.create(revalidationBaseUri.trim()));
+        }
+        filter.setHierarchicalInvalidation(
+                getConfigValue(configurable, HIERARCHICAL_INVALIDATION, Boolean.class, Boolean.FALSE));
+        filter.setCacheKeyStrategy(getCacheKeyStrategy(configurable));
+        final CacheAdmissionPolicy admissionPolicy = getAdmissionPolicy(configurable);
+        filter.setAdmissionPolicy(admissionPolicy);
+        final ServerCacheInterceptor interceptor = new ServerCacheInterceptor(cache);
+        interceptor.setStreaming(getConfigValue(configurable, STREAMING, Boolean.class, Boolean.FALSE));
+        interceptor.setMaxEntitySize(getConfigValue(configurable, MAX_ENTITY_SIZE, Long.class, -1L));
+        interceptor.setEtagGenerator(getEtagGenerator(configurable));
+        interceptor.setMetrics(metrics);
+        interceptor.setAdmissionPolicy(admissionPolicy);
+        interceptor.setCompression(getConfigValue(configurable, COMPRESSION, Boolean.class, Boolean.FALSE));
+        interceptor.setCompressionMinSize(getConfigValue(configurable, COMPRESSION_MIN_SIZE, Integer.class, 1024));
+        interceptor.setWriteBehind(getConfigValue(configurable, WRITE_BEHIND_CAPACITY, Integer.class, 0),
+                getConfigValue(configurable, WRITE_BEHIND_THREADS, Integer.class, 1));
+        // The interceptor is not captured, its injected context proxies reference the deployment
+        final CacheWriteBehind writeBehind = interceptor.getWriteBehind();
+        if (writeBehind != null) {
+            addCloseAction(writeBehind::shutdown);
+        }
+        // Hits held in a buffer are written without blocking, as the response may be written from an IO thread
+        configurable.register(new CachedEntityWriter());
+        if ("annotated".equalsIgnoreCase(getConfigValue(configurable, MODE, String.class, "all"))) {
+            // The ServerCached policies are resolved, and the providers bound, for each resource method
+            configurable.register(new ServerCacheDynamicFeature(filter, interceptor));
+            return true;
+        }
+        configurable.register(filter);
+        configurable.register(interceptor);
         return true;
     }
 
+    /**
+     * Releases the resources created when the cache was configured, writing the {@linkplain #SNAPSHOT_FILE snapshot}
+     * of the cache and unregistering the {@linkplain #METRICS metrics} from JMX. This is invoked by a CDI container when
+     * the application is undeployed and may be invoked by an application which manages the lifecycle itself. Otherwise
+     * the resources are released once the stopped deployment has been garbage collected or when the JVM exits. Invoking
+     * it again has no effect.
+     */
+    @PreDestroy
+    public void close() {
+        closeActions.close();
+    }
+
+    /**
+     * Adds an action run by {@link #close()}. The action must not reference the configuration, or the providers
+     * registered with it, otherwise the resources are only released by {@link #close()} or when the JVM exits.
+     *
+     * @param action the action to run when the application is undeployed
+     */
+    protected void addCloseAction(final Runnable action) {
+        closeActions.add(action);
+    }
+
     /**
      * Returns a configuration property.
      *
@@ -85,9 +350,197 @@ public class ServerCacheFeature implements Feature {
         c = getXmlCache(configurable);
         if (c != null)
             return c;
+        if ("local".equalsIgnoreCase(getConfigValue(configurable, CACHE_TYPE, String.class, "infinispan"))) {
+            return getLocalCache(configurable);
+        }
         return getDefaultCache();
     }
 
+    /**
+     * Creates the in-process cache used when the {@code server.request.cache.type} is {@code local}. This cache does
+     * not require Infinispan.
+     *
+     * @param configurable the configuration
+     *
+     * @return the local cache
+     */
+    protected ServerCache getLocalCache(Configurable<?> configurable) {
+        final long maxSize = getConfigValue(configurable, LOCAL_MAX_SIZE, Long.class, LocalServerCache.DEFAULT_MAX_SIZE);
+        final int maxEntries = getConfigValue(configurable, LOCAL_MAX_ENTRIES, Integer.class, -1);
+        final boolean offHeap = getConfigValue(configurable, LOCAL_OFF_HEAP, Boolean.class, Boolean.FALSE);
+        final LocalServerCache cache = new LocalServerCache(maxSize, maxEntries, offHeap);
+        cache.setMaxStaleSize(getConfigValue(configurable, LOCAL_MAX_STALE_SIZE, Long.class, -1L));
+        final long expiryInterval = getConfigValue(configurable, LOCAL_EXPIRY_INTERVAL, Long.class, 1000L);
+        if (expiryInterval > 0L) {
+            cache.startExpiry(expiryInterval, TimeUnit.MILLISECONDS);
+            addCloseAction(cache::stopExpiry);
+        }
+        return cache;
+    }
+
+    /**
+     * Layers a near cache over the cache if the {@code server.request.cache.near.max-entries} property is set.
+     *
+     * @param configurable the configuration
+     * @param cache        the cache
+     *
+     * @return a {@link TieredServerCache} over the cache or the cache itself
+     */
+    protected ServerCache getTieredCache(Configurable<?> configurable, ServerCache cache) {
+        final int maxEntries = getConfigValue(configurable, NEAR_MAX_ENTRIES, Integer.class, 0);
+        if (maxEntries < 1 || cache instanceof TieredServerCache) {
+            return cache;
+        }
+        return new TieredServerCache(cache, maxEntries, getConfigValue(configurable, NEAR_MAX_AGE, Long.class, 10L),
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Restores the {@linkplain #SNAPSHOT_FILE snapshot} of a {@link LocalServerCache}, which is written again when the
+     * feature is {@linkplain #close() closed}, and starts sending the {@linkplain #WARM_UP_URIS warm-up} requests.
+     * Failures are logged and never prevent the cache from being used.
+     *
+     * @param configurable the configuration
+     * @param cache        the cache to populate
+     */
+    protected void warmUp(final Configurable<?> configurable, final ServerCache cache) {
+        final String file = getConfigValue(configurable, SNAPSHOT_FILE, String.class, "");
+        if (!file.isBlank()) {
+            if (cache instanceof LocalServerCache) {
+                final LocalServerCache localCache = (LocalServerCache) cache;
+                final Path path = Paths.get(file);
+                if (Files.exists(path)) {
+                    try {
+                        LOGGER.debugf("Restored %d cache entries from %s", localCache.restoreSnapshot(path), path);
+                    } catch (IOException e) {
+                        LOGGER.warnf(e, "Failed to restore the server cache from %s", path);
+                    }
+                }
+                final int maxEntries = getConfigValue(configurable, SNAPSHOT_MAX_ENTRIES, Integer.class, 1000);
+                addCloseAction(() -> {
+                    try {
+                        localCache.writeSnapshot(path, maxEntries);
+                    } catch (IOException e) {
+                        LOGGER.warnf(e, "Failed to write the server cache snapshot to %s", path);
+                    }
+                });
+            } else {
+                LOGGER.warnf("The %s property is only supported by the %s", SNAPSHOT_FILE, LocalServerCache.class.getName());
+            }
+        }
+        final String uris = getConfigValue(configurable, WARM_UP_URIS, String.class, "");
+        if (!uris.isBlank()) {
+            final List<URI> warmUp = new ArrayList<>();
+            for (String uri : uris.split(",")) {
+                if (!uri.isBlank()) {
+                    warmUp.add(URI.create(uri.trim()));
+                }
+            }
+            CacheWarmer.start(warmUp, getConfigValue(configurable, WARM_UP_CONCURRENCY, Integer.class, 4));
+        }
+    }
+
+    /**
+     * Resolves the {@link EtagGenerator}. An instance set as the {@code org.jboss.resteasy.plugins.cache.server.EtagGenerator}
+     * property is used first, then the {@code server.request.cache.etag.generator} property.
+     *
+     * @param configurable the configuration
+     *
+     * @return the generator to use
+     */
+    protected EtagGenerator getEtagGenerator(Configurable<?> configurable) {
+        final Object generator = configurable.getConfiguration().getProperty(EtagGenerator.class.getName());
+        if (generator instanceof EtagGenerator) {
+            return (EtagGenerator) generator;
+        }
+        return EtagGenerator.of(getConfigValue(configurable, ETAG_GENERATOR, String.class, "md5"));
+    }
+
+    /**
+     * Resolves the {@link CacheKeyStrategy}. An instance set as the
+     * {@code org.jboss.resteasy.plugins.cache.server.CacheKeyStrategy} property is used first, then the
+     * {@code server.request.cache.key.strategy} property.
+     *
+     * @param configurable the configuration
+     *
+     * @return the strategy to use
+     */
+    protected CacheKeyStrategy getCacheKeyStrategy(Configurable<?> configurable) {
+        final Object strategy = configurable.getConfiguration().getProperty(CacheKeyStrategy.class.getName());
+        if (strategy instanceof CacheKeyStrategy) {
+            return (CacheKeyStrategy) strategy;
+        }
+        final String name = getConfigValue(configurable, KEY_STRATEGY, String.class, "default");
+        if ("normalized".equalsIgnoreCase(name)) {
+            final String ignored = getConfigValue(configurable, KEY_IGNORED_PARAMETERS, String.class, "");
+            return new NormalizingCacheKeyStrategy(Arrays.asList(ignored.split(",")));
+        }
+        return CacheKeyStrategy.of(name);
+    }
+
+    /**
+     * Resolves the {@link CacheAdmissionPolicy}. An instance set as the
+     * {@code org.jboss.resteasy.plugins.cache.server.CacheAdmissionPolicy} property is used first, then the
+     * {@code server.request.cache.admission.policy} property.
+     *
+     * @param configurable the configuration
+     *
+     * @return the policy to use
+     */
+    protected CacheAdmissionPolicy getAdmissionPolicy(Configurable<?> configurable) {
+        final Object policy = configurable.getConfiguration().getProperty(CacheAdmissionPolicy.class.getName());
+        if (policy instanceof CacheAdmissionPolicy) {
+            return (CacheAdmissionPolicy) policy;
+        }
+        final String name = getConfigValue(configurable, ADMISSION_POLICY, String.class, "default");
+        if ("default".equalsIgnoreCase(name)) {
+            return new DefaultCacheAdmissionPolicy(getConfigValue(configurable, ADMISSION_MAX_ENTRY_SIZE, Long.class, -1L),
+                    getConfigValue(configurable, ADMISSION_MIN_FREQUENCY, Integer.class, 0),
+                    getConfigValue(configurable, ADMISSION_SKETCH_SIZE, Integer.class,
+                            DefaultCacheAdmissionPolicy.DEFAULT_SKETCH_SIZE));
+        }
+        return CacheAdmissionPolicy.of(name);
+    }
+
+    /**
+     * Resolves the {@link ServerCacheMetrics}. An instance set as the
+     * {@code org.jboss.resteasy.plugins.cache.server.ServerCacheMetrics} property is used first, otherwise
+     * {@link DefaultServerCacheMetrics} are created if the {@code server.request.cache.metrics} property is
+     * {@code true}. Created metrics are registered with JMX, until the feature is {@linkplain #close() closed}, and set as
+     * the property so applications can pull them.
+     *
+     * @param configurable the configuration
+     *
+     * @return the metrics or {@code null} if metrics are not recorded
+     */
+    protected ServerCacheMetrics getMetrics(FeatureContext configurable) {
+        final Object value = configurable.getConfiguration().getProperty(ServerCacheMetrics.class.getName());
+        if (value instanceof ServerCacheMetrics) {
+            return (ServerCacheMetrics) value;
+        }
+        if (!getConfigValue(configurable, METRICS, Boolean.class, Boolean.FALSE)) {
+            return null;
+        }
+        final DefaultServerCacheMetrics metrics = new DefaultServerCacheMetrics();
+        final String name = getConfigValue(configurable, METRICS_JMX_NAME, String.class, "default");
+        if (name != null && !name.isBlank()) {
+            try {
+                metrics.registerMBean(name);
+                addCloseAction(() -> {
+                    try {
+                        metrics.unregisterMBean();
+                    } catch (JMException e) {
+                        LOGGER.warnf(e, "Failed to unregister the server cache metrics %s from JMX", name);
+                    }
+                });
+            } catch (JMException e) {
+                LOGGER.warnf(e, "Failed to register the server cache metrics with JMX as %s", name);
+            }
+        }
+        configurable.property(ServerCacheMetrics.class.getName(), metrics);
+        return metrics;
+    }
+
     protected ServerCache getDefaultCache() {
         String RESTEASY_DEFAULT_CACHE = "resteasy-default-cache";
         ConfigurationBuilderHolder configBuilderHolder = new ConfigurationBuilderHolder();
@@ -128,4 +581,106 @@ public class ServerCacheFeature implements Feature {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Resolves a configuration value first from the {@link Configurable} then from the {@link Configuration}.
+     *
+     * @param configurable the configurable to check first
+     * @param name         the name of the property
+     * @param type         the type of the value
+     * @param defaultValue the value to return if the property was not found
+     *
+     * @return the resolved value or the default value
+     */
+    protected <T> T getConfigValue(final Configurable<?> configurable, final String name, final Class<T> type,
+            final T defaultValue) {
+        final Object value = configurable.getConfiguration().getProperty(name);
+        if (value == null) {
+            return configuration.getOptionalValue(name, type).orElse(defaultValue);
+        }
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        }
+        final String stringValue = value.toString().trim();
+        if (type == String.class) {
+            return type.cast(stringValue);
+        } else if (type == Long.class) {
+            return type.cast(Long.valueOf(stringValue));
+        } else if (type == Integer.class) {
+            return type.cast(Integer.valueOf(stringValue));
+        } else if (type == Boolean.class) {
+            return type.cast(Boolean.valueOf(stringValue));
+        }
+        throw new IllegalArgumentException(Messages.MESSAGES.unsupportedConfigurationType(name, type));
+    }
+
+    /**
+     * The actions releasing the resources of a configured feature. The actions are run once, when the feature is
+     * closed, the configuration it was registered with has been garbage collected or the JVM exits. The actions must
+     * not reference the configuration, otherwise it never becomes unreachable.
+     */
+    private static class CloseActions implements Runnable {
+        private final List<Runnable> actions = new ArrayList<>();
+        private Cleaner.Cleanable cleanable;
+        private Thread hook;
+
+        synchronized void add(final Runnable action) {
+            actions.add(action);
+        }
+
+        synchronized void register(final Object configuration) {
+            if (cleanable != null) {
+                return;
+            }
+            cleanable = CLEANER.register(configuration, this);
+            // The hook only weakly references the actions so it does not keep them reachable after they have run
+            final WeakReference<CloseActions> ref = new WeakReference<>(this);
+            hook = new Thread(() -> {
+                final CloseActions closeActions = ref.get();
+                if (closeActions != null) {
+                    closeActions.run();
+                }
+            }, "resteasy-cache-close");
+            Runtime.getRuntime().addShutdownHook(hook);
+        }
+
+        void close() {
+            final Cleaner.Cleanable cleanable;
+            synchronized (this) {
+                cleanable = this.cleanable;
+            }
+            if (cleanable == null) {
+                run();
+            } else {
+                // Runs the actions and unregisters them from the cleaner
+                cleanable.clean();
+            }
+        }
+
+        @Override
+        public void run() {
+            final List<Runnable> actions;
+            final Thread hook;
+            synchronized (this) {
+                actions = new ArrayList<>(this.actions);
+                this.actions.clear();
+                hook = this.hook;
+                this.hook = null;
+            }
+            if (hook != null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(hook);
+                } catch (IllegalStateException ignore) {
+                    // The JVM is exiting, the hook may be the caller
+                }
+            }
+            for (int i = actions.size() - 1; i >= 0; i--) {
+                try {
+                    actions.get(i).run();
+                } catch (RuntimeException e) {
+                    LOGGER.warnf(e, "Failed to release the server cache resources");
+                }
+            }
+        }
+    }
 }
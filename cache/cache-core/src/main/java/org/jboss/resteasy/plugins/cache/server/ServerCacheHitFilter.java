@@ -17,79 +17,896 @@
 package org.jboss.resteasy.plugins.cache.server;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerRequestFilter;
-import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
 import jakarta.ws.rs.core.Context;
-import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+
+import org.jboss.resteasy.core.ResteasyContext;
+import org.jboss.resteasy.core.interception.jaxrs.SuspendableContainerRequestContext;
 
 /**
+ * Serves cached responses and invalidates the cache for unsafe methods.
+ * <p>
+ * When single-flight is enabled, concurrent misses for the same URI, most acceptable media type and varying request
+ * headers are coalesced. One request computes the response while the others are suspended, up to the configured
+ * timeout, and are then served from the freshly populated entry.
+ * </p>
+ * <p>
+ * Expired entries cached with the {@code stale-while-revalidate} extension are served, within the window, while they
+ * are refreshed in the background against the configured base URI. Without a base URI the extension is ignored. Entries cached
+ * with the
+ * {@code stale-if-error} extension are served, within the window, in place of a {@code 5xx} response from the
+ * resource.
+ * </p>
+ * <p>
+ * Responses are tagged with the {@link CacheTags} of the resource method and the {@value #CACHE_TAGS_HEADER} header.
+ * The tags of a successful response to an unsafe method are removed from the cache. When hierarchical invalidation is
+ * enabled, an unsafe method also invalidates the URI with any query, its sub-resources and its ancestors up to the base
+ * URI of the application.
+ * </p>
+ * <p>
+ * The cached variants are negotiated against the acceptable media types of the request in preference order. The
+ * variant of the most acceptable type, which the matched resource method produces, is served.
+ * </p>
+ * <p>
+ * A {@code HEAD} request dispatched to a {@code GET} resource method is answered from the cached {@code GET}
+ * representation, with its headers and {@code Content-Length} but without the entity. A {@code HEAD} which misses only
+ * waits for a flight already in progress and its response, if the entity is written, populates the cache.
+ * </p>
+ * <p>
+ * The {@link ServerCached} policy of a resource method is resolved once and stored, with the cache key, as a request
+ * property for the {@link ServerCacheInterceptor}.
+ * </p>
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class ServerCacheHitFilter implements ContainerRequestFilter {
+public class ServerCacheHitFilter implements ContainerRequestFilter, ContainerResponseFilter {
     protected ServerCache cache;
     public static final String DO_NOT_CACHE_RESPONSE = "DO NOT CACHE RESPONSE";
+    /**
+     * The response header with the comma separated invalidation tags of the response. The header is not sent to the
+     * client.
+     */
+    public static final String CACHE_TAGS_HEADER = "X-Cache-Tags";
+    static final String CACHE_TAGS = ServerCacheHitFilter.class.getName() + ".cacheTags";
+    static final String CACHE_KEY = ServerCacheHitFilter.class.getName() + ".cacheKey";
+    static final String CACHE_POLICY = ServerCacheHitFilter.class.getName() + ".cachePolicy";
+    static final String SINGLE_FLIGHT = ServerCacheHitFilter.class.getName() + ".singleFlight";
+    static final String STALE_ENTRY = ServerCacheHitFilter.class.getName() + ".staleEntry";
+    static final String PRECOMPRESSED = ServerCacheHitFilter.class.getName() + ".precompressed";
+    static final String METRICS_RESOURCE = ServerCacheHitFilter.class.getName() + ".metricsResource";
+    static final String GZIP = "gzip";
+    static final String GZIP_ETAG_SUFFIX = "-gzip";
+    private static final String AGE = "Age";
+    private static final String MAX_AGE_PREFIX = "max-age=";
+    // The most acceptable media types of a request checked against the cached variants
+    private static final int MAX_ACCEPT_TYPES = 8;
+    private static final MediaType[] ANY_TYPE = new MediaType[0];
+    // Lazily populated Cache-Control values for the most common remaining lifetimes, up to an hour
+    private static final String[] MAX_AGE_VALUES = new String[3601];
+
+    private final Map<Method, String> resourceTemplates = new ConcurrentHashMap<>();
+    private final Map<Method, MediaType[]> producedTypes = new ConcurrentHashMap<>();
+    private final Map<Method, Optional<ResourceCachePolicy>> policies = new ConcurrentHashMap<>();
+    private volatile SingleFlight singleFlight;
+    private volatile CacheRevalidator revalidator;
+    private volatile int maxRevalidations = 4;
+    private volatile URI revalidationBaseUri;
+    private volatile ServerCacheMetrics metrics;
+    private volatile boolean hierarchicalInvalidation;
+    private volatile CacheKeyStrategy keyStrategy = CacheKeyStrategy.DEFAULT;
+    private volatile CacheAdmissionPolicy admissionPolicy = CacheAdmissionPolicy.ALWAYS;
 
     public ServerCacheHitFilter(final ServerCache cache) {
         this.cache = cache;
     }
 
+    /**
+     * Enables single-flight for cache misses. A value of 0 or less disables single-flight, which is the default.
+     *
+     * @param timeout the maximum time a request waits for another request to populate the cache
+     * @param unit    the unit of the timeout
+     */
+    public void setSingleFlightTimeout(final long timeout, final TimeUnit unit) {
+        this.singleFlight = timeout > 0L ? new SingleFlight(timeout, unit) : null;
+    }
+
+    /**
+     * Sets the maximum number of stale entries refreshed in the background at one time. A value of 0 or less disables
+     * {@code stale-while-revalidate}. The default is 4. Entries are only refreshed once a
+     * {@linkplain #setRevalidationBaseUri(URI) base URI} has been set.
+     *
+     * @param maxRevalidations the maximum number of concurrent refreshes
+     */
+    public void setMaxRevalidations(final int maxRevalidations) {
+        this.maxRevalidations = maxRevalidations;
+        final URI baseUri = revalidationBaseUri;
+        this.revalidator = maxRevalidations > 0 && baseUri != null ? new CacheRevalidator(maxRevalidations, baseUri) : null;
+    }
+
+    /**
+     * Sets the URI stale entries are refreshed against. Only the scheme and authority are used, the path and query are
+     * those of the request. The authority sent by the client is never used. By default no base URI is set and
+     * {@code stale-while-revalidate} is disabled.
+     *
+     * @param revalidationBaseUri the base URI or {@code null} to disable refreshing stale entries
+     */
+    public void setRevalidationBaseUri(final URI revalidationBaseUri) {
+        this.revalidationBaseUri = revalidationBaseUri;
+        setMaxRevalidations(maxRevalidations);
+    }
+
+    /**
+     * Sets the metrics the hits and misses are recorded to.
+     *
+     * @param metrics the metrics or {@code null} to not record metrics
+     */
+    public void setMetrics(final ServerCacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Enables or disables hierarchical invalidation. When enabled, an unsafe method also invalidates the URI with any
+     * query, its sub-resources and its ancestors. For example a {@code POST} to {@code /orders/42/items} invalidates
+     * {@code /orders/42} and {@code /orders}. The default is {@code false}.
+     *
+     * @param hierarchicalInvalidation {@code true} to enable hierarchical invalidation
+     */
+    public void setHierarchicalInvalidation(final boolean hierarchicalInvalidation) {
+        this.hierarchicalInvalidation = hierarchicalInvalidation;
+    }
+
+    /**
+     * Sets the strategy used to create the cache key of a request. The default is {@link CacheKeyStrategy#DEFAULT}.
+     *
+     * @param keyStrategy the strategy, {@code null} for the default strategy
+     */
+    public void setCacheKeyStrategy(final CacheKeyStrategy keyStrategy) {
+        this.keyStrategy = keyStrategy == null ? CacheKeyStrategy.DEFAULT : keyStrategy;
+    }
+
+    /**
+     * Sets the admission policy the {@code GET} requests are recorded to. This must be the same policy the
+     * {@link ServerCacheInterceptor} uses. The default is {@link CacheAdmissionPolicy#ALWAYS}.
+     *
+     * @param admissionPolicy the policy, {@code null} to admit every entry
+     */
+    public void setAdmissionPolicy(final CacheAdmissionPolicy admissionPolicy) {
+        this.admissionPolicy = admissionPolicy == null ? CacheAdmissionPolicy.ALWAYS : admissionPolicy;
+    }
+
     @Context
     protected Request validation;
 
+    @Context
+    protected ResourceInfo resourceInfo;
+
+    /**
+     * Returns the {@link ServerCached} policy of the resource method, resolving it the first time.
+     *
+     * @param resourceClass the resource class, may be {@code null}
+     * @param method        the resource method, may be {@code null}
+     *
+     * @return the policy or {@code null} if the method is not annotated
+     */
+    ResourceCachePolicy getPolicy(final Class<?> resourceClass, final Method method) {
+        if (method == null) {
+            return null;
+        }
+        Optional<ResourceCachePolicy> policy = policies.get(method);
+        if (policy == null) {
+            policy = Optional.ofNullable(ResourceCachePolicy.of(resourceClass, method));
+            policies.putIfAbsent(method, policy);
+        }
+        return policy.orElse(null);
+    }
+
     @Override
     public void filter(ContainerRequestContext request) throws IOException {
-        String key = request.getUriInfo().getRequestUri().toString();
-        if (request.getMethod().equalsIgnoreCase("GET")) {
+        final Method method = resourceInfo.getResourceMethod();
+        final ResourceCachePolicy policy = getPolicy(resourceInfo.getResourceClass(), method);
+        final CacheKeyStrategy strategy = policy == null || policy.getKeyStrategy() == null ? keyStrategy
+                : policy.getKeyStrategy();
+        final String key = strategy.createKey(request, method);
+        // Used by the ServerCacheInterceptor to add the entry
+        request.setProperty(CACHE_KEY, key);
+        if (policy != null) {
+            request.setProperty(CACHE_POLICY, policy);
+        }
+        if (isCacheable(request.getMethod(), method)) {
             handleGET(request, key);
         } else if (!request.getMethod().equalsIgnoreCase("HEAD")) {
-            cache.remove(key);
+            invalidate(request, key);
         }
     }
 
+    /**
+     * Indicates whether the response to the request is the cacheable representation of a {@code GET}. A {@code HEAD}
+     * request is answered from, and may populate, the cache when it is dispatched to a {@code GET} resource method.
+     *
+     * @param httpMethod the HTTP method of the request
+     * @param method     the resource method, may be {@code null}
+     *
+     * @return {@code true} if the response is the representation a {@code GET} would be sent
+     */
+    static boolean isCacheable(final String httpMethod, final Method method) {
+        if (httpMethod.equalsIgnoreCase("GET")) {
+            return true;
+        }
+        return httpMethod.equalsIgnoreCase("HEAD") && method != null && method.isAnnotationPresent(GET.class);
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request, final ContainerResponseContext response) {
+        handleTags(request, response);
+        final Object stale = request.getProperty(STALE_ENTRY);
+        if (stale instanceof ServerCache.Entry && response.getStatus() >= 500) {
+            final ServerCache.Entry entry = (ServerCache.Entry) stale;
+            final MultivaluedMap<String, Object> headers = response.getHeaders();
+            headers.clear();
+            entry.getHeaderSnapshot().applyTo(headers);
+            headers.putSingle(HttpHeaders.CACHE_CONTROL, createCacheControl(entry));
+            addAge(headers, entry);
+            response.setStatus(Response.Status.OK.getStatusCode());
+            final Object entity = createEntity(entry);
+            if (entity instanceof CachedEntityOutput) {
+                headers.putSingle(HttpHeaders.CONTENT_LENGTH, ((CachedEntityOutput) entity).getLength());
+            }
+            response.setEntity(entity);
+            request.setProperty(DO_NOT_CACHE_RESPONSE, true);
+        }
+        // Responses with an entity are completed once the ServerCacheInterceptor has cached them
+        if (!response.hasEntity()) {
+            completeFlight(request.getProperty(SINGLE_FLIGHT));
+        }
+    }
+
+    private void invalidate(final ContainerRequestContext request, final String key) {
+        cache.remove(key);
+        if (!hierarchicalInvalidation) {
+            return;
+        }
+        final UriInfo uriInfo = request.getUriInfo();
+        final String base = stripTrailingSlash(uriInfo.getBaseUri().toString());
+        // The key without the query, so the invalidated URIs match the keys created by the strategy
+        final int queryStart = key.indexOf('?');
+        String uri = stripTrailingSlash(queryStart < 0 ? key : key.substring(0, queryStart));
+        // The subtree, including the URI with a trailing slash, is the only prefix removed, the URI and its ancestors
+        // are removed by their path so a cache which indexes its URIs by path does not need to scan its keys for them
+        cache.removeByPath(uri);
+        cache.removeByPrefix(uri + '/');
+        int index = uri.lastIndexOf('/');
+        while (index > base.length()) {
+            uri = uri.substring(0, index);
+            cache.removeByPath(uri);
+            cache.removeByPath(uri + '/');
+            index = uri.lastIndexOf('/');
+        }
+    }
+
+    private static String stripTrailingSlash(final String uri) {
+        return uri.length() > 1 && uri.charAt(uri.length() - 1) == '/' ? uri.substring(0, uri.length() - 1) : uri;
+    }
+
+    /**
+     * Removes the {@value #CACHE_TAGS_HEADER} header and resolves the tags of the response. The tags of a {@code GET}
+     * are stored for the {@link ServerCacheInterceptor}, the tags of a successful unsafe method are invalidated.
+     */
+    private void handleTags(final ContainerRequestContext request, final ContainerResponseContext response) {
+        final List<Object> header = response.getHeaders().remove(CACHE_TAGS_HEADER);
+        final CacheTags annotation = getCacheTags();
+        final Object policy = request.getProperty(CACHE_POLICY);
+        final List<String> policyTags = policy instanceof ResourceCachePolicy ? ((ResourceCachePolicy) policy).getTags()
+                : List.of();
+        if (header == null && annotation == null && policyTags.isEmpty()) {
+            return;
+        }
+        final Set<String> tags = new LinkedHashSet<>();
+        if (header != null) {
+            for (Object value : header) {
+                for (String tag : String.valueOf(value).split(",")) {
+                    tag = tag.trim();
+                    if (!tag.isEmpty()) {
+                        tags.add(tag);
+                    }
+                }
+            }
+        }
+        if (annotation != null || !policyTags.isEmpty()) {
+            final MultivaluedMap<String, String> parameters = request.getUriInfo().getPathParameters();
+            if (annotation != null) {
+                for (String tag : annotation.value()) {
+                    tags.add(expandTag(tag, parameters));
+                }
+            }
+            for (String tag : policyTags) {
+                tags.add(expandTag(tag, parameters));
+            }
+        }
+        final String method = request.getMethod();
+        if (isCacheable(method, resourceInfo.getResourceMethod())) {
+            request.setProperty(CACHE_TAGS, tags);
+        } else if (!method.equalsIgnoreCase("HEAD")
+                && response.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL) {
+            for (String tag : tags) {
+                cache.removeByTag(tag);
+            }
+        }
+    }
+
+    private CacheTags getCacheTags() {
+        final Method method = resourceInfo.getResourceMethod();
+        if (method == null) {
+            return null;
+        }
+        final CacheTags tags = method.getAnnotation(CacheTags.class);
+        if (tags != null || resourceInfo.getResourceClass() == null) {
+            return tags;
+        }
+        return resourceInfo.getResourceClass().getAnnotation(CacheTags.class);
+    }
+
+    private static String expandTag(final String tag, final MultivaluedMap<String, String> parameters) {
+        int start = tag.indexOf('{');
+        if (start < 0) {
+            return tag;
+        }
+        final StringBuilder result = new StringBuilder(tag.length() + 16);
+        int offset = 0;
+        while (start >= 0) {
+            final int end = tag.indexOf('}', start);
+            if (end < 0) {
+                break;
+            }
+            final String value = parameters.getFirst(tag.substring(start + 1, end));
+            result.append(tag, offset, start).append(value == null ? tag.substring(start, end + 1) : value);
+            offset = end + 1;
+            start = tag.indexOf('{', offset);
+        }
+        return result.append(tag, offset, tag.length()).toString();
+    }
+
     private void handleGET(ContainerRequestContext request, String key) {
-        ServerCache.Entry entry = null;
-        List<MediaType> acceptableMediaTypes = request.getAcceptableMediaTypes();
-        if (acceptableMediaTypes != null && acceptableMediaTypes.size() > 0) {
-            // only see if most desired is cached.
-            entry = cache.get(key, acceptableMediaTypes.get(0), request.getHeaders());
-        } else {
-            entry = cache.get(key, MediaType.WILDCARD_TYPE, request.getHeaders());
+        final CacheRevalidator revalidator = this.revalidator;
+        final String revalidationKey = revalidator == null ? null : revalidator.getRevalidationKey(request);
+        if (revalidationKey != null) {
+            // A background refresh of a stale entry, let it through to the resource and replace the stale entry
+            request.setProperty(CACHE_KEY, revalidationKey);
+            return;
         }
-        if (entry != null) {
-            if (entry.isExpired()) {
-                cache.remove(key);
+        admissionPolicy.recordAccess(key, resourceInfo.getResourceMethod());
+        final ServerCacheMetrics metrics = this.metrics;
+        final String resource = metrics == null ? null : getResource(request);
+        ServerCache.Entry entry = lookup(request, key, metrics, resource);
+        ServerCacheMetrics.Miss miss = ServerCacheMetrics.Miss.NOT_CACHED;
+        if (entry != null && entry.isExpired()) {
+            if (handleStale(request, key, entry, revalidator)) {
+                if (metrics != null) {
+                    metrics.recordHit(resource, true);
+                }
                 return;
-            } else {
-                // validation if client sent
-                Response.ResponseBuilder builder = validation.evaluatePreconditions(new EntityTag(entry.getEtag()));
-                CacheControl cc = new CacheControl();
-                cc.setMaxAge(entry.getExpirationInSeconds());
-                if (builder != null) {
-                    request.abortWith(builder.cacheControl(cc).build());
-                    return;
+            }
+            entry = null;
+            miss = ServerCacheMetrics.Miss.EXPIRED;
+        } else if (entry == null && metrics != null) {
+            miss = classifyMiss(request, key);
+        }
+        if (entry == null) {
+            final SingleFlight.Flight flight = joinFlight(request, key);
+            if (flight != null && request instanceof SuspendableContainerRequestContext) {
+                awaitFlight((SuspendableContainerRequestContext) request, flight, key, metrics, resource, miss);
+                return;
+            }
+            entry = flight == null ? null : awaitFlight(request, flight, key, metrics, resource);
+            if (entry == null) {
+                if (metrics != null) {
+                    metrics.recordMiss(resource, miss);
+                }
+                return;
+            }
+        }
+        if (metrics != null) {
+            metrics.recordHit(resource, false);
+        }
+        serve(request, entry);
+    }
+
+    /**
+     * Joins the single-flight for the request, if enabled.
+     *
+     * @return the flight to wait for or {@code null} if this request must invoke the resource
+     */
+    private SingleFlight.Flight joinFlight(final ContainerRequestContext request, final String key) {
+        final SingleFlight singleFlight = this.singleFlight;
+        if (singleFlight == null) {
+            return null;
+        }
+        final String flightKey = createFlightKey(request, key);
+        if (request.getMethod().equalsIgnoreCase("HEAD")) {
+            // A HEAD request may not write an entity, so it may never complete a flight. It only waits for a flight
+            // already in progress.
+            return singleFlight.find(flightKey);
+        }
+        final SingleFlight.Flight flight = singleFlight.join(flightKey);
+        if (flight.isLeader()) {
+            request.setProperty(SINGLE_FLIGHT, flight);
+            return null;
+        }
+        return flight;
+    }
+
+    /**
+     * Creates the key of the flight from the cache key, the most acceptable media type and the values of the request
+     * headers the representation is known to vary on, from the {@link ServerCached} policy and the cached variants.
+     */
+    private String createFlightKey(final ContainerRequestContext request, final String key) {
+        final StringBuilder flightKey = new StringBuilder(key).append(' ').append(getAcceptType(request));
+        final MultivaluedMap<String, String> headers = request.getHeaders();
+        final Object policy = request.getProperty(CACHE_POLICY);
+        if (policy instanceof ResourceCachePolicy) {
+            for (String name : ((ResourceCachePolicy) policy).getVary()) {
+                flightKey.append(' ').append(name).append('=').append(headers.get(name));
+            }
+        }
+        final List<? extends ServerCache.Entry> variants = cache.getVariants(key);
+        if (variants != null) {
+            VaryKey varyKey = null;
+            for (ServerCache.Entry variant : variants) {
+                // The request is only hashed once for the variants which vary on the same headers
+                if (varyKey == null || !varyKey.hasSameNames(variant.getVaryKey())) {
+                    varyKey = variant.getVaryKey();
+                    flightKey.append(' ').append(Long.toHexString(varyKey.fingerprint(headers)));
                 }
+            }
+        }
+        return flightKey.toString();
+    }
 
-                builder = Response.ok();
-                builder.entity(entry.getCached());
+    /**
+     * Blocks until the leader populates the cache. This is only used when the request cannot be suspended.
+     *
+     * @return the entry populated by the leader or {@code null} if this request must invoke the resource
+     */
+    private ServerCache.Entry awaitFlight(final ContainerRequestContext request, final SingleFlight.Flight flight,
+            final String key, final ServerCacheMetrics metrics, final String resource) {
+        if (!flight.await()) {
+            return null;
+        }
+        final ServerCache.Entry entry = lookup(request, key, metrics, resource);
+        return entry == null || entry.isExpired() ? null : entry;
+    }
 
-                for (Map.Entry<String, List<Object>> header : entry.getHeaders().entrySet()) {
-                    for (Object val : header.getValue()) {
-                        builder.header(header.getKey(), val);
+    /**
+     * Suspends the request until the leader populates the cache, so the thread of the request, which may be the IO
+     * thread of the container, is not blocked. The request is then served from the cache or, if the flight timed out
+     * or the entry was not cached, resumed to invoke the resource. Both happen on the default executor of
+     * {@link CompletableFuture} so a waiter is never served on the thread of the leader.
+     */
+    private void awaitFlight(final SuspendableContainerRequestContext request, final SingleFlight.Flight flight,
+            final String key, final ServerCacheMetrics metrics, final String resource, final ServerCacheMetrics.Miss miss) {
+        // The injected contextual objects are resolved from the context of the request
+        final Map<Class<?>, Object> contextData = ResteasyContext.getContextDataMap();
+        request.suspend();
+        flight.whenDone().whenCompleteAsync((completed, error) -> {
+            try (ResteasyContext.CloseableContext ignored = ResteasyContext.addCloseableContextDataLevel(contextData)) {
+                final ServerCache.Entry entry = Boolean.TRUE.equals(completed)
+                        ? lookup(request, key, metrics, resource)
+                        : null;
+                if (entry != null && !entry.isExpired()) {
+                    if (metrics != null) {
+                        metrics.recordHit(resource, false);
                     }
+                    // Aborting a suspended request resumes it with the response
+                    serve(request, entry);
+                    return;
+                }
+                if (metrics != null) {
+                    metrics.recordMiss(resource, miss);
+                }
+                request.resume();
+            } catch (Throwable t) {
+                request.resume(t);
+            }
+        });
+    }
+
+    private boolean handleStale(final ContainerRequestContext request, final String key, final ServerCache.Entry entry,
+            final CacheRevalidator revalidator) {
+        final int staleness = CacheDirectives.staleness(entry);
+        if (revalidator != null && entry.getStaleWhileRevalidate() > 0 && staleness <= entry.getStaleWhileRevalidate()) {
+            revalidator.revalidate(key, request, entry, cache);
+            serve(request, entry);
+            return true;
+        }
+        if (entry.getStaleIfError() > 0 && staleness <= entry.getStaleIfError()) {
+            // Invoke the resource, the response filter serves the stale entry if it fails
+            request.setProperty(STALE_ENTRY, entry);
+        } else if (CacheDirectives.isDiscardable(entry)) {
+            cache.remove(key);
+        }
+        return false;
+    }
+
+    private void serve(final ContainerRequestContext request, final ServerCache.Entry entry) {
+        final boolean head = request.getMethod().equalsIgnoreCase("HEAD");
+        final boolean ranged = !head && request.getHeaders().containsKey(ByteRanges.RANGE);
+        // Ranges are always served from the identity representation
+        final ByteBuffer gzipped = !ranged && acceptsGzip(request) ? entry.getGzipBuffer() : null;
+        // The compressed copy is a different representation and requires its own ETag
+        final String etag = gzipped == null ? entry.getEtag() : gzipEtag(entry.getEtag());
+        // validation if client sent
+        Response.ResponseBuilder builder = Preconditions.evaluate(request.getHeaders(), etag, entry.getLastModified());
+        final String cc = createCacheControl(entry);
+        if (builder != null) {
+            request.abortWith(builder.header(HttpHeaders.CACHE_CONTROL, cc).build());
+            return;
+        }
+
+        final ByteRanges ranges = ranged ? ByteRanges.evaluate(request.getHeaders(), etag, entry.getLastModified(),
+                entry.getCachedBuffer().remaining()) : null;
+        if (ranges != null) {
+            serveRanges(request, entry, ranges, cc);
+            return;
+        }
+
+        builder = Response.ok();
+        if (head) {
+            // No entity is written, the headers describe the representation a GET would be sent
+            builder.header(HttpHeaders.CONTENT_LENGTH,
+                    gzipped == null ? entry.getCachedBuffer().remaining() : gzipped.remaining());
+        } else {
+            final Object entity = gzipped == null ? createEntity(entry) : new CachedEntityOutput(gzipped);
+            builder.entity(entity);
+            if (entity instanceof CachedEntityOutput) {
+                builder.header(HttpHeaders.CONTENT_LENGTH, ((CachedEntityOutput) entity).getLength());
+            }
+        }
+
+        entry.getHeaderSnapshot().applyTo(builder);
+        if (gzipped != null) {
+            builder.header(HttpHeaders.ETAG, null);
+            builder.header(HttpHeaders.ETAG, etag);
+            if (head) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+            } else {
+                // The Content-Encoding is added by the ServerCacheInterceptor, after any encoding interceptor has run,
+                // so the entity is not compressed a second time
+                request.setProperty(PRECOMPRESSED, entry);
+            }
+        }
+        complete(request, entry, builder, cc);
+    }
+
+    private void serveRanges(final ContainerRequestContext request, final ServerCache.Entry entry,
+            final ByteRanges ranges, final String cc) {
+        final ByteBuffer cached = entry.getCachedBuffer();
+        final MediaType mediaType = entry.getMediaType();
+        final Response.ResponseBuilder builder = ranges.createResponse(cached,
+                mediaType == null ? null : mediaType.toString());
+        if (ranges.isUnsatisfiable()) {
+            request.setProperty(DO_NOT_CACHE_RESPONSE, true);
+            request.abortWith(builder.header(HttpHeaders.CACHE_CONTROL, cc).build());
+            return;
+        }
+        final HeaderSnapshot snapshot = entry.getHeaderSnapshot();
+        for (int i = 0; i < snapshot.size(); i++) {
+            final String name = snapshot.getName(i);
+            // The entity headers describe the full representation, the ranges have their own
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) && !(ranges.isMultipart()
+                    && HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name))) {
+                builder.header(name, snapshot.getValue(i));
+            }
+        }
+        complete(request, entry, builder, cc);
+    }
+
+    private static void complete(final ContainerRequestContext request, final ServerCache.Entry entry,
+            final Response.ResponseBuilder builder, final String cc) {
+        builder.header(ByteRanges.ACCEPT_RANGES, ByteRanges.BYTES);
+        builder.header(HttpHeaders.CACHE_CONTROL, cc);
+        final int age = entry.getAgeInSeconds();
+        if (age >= 0) {
+            builder.header(AGE, Integer.toString(age));
+        }
+        request.setProperty(DO_NOT_CACHE_RESPONSE, true);
+        request.abortWith(builder.build());
+    }
+
+    private static String gzipEtag(final String etag) {
+        // Keep the suffix within the quotes of an application provided entity tag
+        return etag.endsWith("\"") ? etag.substring(0, etag.length() - 1) + GZIP_ETAG_SUFFIX + '"'
+                : etag + GZIP_ETAG_SUFFIX;
+    }
+
+    private ServerCache.Entry lookup(final ContainerRequestContext request, final String key,
+            final ServerCacheMetrics metrics, final String resource) {
+        final long start = metrics == null ? 0L : System.nanoTime();
+        final ServerCache.Entry entry = negotiate(request, key);
+        if (metrics != null) {
+            metrics.recordGet(resource, System.nanoTime() - start);
+        }
+        return entry;
+    }
+
+    /**
+     * Finds the cached variant of the most acceptable media type the resource method produces. Only the first
+     * {@value #MAX_ACCEPT_TYPES} acceptable types are checked.
+     */
+    private ServerCache.Entry negotiate(final ContainerRequestContext request, final String key) {
+        final List<MediaType> acceptable = request.getAcceptableMediaTypes();
+        if (acceptable == null || acceptable.size() < 2) {
+            return cache.get(key, getAcceptType(request), request.getHeaders());
+        }
+        final List<? extends ServerCache.Entry> variants = cache.getVariants(key);
+        if (variants != null && variants.isEmpty()) {
+            return null;
+        }
+        final MediaType[] produces = getProducedTypes();
+        final int count = Math.min(acceptable.size(), MAX_ACCEPT_TYPES);
+        for (int i = 0; i < count; i++) {
+            final MediaType accept = acceptable.get(i);
+            if (isNotAcceptable(accept) || !isProduced(accept, produces)) {
+                continue;
+            }
+            final ServerCache.Entry entry = variants == null ? cache.get(key, accept, request.getHeaders())
+                    : findVariant(variants, accept, request.getHeaders());
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static ServerCache.Entry findVariant(final List<? extends ServerCache.Entry> variants,
+            final MediaType accept, final MultivaluedMap<String, String> headers) {
+        VaryKey requestKey = null;
+        long fingerprint = 0L;
+        for (ServerCache.Entry variant : variants) {
+            final MediaType mediaType = variant.getMediaType();
+            if (mediaType != null && !accept.isCompatible(mediaType)) {
+                continue;
+            }
+            // The request is only hashed once for the variants which vary on the same headers
+            final VaryKey varyKey = variant.getVaryKey();
+            if (requestKey == null || !requestKey.hasSameNames(varyKey)) {
+                requestKey = varyKey;
+                fingerprint = requestKey.fingerprint(headers);
+            }
+            if (varyKey.matches(headers, fingerprint)) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the media types the resource method produces or an empty array if any type may be produced.
+     */
+    private MediaType[] getProducedTypes() {
+        final Method method = resourceInfo.getResourceMethod();
+        if (method == null) {
+            return ANY_TYPE;
+        }
+        MediaType[] types = producedTypes.get(method);
+        if (types == null) {
+            Produces produces = method.getAnnotation(Produces.class);
+            if (produces == null && resourceInfo.getResourceClass() != null) {
+                produces = resourceInfo.getResourceClass().getAnnotation(Produces.class);
+            }
+            types = produces == null ? ANY_TYPE : parseMediaTypes(produces.value());
+            producedTypes.putIfAbsent(method, types);
+        }
+        return types;
+    }
+
+    private static MediaType[] parseMediaTypes(final String[] values) {
+        final List<MediaType> types = new ArrayList<>();
+        for (String value : values) {
+            for (String type : value.split(",")) {
+                if (type.isBlank()) {
+                    continue;
                 }
-                builder.cacheControl(cc);
-                request.setProperty(DO_NOT_CACHE_RESPONSE, true);
-                request.abortWith(builder.build());
+                final MediaType mediaType = MediaType.valueOf(type.trim());
+                if (mediaType.isWildcardType()) {
+                    return ANY_TYPE;
+                }
+                types.add(mediaType);
+            }
+        }
+        return types.isEmpty() ? ANY_TYPE : types.toArray(new MediaType[0]);
+    }
+
+    private static boolean isProduced(final MediaType accept, final MediaType[] produces) {
+        if (produces.length == 0) {
+            return true;
+        }
+        for (MediaType type : produces) {
+            if (accept.isCompatible(type)) {
+                return true;
             }
+        }
+        return false;
+    }
+
+    private static boolean isNotAcceptable(final MediaType type) {
+        final String q = type.getParameters().get("q");
+        if (q == null) {
+            return false;
+        }
+        try {
+            return Float.parseFloat(q) <= 0f;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private ServerCacheMetrics.Miss classifyMiss(final ContainerRequestContext request, final String key) {
+        final List<? extends ServerCache.Entry> variants = cache.getVariants(key);
+        if (variants == null || variants.isEmpty()) {
+            return ServerCacheMetrics.Miss.NOT_CACHED;
+        }
+        final MediaType accept = getAcceptType(request);
+        for (ServerCache.Entry variant : variants) {
+            if (variant.getMediaType() == null || accept.isCompatible(variant.getMediaType())) {
+                return ServerCacheMetrics.Miss.VARY_MISMATCH;
+            }
+        }
+        return ServerCacheMetrics.Miss.MEDIA_TYPE_MISMATCH;
+    }
+
+    private String getResource(final ContainerRequestContext request) {
+        final Method method = resourceInfo.getResourceMethod();
+        String resource;
+        if (method == null) {
+            resource = DefaultServerCacheMetrics.UNKNOWN_RESOURCE;
         } else {
+            resource = resourceTemplates.get(method);
+            if (resource == null) {
+                resource = createResourceTemplate(resourceInfo.getResourceClass(), method);
+                resourceTemplates.putIfAbsent(method, resource);
+            }
+        }
+        // Used by the ServerCacheInterceptor to record the entry being added
+        request.setProperty(METRICS_RESOURCE, resource);
+        return resource;
+    }
+
+    private static String createResourceTemplate(final Class<?> resourceClass, final Method method) {
+        final StringBuilder template = new StringBuilder();
+        if (resourceClass != null) {
+            appendPath(template, resourceClass.getAnnotation(Path.class));
+        }
+        appendPath(template, method.getAnnotation(Path.class));
+        return template.length() == 0 ? "/" : template.toString();
+    }
+
+    private static void appendPath(final StringBuilder template, final Path path) {
+        if (path == null) {
+            return;
+        }
+        final String value = path.value();
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (start < end) {
+            template.append('/').append(value, start, end);
+        }
+    }
+
+    private static MediaType getAcceptType(final ContainerRequestContext request) {
+        final List<MediaType> acceptableMediaTypes = request.getAcceptableMediaTypes();
+        if (acceptableMediaTypes != null && acceptableMediaTypes.size() > 0) {
+            // only see if most desired is cached.
+            return acceptableMediaTypes.get(0);
+        }
+        return MediaType.WILDCARD_TYPE;
+    }
+
+    private static String createCacheControl(final ServerCache.Entry entry) {
+        // A stale entry must not be cached any further downstream
+        final int maxAge = Math.max(0, entry.getExpirationInSeconds());
+        if (maxAge >= MAX_AGE_VALUES.length) {
+            return MAX_AGE_PREFIX + maxAge;
+        }
+        String value = MAX_AGE_VALUES[maxAge];
+        if (value == null) {
+            // Racing threads compute the same immutable value
+            value = MAX_AGE_PREFIX + maxAge;
+            MAX_AGE_VALUES[maxAge] = value;
+        }
+        return value;
+    }
+
+    private static void addAge(final MultivaluedMap<String, Object> headers, final ServerCache.Entry entry) {
+        final int age = entry.getAgeInSeconds();
+        if (age >= 0) {
+            headers.putSingle(AGE, Integer.toString(age));
+        }
+    }
+
+    private static boolean acceptsGzip(final ContainerRequestContext request) {
+        final String acceptEncoding = request.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        // An explicit gzip coding takes precedence over the * wildcard, see RFC 9110 section 12.5.3
+        Boolean gzip = null;
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(name)) {
+                gzip = gzip == Boolean.TRUE || isAccepted(parts);
+            } else if ("*".equals(name)) {
+                wildcard = wildcard || isAccepted(parts);
+            }
+        }
+        return gzip == null ? wildcard : gzip;
+    }
+
+    private static boolean isAccepted(final String[] parts) {
+        boolean accepted = true;
+        for (int i = 1; i < parts.length; i++) {
+            final String param = parts[i].trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    accepted = Float.parseFloat(param.substring(2)) > 0f;
+                } catch (NumberFormatException ignore) {
+                    accepted = false;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private static Object createEntity(final ServerCache.Entry entry) {
+        final ByteBuffer cached = entry.getCachedBuffer();
+        if (cached.isDirect()) {
+            // Stored off-heap, write directly from the buffer
+            return new CachedEntityOutput(cached);
+        }
+        return entry.getCached();
+    }
+
+    /**
+     * Completes the single-flight, if any, the request was the leader of.
+     *
+     * @param flight the value of the {@link #SINGLE_FLIGHT} property
+     */
+    static void completeFlight(final Object flight) {
+        if (flight instanceof SingleFlight.Flight) {
+            ((SingleFlight.Flight) flight).complete();
         }
     }
 }
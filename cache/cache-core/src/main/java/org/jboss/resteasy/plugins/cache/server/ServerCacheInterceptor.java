@@ -19,16 +19,20 @@ package org.jboss.resteasy.plugins.cache.server;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import jakarta.ws.rs.ConstrainedTo;
 import jakarta.ws.rs.RuntimeType;
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.ResourceInfo;
 import jakarta.ws.rs.core.CacheControl;
 import jakarta.ws.rs.core.Context;
-import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.MultivaluedHashMap;
@@ -54,64 +58,157 @@ import org.jboss.resteasy.spi.NoLogWebApplicationException;
 public class ServerCacheInterceptor implements WriterInterceptor, AsyncWriterInterceptor {
     private static final Logger LOGGER = Logger.getLogger(ServerCacheInterceptor.class);
     protected ServerCache cache;
+    protected boolean streaming;
+    protected long maxEntitySize = -1L;
+    protected EtagGenerator etagGenerator = MessageDigestEtagGenerator.MD5;
+    protected boolean compression;
+    protected int compressionMinSize = 1024;
+    protected volatile ServerCacheMetrics metrics;
+    private volatile CacheWriteBehind writeBehind;
+    private volatile CacheAdmissionPolicy admissionPolicy = CacheAdmissionPolicy.ALWAYS;
 
     public ServerCacheInterceptor(final ServerCache cache) {
         this.cache = cache;
     }
 
-    @Context
-    protected HttpRequest request;
+    /**
+     * Enables or disables streaming. When streaming the entity is written to the client as it is produced while a
+     * copy is captured for the cache. If the application did not set an {@code ETag} the generated one is only
+     * stored with the cached entry, as the response has already been committed. Conditional requests, with an
+     * {@code If-None-Match}, {@code If-Match}, {@code If-Modified-Since} or {@code If-Unmodified-Since} header, are
+     * always buffered so the preconditions can be evaluated.
+     *
+     * @param streaming {@code true} to stream cacheable responses
+     */
+    public void setStreaming(final boolean streaming) {
+        this.streaming = streaming;
+    }
 
-    @Context
-    protected Request validation;
+    /**
+     * Sets the maximum size, in bytes, of an entity which will be cached. Larger entities are written to the client
+     * without being cached. A negative value means there is no limit.
+     *
+     * @param maxEntitySize the maximum size of a cached entity
+     */
+    public void setMaxEntitySize(final long maxEntitySize) {
+        this.maxEntitySize = maxEntitySize;
+    }
 
-    private static final String[] pseudo = { "0", "1", "2",
-            "3", "4", "5", "6", "7", "8",
-            "9", "A", "B", "C", "D", "E",
-            "F" };
+    /**
+     * Enables or disables storing a gzip compressed copy of cached entities. The compressed copy is served to clients
+     * which accept the {@code gzip} content coding and {@code Vary: Accept-Encoding} is added to the response.
+     *
+     * @param compression {@code true} to store a compressed copy
+     */
+    public void setCompression(final boolean compression) {
+        this.compression = compression;
+    }
 
-    public static String byteArrayToHexString(byte[] bytes) {
+    /**
+     * Sets the minimum size, in bytes, of an entity for a compressed copy to be stored. The default is 1024.
+     *
+     * @param compressionMinSize the minimum size of a compressed entity
+     */
+    public void setCompressionMinSize(final int compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    /**
+     * Sets the metrics the added entries are recorded to.
+     *
+     * @param metrics the metrics or {@code null} to not record metrics
+     */
+    public void setMetrics(final ServerCacheMetrics metrics) {
+        this.metrics = metrics;
+    }
 
-        byte ch = 0x00;
+    /**
+     * Enables or disables the write-behind queue. When enabled, entries are added to the cache on a separate thread so
+     * a slow cache store does not delay the response. Entries are dropped, rather than queued, when the number of
+     * writes queued or in flight reaches the capacity. A capacity of 0 or less disables the queue, which is the
+     * default.
+     *
+     * @param capacity the maximum number of writes queued or in flight
+     * @param threads  the number of threads writes are submitted on
+     */
+    public synchronized void setWriteBehind(final int capacity, final int threads) {
+        final CacheWriteBehind previous = this.writeBehind;
+        this.writeBehind = capacity > 0 ? new CacheWriteBehind(capacity, Math.max(1, threads)) : null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
 
-        StringBuffer out = new StringBuffer(bytes.length * 2);
+    /**
+     * Returns the write-behind queue.
+     *
+     * @return the write-behind queue or {@code null} if it is disabled
+     */
+    CacheWriteBehind getWriteBehind() {
+        return writeBehind;
+    }
 
-        for (byte b : bytes) {
+    /**
+     * Sets the policy which decides whether a cacheable response is added to the cache. This must be the same policy
+     * the {@link ServerCacheHitFilter} records the requests to. The default is {@link CacheAdmissionPolicy#ALWAYS}.
+     *
+     * @param admissionPolicy the policy, {@code null} to admit every entry
+     */
+    public void setAdmissionPolicy(final CacheAdmissionPolicy admissionPolicy) {
+        this.admissionPolicy = admissionPolicy == null ? CacheAdmissionPolicy.ALWAYS : admissionPolicy;
+    }
 
-            ch = (byte) (b & 0xF0);
-            ch = (byte) (ch >>> 4);
-            ch = (byte) (ch & 0x0F);
-            out.append(pseudo[(int) ch]);
-            ch = (byte) (b & 0x0F);
-            out.append(pseudo[(int) ch]);
+    @Context
+    protected HttpRequest request;
 
-        }
+    @Context
+    protected ResourceInfo resourceInfo;
 
-        String rslt = new String(out);
+    @Context
+    protected Request validation;
 
-        return rslt;
+    /**
+     * Encodes the bytes as an upper case hexadecimal string.
+     *
+     * @param bytes the bytes to encode
+     *
+     * @return the hexadecimal string
+     */
+    public static String byteArrayToHexString(byte[] bytes) {
+        return HexEncoding.toHexString(bytes);
+    }
 
+    /**
+     * Sets the generator used to create the {@code ETag} of an entity when the application did not set one.
+     *
+     * @param etagGenerator the generator to use
+     */
+    public void setEtagGenerator(final EtagGenerator etagGenerator) {
+        this.etagGenerator = etagGenerator == null ? MessageDigestEtagGenerator.MD5 : etagGenerator;
     }
 
     protected String createHash(byte[] entity) {
-        try {
-            MessageDigest messagedigest = MessageDigest.getInstance("MD5");
-            byte[] abyte0 = messagedigest.digest(entity);
-            return byteArrayToHexString(abyte0);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        return etagGenerator.generate(entity);
     }
 
     private CacheControl getCacheControl(MultivaluedMap<String, Object> headers) {
-        if (!request.getHttpMethod()
-                .equalsIgnoreCase("GET") || request.getAttribute(ServerCacheHitFilter.DO_NOT_CACHE_RESPONSE) != null) {
+        if (!ServerCacheHitFilter.isCacheable(request.getHttpMethod(), resourceInfo.getResourceMethod())
+                || request.getAttribute(ServerCacheHitFilter.DO_NOT_CACHE_RESPONSE) != null) {
             return null;
         }
 
+        final Object policy = request.getAttribute(ServerCacheHitFilter.CACHE_POLICY);
+        if (policy instanceof ResourceCachePolicy) {
+            addVary(headers, ((ResourceCachePolicy) policy).getVary());
+        }
         Object occ = headers.getFirst(HttpHeaders.CACHE_CONTROL);
         if (occ == null) {
-            return null;
+            if (!(policy instanceof ResourceCachePolicy) || ((ResourceCachePolicy) policy).getCacheControl() == null) {
+                return null;
+            }
+            // The cache control resolved from the ServerCached annotation
+            occ = ((ResourceCachePolicy) policy).getCacheControl();
+            headers.putSingle(HttpHeaders.CACHE_CONTROL, occ);
         }
         CacheControl cc = null;
 
@@ -127,13 +224,14 @@ public class ServerCacheInterceptor implements WriterInterceptor, AsyncWriterInt
         return cc;
     }
 
-    private byte[] handleCaching(ByteArrayOutputStream buffer, CacheControl cc, MultivaluedMap<String, Object> headers,
+    private void handleCaching(CachingOutputStream buffer, CacheControl cc, MultivaluedMap<String, Object> headers,
             MediaType mediaType) {
         byte[] entity = buffer.toByteArray();
         Object etagObject = headers.getFirst(HttpHeaders.ETAG);
         String etag = null;
         if (etagObject == null) {
             etag = createHash(entity);
+            // When written through the response has been committed, this only affects the headers of the cached entry
             headers.putSingle(HttpHeaders.ETAG, etag);
         } else // use application provided ETag if it exists
         {
@@ -141,26 +239,195 @@ public class ServerCacheInterceptor implements WriterInterceptor, AsyncWriterInt
         }
 
         if (!cc.isPrivate() && !cc.isNoStore()) {
+            if (!headers.containsKey(HttpHeaders.LAST_MODIFIED)) {
+                // Allows date validators to be used, this only affects the cached entry if written through
+                headers.putSingle(HttpHeaders.LAST_MODIFIED, Preconditions.formatDate(System.currentTimeMillis()));
+            }
+            final boolean compress = compression && entity.length >= compressionMinSize && isIdentity(headers, entity);
             MultivaluedMap<String, String> varyHeaders = new MultivaluedHashMap<>();
             if (headers.containsKey(HttpHeaders.VARY)) {
                 for (Object varyHeader : headers.get(HttpHeaders.VARY)) {
+                    // Both encodings are stored in the same entry
+                    if (compress && HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(String.valueOf(varyHeader))) {
+                        continue;
+                    }
                     if (request.getMutableHeaders().containsKey(varyHeader)) {
                         varyHeaders.addAll((String) varyHeader, request.getMutableHeaders().get(varyHeader));
                     }
                 }
             }
-            cache.add(request.getUri().getRequestUri().toString(), mediaType, cc, headers, entity, etag, varyHeaders);
+            final byte[] gzipped = compress ? gzip(entity) : null;
+            MultivaluedMap<String, Object> cachedHeaders = headers;
+            if (gzipped != null) {
+                if (!buffer.isWriteThrough()) {
+                    addVaryAcceptEncoding(headers);
+                }
+                // The encoding is selected for each hit
+                cachedHeaders = new MultivaluedHashMap<>(headers);
+                cachedHeaders.remove(HttpHeaders.CONTENT_ENCODING);
+                addVaryAcceptEncoding(cachedHeaders);
+            }
+            addEntry(mediaType, cc, cachedHeaders, entity, etag, varyHeaders, gzipped);
         }
 
+        if (buffer.isWriteThrough()) {
+            return;
+        }
         // check to see if ETags are the same.  If they are, we don't need to send a response back.
-        Response.ResponseBuilder validatedResponse = validation.evaluatePreconditions(new EntityTag(etag));
+        Response.ResponseBuilder validatedResponse = Preconditions.evaluate(request.getMutableHeaders(), etag,
+                getLastModified(headers));
         if (validatedResponse != null) {
-            throw new NoLogWebApplicationException(validatedResponse.status(Response.Status.NOT_MODIFIED)
-                    .cacheControl(cc)
-                    .header(HttpHeaders.ETAG, etag)
-                    .build());
+            throw new NoLogWebApplicationException(validatedResponse.cacheControl(cc).build());
         }
-        return entity;
+    }
+
+    private void addEntry(final MediaType mediaType, final CacheControl cc, final MultivaluedMap<String, Object> headers,
+            final byte[] entity, final String etag, final MultivaluedMap<String, String> varyHeaders,
+            final byte[] gzipped) {
+        @SuppressWarnings("unchecked")
+        final Set<String> requestTags = (Set<String>) request.getAttribute(ServerCacheHitFilter.CACHE_TAGS);
+        final Set<String> tags = requestTags == null ? Set.of() : requestTags;
+        final Object key = request.getAttribute(ServerCacheHitFilter.CACHE_KEY);
+        final String uri = key instanceof String ? (String) key : request.getUri().getRequestUri().toString();
+        final String resource = (String) request.getAttribute(ServerCacheHitFilter.METRICS_RESOURCE);
+        final long bytes = entity.length + (gzipped == null ? 0L : gzipped.length);
+        final ServerCacheMetrics metrics = this.metrics;
+        if (!admissionPolicy.admit(uri, resourceInfo.getResourceMethod(), bytes)) {
+            LOGGER.debugf("The admission policy rejected %s, %d bytes", uri, bytes);
+            if (metrics != null) {
+                metrics.recordRejectedAdd(resource);
+            }
+            return;
+        }
+        final CacheWriteBehind writeBehind = this.writeBehind;
+        final long start = metrics == null ? 0L : System.nanoTime();
+        if (writeBehind == null) {
+            cache.add(uri, mediaType, cc, headers, entity, etag, varyHeaders, gzipped, tags);
+            if (metrics != null) {
+                metrics.recordAdd(resource, bytes, System.nanoTime() - start);
+            }
+            return;
+        }
+        // The response headers may still change once this returns
+        final MultivaluedMap<String, Object> cachedHeaders = new MultivaluedHashMap<>(headers);
+        final CompletableFuture<Object> write = writeBehind.submit(() -> cache.addAsync(uri, mediaType, cc,
+                cachedHeaders, entity, etag, varyHeaders, gzipped, tags));
+        if (write == null) {
+            LOGGER.debugf("The write-behind queue is full, %s was not cached", uri);
+            if (metrics != null) {
+                metrics.recordDroppedAdd(resource);
+            }
+            return;
+        }
+        // Requests waiting on the single-flight are released once the entry has been written
+        final Object flight = request.getAttribute(ServerCacheHitFilter.SINGLE_FLIGHT);
+        request.removeAttribute(ServerCacheHitFilter.SINGLE_FLIGHT);
+        write.whenComplete((value, error) -> {
+            if (error != null) {
+                LOGGER.debugf(error, "Failed to cache %s", uri);
+            } else if (metrics != null) {
+                metrics.recordAdd(resource, bytes, System.nanoTime() - start);
+            }
+            ServerCacheHitFilter.completeFlight(flight);
+        });
+    }
+
+    private static long getLastModified(final MultivaluedMap<String, Object> headers) {
+        final Object lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        if (lastModified instanceof Date) {
+            // HTTP dates have a precision of seconds
+            return (((Date) lastModified).getTime() / 1000L) * 1000L;
+        }
+        return lastModified == null ? -1L : Preconditions.parseDate(lastModified.toString());
+    }
+
+    /**
+     * Indicates whether the captured entity is the identity representation. The entity is captured before an encoding
+     * interceptor, such as the {@code GZIPEncodingInterceptor}, compresses the stream, so a {@code gzip} entity is
+     * only the identity representation if it has not already been compressed by the application. Any other encoding
+     * has already been applied.
+     */
+    private static boolean isIdentity(final MultivaluedMap<String, Object> headers, final byte[] entity) {
+        final Object encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null) {
+            return true;
+        }
+        return ServerCacheHitFilter.GZIP.equalsIgnoreCase(encoding.toString()) && !isGzipped(entity);
+    }
+
+    private static boolean isGzipped(final byte[] entity) {
+        return entity.length >= 2 && (entity[0] & 0xff) == (GZIPInputStream.GZIP_MAGIC & 0xff)
+                && (entity[1] & 0xff) == (GZIPInputStream.GZIP_MAGIC >>> 8);
+    }
+
+    private static void addVary(final MultivaluedMap<String, Object> headers, final List<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        final List<Object> vary = headers.get(HttpHeaders.VARY);
+        for (String name : names) {
+            if (!containsVary(vary, name)) {
+                headers.add(HttpHeaders.VARY, name);
+            }
+        }
+    }
+
+    private static boolean containsVary(final List<Object> vary, final String name) {
+        if (vary != null) {
+            for (Object value : vary) {
+                for (String current : String.valueOf(value).split(",")) {
+                    if (name.equalsIgnoreCase(current.trim())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void addVaryAcceptEncoding(final MultivaluedMap<String, Object> headers) {
+        addVary(headers, List.of(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    private static byte[] gzip(final byte[] entity) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, entity.length / 2));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(entity);
+        } catch (IOException e) {
+            LOGGER.debug("Failed to compress the entity", e);
+            return null;
+        }
+        // Only keep the copy if compressing was worthwhile
+        return out.size() < entity.length ? out.toByteArray() : null;
+    }
+
+    /**
+     * Sets the {@code Content-Encoding} of a hit served from the compressed copy.
+     *
+     * @param headers the response headers
+     *
+     * @return the identity entity to write instead of the compressed copy or {@code null} to write the entity as is
+     */
+    private Object handlePrecompressed(final MultivaluedMap<String, Object> headers) {
+        final Object entry = request.getAttribute(ServerCacheHitFilter.PRECOMPRESSED);
+        if (!(entry instanceof ServerCache.Entry)) {
+            return null;
+        }
+        if (headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            // Another provider selected an encoding so the stream may already be compressing, send the identity entity
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            return new CachedEntityOutput(((ServerCache.Entry) entry).getCachedBuffer());
+        }
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, ServerCacheHitFilter.GZIP);
+        return null;
+    }
+
+    private boolean isWriteThrough() {
+        if (!streaming) {
+            return false;
+        }
+        // The preconditions can only be evaluated before the response is committed
+        return !Preconditions.isConditional(request.getMutableHeaders());
     }
 
     @Override
@@ -169,20 +436,32 @@ public class ServerCacheInterceptor implements WriterInterceptor, AsyncWriterInt
 
         CacheControl cc = getCacheControl(context.getHeaders());
         if (cc == null) {
+            completeFlight();
+            final Object identity = handlePrecompressed(context.getHeaders());
+            if (identity != null) {
+                context.setEntity(identity);
+            }
             context.proceed();
             return;
         }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         OutputStream old = context.getOutputStream();
+        CachingOutputStream buffer = new CachingOutputStream(old, isWriteThrough(), maxEntitySize);
         try {
             context.setOutputStream(buffer);
             context.proceed();
 
-            byte[] entity = handleCaching(buffer, cc, context.getHeaders(), context.getMediaType());
-            old.write(entity);
+            if (buffer.isOverflowed()) {
+                // Too large to cache, the entity has already been written
+                return;
+            }
+            handleCaching(buffer, cc, context.getHeaders(), context.getMediaType());
+            if (!buffer.isWriteThrough()) {
+                buffer.writeTo(old);
+            }
         } finally {
             context.setOutputStream(old);
+            completeFlight();
         }
     }
 
@@ -192,16 +471,34 @@ public class ServerCacheInterceptor implements WriterInterceptor, AsyncWriterInt
 
         CacheControl cc = getCacheControl(context.getHeaders());
         if (cc == null) {
+            completeFlight();
+            final Object identity = handlePrecompressed(context.getHeaders());
+            if (identity != null) {
+                context.setEntity(identity);
+            }
             return context.asyncProceed();
         }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        // The write may complete on a thread without the context of the request
+        final Object flight = request.getAttribute(ServerCacheHitFilter.SINGLE_FLIGHT);
         AsyncOutputStream old = context.getAsyncOutputStream();
+        CachingOutputStream buffer = new CachingOutputStream(old, false, maxEntitySize);
         context.setAsyncOutputStream(new BlockingAsyncOutputStream(buffer));
         return context.asyncProceed()
                 .thenCompose(v -> {
-                    byte[] entity = handleCaching(buffer, cc, context.getHeaders(), context.getMediaType());
-                    return old.asyncWrite(entity);
-                }).whenComplete((v, t) -> context.setAsyncOutputStream(old));
+                    if (buffer.isOverflowed()) {
+                        return CompletableFuture.<Void> completedFuture(null);
+                    }
+                    handleCaching(buffer, cc, context.getHeaders(), context.getMediaType());
+                    return old.asyncWrite(buffer.getBuffer(), 0, buffer.size());
+                }).whenComplete((v, t) -> {
+                    context.setAsyncOutputStream(old);
+                    ServerCacheHitFilter.completeFlight(flight);
+                });
+    }
+
+    private void completeFlight() {
+        // Release any requests waiting for this one to populate the cache
+        ServerCacheHitFilter.completeFlight(request.getAttribute(ServerCacheHitFilter.SINGLE_FLIGHT));
     }
 }
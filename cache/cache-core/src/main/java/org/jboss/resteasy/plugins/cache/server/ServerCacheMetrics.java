@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+/**
+ * Receives the events of the server cache. Implementations must be thread safe and cheap, the methods are invoked on
+ * the request threads.
+ * <p>
+ * The {@code resource} is the matched resource template, for example {@code /orders/{id}}, rather than the request URI
+ * so the number of distinct values is bounded.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ * @see DefaultServerCacheMetrics
+ */
+public interface ServerCacheMetrics {
+
+    /**
+     * The reason a request was not served from the cache.
+     */
+    enum Miss {
+        /**
+         * Nothing was cached for the URI.
+         */
+        NOT_CACHED,
+        /**
+         * The cached entry had expired.
+         */
+        EXPIRED,
+        /**
+         * An entry of a compatible media type was cached, but for different values of the vary headers.
+         */
+        VARY_MISMATCH,
+        /**
+         * Entries were cached for the URI, but none of an acceptable media type.
+         */
+        MEDIA_TYPE_MISMATCH,
+    }
+
+    /**
+     * Records a request served from the cache.
+     *
+     * @param resource the resource template
+     * @param stale    {@code true} if an expired entry was served
+     */
+    void recordHit(String resource, boolean stale);
+
+    /**
+     * Records a request which was not served from the cache.
+     *
+     * @param resource the resource template
+     * @param reason   the reason the request was not served from the cache
+     */
+    void recordMiss(String resource, Miss reason);
+
+    /**
+     * Records the time taken to look up an entry.
+     *
+     * @param resource the resource template
+     * @param nanos    the time taken in nanoseconds
+     */
+    void recordGet(String resource, long nanos);
+
+    /**
+     * Records an entry added to the cache.
+     *
+     * @param resource the resource template
+     * @param bytes    the number of bytes stored
+     * @param nanos    the time taken to add the entry in nanoseconds
+     */
+    void recordAdd(String resource, long bytes, long nanos);
+
+    /**
+     * Records an entry which was not added because the write-behind queue was full.
+     *
+     * @param resource the resource template
+     */
+    default void recordDroppedAdd(String resource) {
+    }
+
+    /**
+     * Records an entry which was not added because the {@link CacheAdmissionPolicy} rejected it.
+     *
+     * @param resource the resource template
+     */
+    default void recordRejectedAdd(String resource) {
+    }
+
+    /**
+     * Records entries evicted from the cache. Evictions are not attributed to a resource.
+     *
+     * @param count the number of URIs evicted
+     * @param bytes the number of bytes evicted, or 0 if not known
+     */
+    void recordEviction(long count, long bytes);
+
+    /**
+     * Records entries removed from the cache by an expiry sweep, rather than when they were looked up. Expirations are
+     * not attributed to a resource.
+     *
+     * @param count the number of URIs removed
+     * @param bytes the number of bytes removed
+     */
+    default void recordExpiration(long count, long bytes) {
+    }
+}
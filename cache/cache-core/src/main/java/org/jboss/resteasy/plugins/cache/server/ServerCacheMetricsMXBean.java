@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the {@link DefaultServerCacheMetrics}.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public interface ServerCacheMetricsMXBean {
+
+    /**
+     * Returns the statistics of each resource template.
+     *
+     * @return the statistics keyed by resource template
+     */
+    Map<String, ServerCacheStatistics> getResources();
+
+    /**
+     * Returns the statistics of the whole cache.
+     *
+     * @return the statistics of the whole cache
+     */
+    ServerCacheStatistics getTotal();
+
+    /**
+     * Resets all the statistics.
+     */
+    void reset();
+}
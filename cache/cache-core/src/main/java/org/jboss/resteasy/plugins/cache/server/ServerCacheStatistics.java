@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+/**
+ * An immutable snapshot of the statistics recorded by the {@link DefaultServerCacheMetrics} for a resource, or for the
+ * whole cache.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class ServerCacheStatistics {
+    static final int HITS = 0;
+    static final int STALE_HITS = 1;
+    static final int MISSES = 2;
+    static final int EXPIRED = 3;
+    static final int VARY_MISMATCHES = 4;
+    static final int MEDIA_TYPE_MISMATCHES = 5;
+    static final int ADDS = 6;
+    static final int BYTES_STORED = 7;
+    static final int EVICTIONS = 8;
+    static final int EVICTED_BYTES = 9;
+    static final int DROPPED_ADDS = 10;
+    static final int REJECTED_ADDS = 11;
+    static final int EXPIRATIONS = 12;
+    static final int EXPIRED_BYTES = 13;
+    static final int COUNTERS = 14;
+
+    private final long[] counters;
+    private final long[] getLatency;
+    private final long getNanos;
+    private final long[] addLatency;
+    private final long addNanos;
+
+    ServerCacheStatistics(final long[] counters, final long[] getLatency, final long getNanos,
+            final long[] addLatency, final long addNanos) {
+        this.counters = counters;
+        this.getLatency = getLatency;
+        this.getNanos = getNanos;
+        this.addLatency = addLatency;
+        this.addNanos = addNanos;
+    }
+
+    /**
+     * Returns the number of requests served from the cache, including those served stale.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return counters[HITS];
+    }
+
+    /**
+     * Returns the number of requests served from an expired entry.
+     *
+     * @return the number of stale hits
+     */
+    public long getStaleHits() {
+        return counters[STALE_HITS];
+    }
+
+    /**
+     * Returns the number of requests not served from the cache for any reason.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return counters[MISSES];
+    }
+
+    /**
+     * Returns the number of misses because the cached entry had expired.
+     *
+     * @return the number of expired reads
+     */
+    public long getExpired() {
+        return counters[EXPIRED];
+    }
+
+    /**
+     * Returns the number of misses because the cached entries varied on a request header.
+     *
+     * @return the number of vary mismatches
+     */
+    public long getVaryMismatches() {
+        return counters[VARY_MISMATCHES];
+    }
+
+    /**
+     * Returns the number of misses because none of the cached entries was of an acceptable media type.
+     *
+     * @return the number of media type mismatches
+     */
+    public long getMediaTypeMismatches() {
+        return counters[MEDIA_TYPE_MISMATCHES];
+    }
+
+    /**
+     * Returns the ratio of hits to requests.
+     *
+     * @return the hit ratio or 0 if there have been no requests
+     */
+    public double getHitRatio() {
+        final long requests = getHits() + getMisses();
+        return requests == 0L ? 0d : (double) getHits() / requests;
+    }
+
+    /**
+     * Returns the number of entries added to the cache.
+     *
+     * @return the number of entries added
+     */
+    public long getAdds() {
+        return counters[ADDS];
+    }
+
+    /**
+     * Returns the total number of bytes added to the cache.
+     *
+     * @return the number of bytes stored
+     */
+    public long getBytesStored() {
+        return counters[BYTES_STORED];
+    }
+
+    /**
+     * Returns the number of entries which were not added because the write-behind queue was full.
+     *
+     * @return the number of dropped entries
+     */
+    public long getDroppedAdds() {
+        return counters[DROPPED_ADDS];
+    }
+
+    /**
+     * Returns the number of entries which were not added because the {@link CacheAdmissionPolicy} rejected them.
+     *
+     * @return the number of rejected entries
+     */
+    public long getRejectedAdds() {
+        return counters[REJECTED_ADDS];
+    }
+
+    /**
+     * Returns the number of URIs evicted from the cache. Evictions are only reported for the whole cache.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return counters[EVICTIONS];
+    }
+
+    /**
+     * Returns the number of bytes evicted from the cache, if known by the cache.
+     *
+     * @return the number of bytes evicted
+     */
+    public long getEvictedBytes() {
+        return counters[EVICTED_BYTES];
+    }
+
+    /**
+     * Returns the number of URIs removed from the cache by an expiry sweep, as none of their entries could be served.
+     *
+     * @return the number of expired URIs
+     */
+    public long getExpirations() {
+        return counters[EXPIRATIONS];
+    }
+
+    /**
+     * Returns the number of bytes removed from the cache by an expiry sweep.
+     *
+     * @return the number of bytes expired
+     */
+    public long getExpiredBytes() {
+        return counters[EXPIRED_BYTES];
+    }
+
+    /**
+     * Returns the mean time, in microseconds, of a cache lookup.
+     *
+     * @return the mean lookup time
+     */
+    public double getMeanGetMicros() {
+        return mean(getLatency, getNanos);
+    }
+
+    /**
+     * Returns the upper bound, in microseconds, of the time 99% of the cache lookups took.
+     *
+     * @return the 99th percentile of the lookup time
+     */
+    public long getP99GetMicros() {
+        return percentile(getLatency, 0.99d);
+    }
+
+    /**
+     * Returns the mean time, in microseconds, of adding an entry.
+     *
+     * @return the mean time to add an entry
+     */
+    public double getMeanAddMicros() {
+        return mean(addLatency, addNanos);
+    }
+
+    /**
+     * Returns the upper bound, in microseconds, of the time 99% of the adds took.
+     *
+     * @return the 99th percentile of the time to add an entry
+     */
+    public long getP99AddMicros() {
+        return percentile(addLatency, 0.99d);
+    }
+
+    /**
+     * Returns the lookup latency histogram. The upper bound of bucket {@code i} is {@code 2^i} microseconds, the last
+     * bucket holds everything larger.
+     *
+     * @return the count of each bucket
+     */
+    public long[] getGetLatencyBuckets() {
+        return getLatency.clone();
+    }
+
+    /**
+     * Returns the add latency histogram. The upper bound of bucket {@code i} is {@code 2^i} microseconds, the last
+     * bucket holds everything larger.
+     *
+     * @return the count of each bucket
+     */
+    public long[] getAddLatencyBuckets() {
+        return addLatency.clone();
+    }
+
+    /**
+     * Adds the statistics together.
+     *
+     * @param other the statistics to add
+     *
+     * @return the new statistics
+     */
+    ServerCacheStatistics plus(final ServerCacheStatistics other) {
+        return new ServerCacheStatistics(sum(counters, other.counters), sum(getLatency, other.getLatency),
+                getNanos + other.getNanos, sum(addLatency, other.addLatency), addNanos + other.addNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "ServerCacheStatistics[hits=" + getHits() + ", staleHits=" + getStaleHits() + ", misses=" + getMisses()
+                + ", expired=" + getExpired() + ", varyMismatches=" + getVaryMismatches() + ", mediaTypeMismatches="
+                + getMediaTypeMismatches() + ", adds=" + getAdds() + ", bytesStored=" + getBytesStored()
+                + ", droppedAdds=" + getDroppedAdds() + ", rejectedAdds=" + getRejectedAdds() + ", evictions="
+                + getEvictions() + ", evictedBytes=" + getEvictedBytes() + ", expirations=" + getExpirations()
+                + ", expiredBytes=" + getExpiredBytes() + "]";
+    }
+
+    private static double mean(final long[] buckets, final long nanos) {
+        long count = 0L;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        return count == 0L ? 0d : (nanos / 1000d) / count;
+    }
+
+    private static long percentile(final long[] buckets, final double percentile) {
+        long count = 0L;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        if (count == 0L) {
+            return 0L;
+        }
+        final long threshold = (long) Math.ceil(count * percentile);
+        long seen = 0L;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= threshold) {
+                return LatencyHistogram.upperBound(i);
+            }
+        }
+        return LatencyHistogram.upperBound(buckets.length - 1);
+    }
+
+    private static long[] sum(final long[] a, final long[] b) {
+        final long[] result = a.clone();
+        for (int i = 0; i < result.length; i++) {
+            result[i] += b[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The server cache policy of a resource method. The annotation is resolved once for each resource method, an
+ * annotation on the method takes precedence over one on the class.
+ * <p>
+ * When the {@value ServerCacheFeature#MODE} property is {@code annotated} only the {@code GET} methods with this
+ * annotation are cached, the other {@code GET} methods do not pass through the cache at all.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface ServerCached {
+
+    /**
+     * The number of seconds a response is cached for when the response does not have a {@code Cache-Control} header.
+     * The {@code Cache-Control} header is added to the response. A negative value, the default, only caches responses
+     * with a {@code Cache-Control} header.
+     *
+     * @return the time to live in seconds
+     */
+    int maxAge() default -1;
+
+    /**
+     * The request headers the response varies on. The headers are added to the {@code Vary} header of the response.
+     *
+     * @return the vary headers
+     */
+    String[] vary() default {};
+
+    /**
+     * The strategy used to create the cache key. The strategy must have a public no-arg constructor. The default uses
+     * the configured strategy.
+     *
+     * @return the key strategy
+     */
+    Class<? extends CacheKeyStrategy> keyStrategy() default CacheKeyStrategy.class;
+
+    /**
+     * The maximum size, in bytes, of an entry which is cached by the {@link DefaultCacheAdmissionPolicy}. A negative
+     * value, the default, uses the configured limit. A {@link CacheAdmission} annotation takes precedence.
+     *
+     * @return the maximum size of an entry
+     */
+    long maxSize() default -1L;
+
+    /**
+     * The invalidation tags, in addition to any {@link CacheTags}. A {@code {name}} in a tag is replaced with the
+     * value of the path parameter.
+     *
+     * @return the tags
+     */
+    String[] tags() default {};
+}
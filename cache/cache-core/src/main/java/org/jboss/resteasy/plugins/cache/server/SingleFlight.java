@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent cache misses for the same key so that only one request, the leader, computes the response while
+ * the others wait, for a bounded time, for the leader to populate the cache.
+ * <p>
+ * A request may wait by blocking, or without blocking by {@linkplain Flight#whenDone() registering} for the completion of
+ * the flight, which is required on the IO thread of a container.
+ * </p>
+ * <p>
+ * A flight which is not completed within the timeout, for example because the leader failed before the response was
+ * written, is considered abandoned and the next request for the key becomes the new leader. An abandoned flight is
+ * removed by the first request which observes it, a waiting request timing out or a request for the key, and flights
+ * abandoned for keys which are never requested again are removed by a sweep run at most once per timeout.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+final class SingleFlight {
+
+    /**
+     * A request for a key. The leader must {@linkplain #complete() complete} the flight, any other request may
+     * {@linkplain #await() wait} for it.
+     */
+    final class Flight {
+        private final String key;
+        private final CompletableFuture<Boolean> done;
+        private final long started;
+        // The flight of the leader, which is the one in the map of the flights
+        private final Flight leader;
+
+        private Flight(final String key, final long started) {
+            this.key = key;
+            this.done = new CompletableFuture<>();
+            this.started = started;
+            this.leader = this;
+        }
+
+        private Flight(final Flight leader) {
+            this.key = leader.key;
+            this.done = leader.done;
+            this.started = leader.started;
+            this.leader = leader;
+        }
+
+        /**
+         * Indicates whether this request is responsible for computing the response.
+         *
+         * @return {@code true} if this request is the leader
+         */
+        boolean isLeader() {
+            return leader == this;
+        }
+
+        /**
+         * Waits for the leader to complete the flight, at most until the flight times out.
+         *
+         * @return {@code true} if the leader completed the flight, {@code false} if the flight timed out
+         */
+        boolean await() {
+            final long remaining = timeout - (System.nanoTime() - started);
+            try {
+                if (remaining > 0L && done.get(remaining, TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException | TimeoutException ignore) {
+                // Handled as a flight which timed out
+            }
+            // The leader never completed, the next request for the key becomes the leader
+            abandon(leader);
+            return false;
+        }
+
+        /**
+         * Returns a stage completed once the leader completes the flight or the flight times out. The stage is
+         * completed on the thread of the leader or, if the flight times out, on a timer thread.
+         *
+         * @return a stage completed with {@code true} if the leader completed the flight, {@code false} if the flight
+         *         timed out
+         */
+        CompletionStage<Boolean> whenDone() {
+            final long remaining = timeout - (System.nanoTime() - started);
+            return done.copy()
+                    .completeOnTimeout(Boolean.FALSE, Math.max(0L, remaining), TimeUnit.NANOSECONDS)
+                    .thenApply(completed -> {
+                        if (!completed) {
+                            // The leader never completed, the next request for the key becomes the leader
+                            abandon(leader);
+                        }
+                        return completed;
+                    });
+        }
+
+        /**
+         * Completes the flight releasing any waiting requests. This is a no-op for requests which are not the leader.
+         */
+        void complete() {
+            if (isLeader()) {
+                flights.remove(key, this);
+                done.complete(Boolean.TRUE);
+            }
+        }
+
+        private boolean isAbandoned(final long now) {
+            return now - started > timeout;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Flight> flights;
+    private final long timeout;
+    private final AtomicLong nextSweep;
+
+    /**
+     * Creates a new single-flight group.
+     *
+     * @param timeout the maximum time to wait for a leader
+     * @param unit    the unit of the timeout
+     */
+    SingleFlight(final long timeout, final TimeUnit unit) {
+        this.flights = new ConcurrentHashMap<>();
+        this.timeout = unit.toNanos(timeout);
+        this.nextSweep = new AtomicLong(System.nanoTime() + this.timeout);
+    }
+
+    /**
+     * Joins the flight for the key, becoming the leader if there is no flight in progress.
+     *
+     * @param key the key of the request
+     *
+     * @return the flight joined
+     */
+    Flight join(final String key) {
+        while (true) {
+            final long now = System.nanoTime();
+            final Flight flight = new Flight(key, now);
+            final Flight current = flights.putIfAbsent(key, flight);
+            if (current == null) {
+                sweep(now);
+                return flight;
+            }
+            if (!current.isAbandoned(now)) {
+                return new Flight(current);
+            }
+            // The leader never completed, release anyone still waiting and try to take over
+            abandon(current);
+        }
+    }
+
+    /**
+     * Returns the flight in progress for the key without ever becoming the leader.
+     *
+     * @param key the key of the request
+     *
+     * @return a flight to wait for or {@code null} if there is no flight in progress
+     */
+    Flight find(final String key) {
+        final Flight current = flights.get(key);
+        if (current == null) {
+            return null;
+        }
+        if (current.isAbandoned(System.nanoTime())) {
+            abandon(current);
+            return null;
+        }
+        return new Flight(current);
+    }
+
+    /**
+     * Removes the flight of a leader which never completed it, releasing anyone still waiting.
+     */
+    private void abandon(final Flight leader) {
+        if (flights.remove(leader.key, leader)) {
+            leader.done.complete(Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Removes the abandoned flights, at most once per timeout, so the flights of keys which are never requested again
+     * are not kept.
+     */
+    private void sweep(final long now) {
+        final long next = nextSweep.get();
+        if (now - next < 0L || !nextSweep.compareAndSet(next, now + timeout)) {
+            return;
+        }
+        for (Flight flight : flights.values()) {
+            if (flight.isAbandoned(now)) {
+                abandon(flight);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+/**
+ * A {@link ServerCache} which layers a small in-heap near cache over a shared, typically remote or clustered, cache.
+ * <p>
+ * Entries are always written to the shared cache. A lookup which misses the near cache reads the variants of the URI
+ * from the shared cache and keeps them, as they were returned, in the near cache. A hit on the near cache does not
+ * copy or deserialize anything.
+ * </p>
+ * <p>
+ * Near entries are invalidated when the URI is added or removed through this cache, and when the shared cache
+ * {@linkplain ServerCache#addInvalidationListener(Consumer) notifies} that the URI was removed or
+ * changed by another node. Each invalidation increments a version stamp, a lookup which raced with an invalidation
+ * does not keep what it read. As a shared cache may not be able to notify, near entries are also kept for no longer
+ * than a maximum age which bounds how stale the near cache can be.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class TieredServerCache implements ServerCache {
+
+    /**
+     * The fraction of the maximum number of entries the near cache is reduced to when an eviction pass is run.
+     */
+    private static final double EVICTION_FACTOR = 0.9d;
+
+    private static class Near {
+        final List<? extends Entry> entries;
+        final long expires;
+        volatile long lastAccess;
+
+        Near(final List<? extends Entry> entries, final long expires) {
+            this.entries = entries;
+            this.expires = expires;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    private final ServerCache shared;
+    private final int maxEntries;
+    private final long maxAge;
+    private final ConcurrentHashMap<String, Near> near;
+    private final AtomicLong version;
+    private final AtomicBoolean evicting;
+
+    /**
+     * Creates a new tiered cache.
+     *
+     * @param shared     the shared cache
+     * @param maxEntries the maximum number of URIs kept in the near cache
+     * @param maxAge     the maximum time the variants of a URI are kept in the near cache
+     * @param unit       the unit of the maximum age
+     */
+    public TieredServerCache(final ServerCache shared, final int maxEntries, final long maxAge, final TimeUnit unit) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be greater than 0: " + maxEntries);
+        }
+        this.shared = shared;
+        this.maxEntries = maxEntries;
+        this.maxAge = unit.toNanos(maxAge);
+        this.near = new ConcurrentHashMap<>();
+        this.version = new AtomicLong();
+        this.evicting = new AtomicBoolean();
+        shared.addInvalidationListener(this::invalidate);
+    }
+
+    /**
+     * Returns the shared cache.
+     *
+     * @return the shared cache
+     */
+    public ServerCache getShared() {
+        return shared;
+    }
+
+    /**
+     * Returns the number of URIs in the near cache.
+     *
+     * @return the number of URIs in the near cache
+     */
+    public int getNearSize() {
+        return near.size();
+    }
+
+    @Override
+    public Entry get(final String uri, final MediaType accept, final MultivaluedMap<String, String> headers) {
+        final List<? extends Entry> variants = getVariants(uri);
+        if (variants == null) {
+            // The shared cache cannot list the variants, so nothing can be kept in the near cache
+            return shared.get(uri, accept, headers);
+        }
+        VaryKey requestKey = null;
+        long fingerprint = 0L;
+        for (Entry entry : variants) {
+            if (!accept.isCompatible(entry.getMediaType())) {
+                continue;
+            }
+            // The request is only hashed once for the variants which vary on the same headers
+            final VaryKey varyKey = entry.getVaryKey();
+            if (requestKey == null || !requestKey.hasSameNames(varyKey)) {
+                requestKey = varyKey;
+                fingerprint = requestKey.fingerprint(headers);
+            }
+            if (varyKey.matches(headers, fingerprint)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<? extends Entry> getVariants(final String uri) {
+        final long now = System.nanoTime();
+        final Near current = near.get(uri);
+        if (current != null) {
+            if (now - current.expires < 0L) {
+                current.lastAccess = now;
+                return current.entries;
+            }
+            near.remove(uri, current);
+        }
+        final long stamp = version.get();
+        final List<? extends Entry> variants = shared.getVariants(uri);
+        if (variants != null && !variants.isEmpty()) {
+            final Near loaded = new Near(variants, now + maxAge);
+            near.put(uri, loaded);
+            // An invalidation raced with the read, what was read may already be stale
+            if (version.get() != stamp) {
+                near.remove(uri, loaded);
+            }
+            evictIfRequired();
+        }
+        return variants;
+    }
+
+    @Override
+    public Entry add(final String uri, final MediaType mediaType, final CacheControl cc,
+            final MultivaluedMap<String, Object> headers, final byte[] entity, final String etag,
+            final MultivaluedMap<String, String> varyHeaders) {
+        return add(uri, mediaType, cc, headers, entity, etag, varyHeaders, null);
+    }
+
+    @Override
+    public Entry add(final String uri, final MediaType mediaType, final CacheControl cc,
+            final MultivaluedMap<String, Object> headers, final byte[] entity, final String etag,
+            final MultivaluedMap<String, String> varyHeaders, final byte[] gzipped) {
+        return add(uri, mediaType, cc, headers, entity, etag, varyHeaders, gzipped, Set.of());
+    }
+
+    @Override
+    public Entry add(final String uri, final MediaType mediaType, final CacheControl cc,
+            final MultivaluedMap<String, Object> headers, final byte[] entity, final String etag,
+            final MultivaluedMap<String, String> varyHeaders, final byte[] gzipped, final Set<String> tags) {
+        try {
+            return shared.add(uri, mediaType, cc, headers, entity, etag, varyHeaders, gzipped, tags);
+        } finally {
+            // The variants are merged by the shared cache, the next lookup loads them
+            invalidate(uri);
+        }
+    }
+
+    @Override
+    public CompletionStage<Entry> addAsync(final String uri, final MediaType mediaType, final CacheControl cc,
+            final MultivaluedMap<String, Object> headers, final byte[] entity, final String etag,
+            final MultivaluedMap<String, String> varyHeaders, final byte[] gzipped, final Set<String> tags) {
+        return shared.addAsync(uri, mediaType, cc, headers, entity, etag, varyHeaders, gzipped, tags)
+                .whenComplete((entry, error) -> invalidate(uri));
+    }
+
+    @Override
+    public void setMetrics(final ServerCacheMetrics metrics) {
+        shared.setMetrics(metrics);
+    }
+
+    @Override
+    public void addInvalidationListener(final Consumer<String> listener) {
+        shared.addInvalidationListener(listener);
+    }
+
+    @Override
+    public void remove(final String uri) {
+        invalidate(uri);
+        shared.remove(uri);
+    }
+
+    @Override
+    public void removeByTag(final String tag) {
+        // The tags are only known to the shared cache, which notifies the URIs it removes
+        version.incrementAndGet();
+        shared.removeByTag(tag);
+    }
+
+    @Override
+    public void removeByPrefix(final String prefix) {
+        version.incrementAndGet();
+        near.keySet().removeIf(uri -> uri.startsWith(prefix));
+        shared.removeByPrefix(prefix);
+    }
+
+    @Override
+    public void removeByPath(final String path) {
+        final String prefix = path + '?';
+        version.incrementAndGet();
+        near.remove(path);
+        near.keySet().removeIf(uri -> uri.startsWith(prefix));
+        shared.removeByPath(path);
+    }
+
+    @Override
+    public void clear() {
+        version.incrementAndGet();
+        near.clear();
+        shared.clear();
+    }
+
+    private void invalidate(final String uri) {
+        version.incrementAndGet();
+        near.remove(uri);
+    }
+
+    private void evictIfRequired() {
+        if (near.size() <= maxEntries || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // Remove the least recently accessed URIs, a batch at a time, as the local cache does
+            @SuppressWarnings("unchecked")
+            final Map.Entry<String, Near>[] snapshot = near.entrySet().toArray(new Map.Entry[0]);
+            final long[] accessed = new long[snapshot.length];
+            final Integer[] order = new Integer[snapshot.length];
+            for (int i = 0; i < snapshot.length; i++) {
+                accessed[i] = snapshot[i].getValue().lastAccess;
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(accessed[a], accessed[b]));
+            for (int i = 0; i < order.length && near.size() > maxEntries * EVICTION_FACTOR; i++) {
+                near.remove(snapshot[order[i]].getKey(), snapshot[order[i]].getValue());
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.plugins.cache.server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import jakarta.ws.rs.core.MultivaluedMap;
+
+/**
+ * An immutable, normalized and hashed, copy of the request headers a cached response varies on.
+ * <p>
+ * The values of each header are normalized once, when the key is created, as a comma separated list without the
+ * whitespace around the elements and without empty elements. Multiple values of a header are treated as a single
+ * list, so {@code en, fr} and the two values {@code en} and {@code fr} are equal. A 64-bit fingerprint of the
+ * normalized values is kept with the key. Matching a request hashes the request values in place, without creating
+ * the normalized form, and only compares the values when the fingerprints are equal. The fingerprint of a request
+ * may be reused for every variant which varies on the {@linkplain #hasSameNames(VaryKey) same headers}.
+ * </p>
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public final class VaryKey {
+    private static final VaryKey EMPTY = new VaryKey(new String[0], new String[0], new String[0]);
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Separates the values of each header
+    private static final char FIELD = '\n';
+    // Marks a header which is absent from the request, the values are compared regardless of the fingerprint
+    private static final char ABSENT = '\u0000';
+
+    // The header names as cached, used to look up the request headers
+    private final String[] names;
+    // The lower case header names, sorted, so the key does not depend on the order or case of the names
+    private final String[] lowerNames;
+    private final String[] values;
+    private final long namesHash;
+    private final long fingerprint;
+
+    private VaryKey(final String[] names, final String[] lowerNames, final String[] values) {
+        this.names = names;
+        this.lowerNames = lowerNames;
+        this.values = values;
+        long namesHash = FNV_OFFSET;
+        long fingerprint = FNV_OFFSET;
+        for (int i = 0; i < names.length; i++) {
+            namesHash = hash(namesHash, lowerNames[i]);
+            namesHash = mix(namesHash, FIELD);
+            fingerprint = hash(mix(fingerprint, FIELD), values[i]);
+        }
+        this.namesHash = namesHash;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Creates a key of the headers a response varies on.
+     *
+     * @param varyHeaders the names and values of the request headers, may be {@code null}
+     *
+     * @return the key
+     */
+    public static VaryKey of(final MultivaluedMap<String, String> varyHeaders) {
+        if (varyHeaders == null || varyHeaders.isEmpty()) {
+            return EMPTY;
+        }
+        final int size = varyHeaders.size();
+        final String[][] headers = new String[size][];
+        int count = 0;
+        for (Map.Entry<String, List<String>> header : varyHeaders.entrySet()) {
+            final String name = header.getKey();
+            headers[count++] = new String[] { name, name.toLowerCase(Locale.ROOT), normalize(header.getValue()) };
+        }
+        Arrays.sort(headers, 0, count, (a, b) -> a[1].compareTo(b[1]));
+        final String[] names = new String[count];
+        final String[] lowerNames = new String[count];
+        final String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = headers[i][0];
+            lowerNames[i] = headers[i][1];
+            values[i] = headers[i][2];
+        }
+        return new VaryKey(names, lowerNames, values);
+    }
+
+    /**
+     * Returns the fingerprint of the normalized values.
+     *
+     * @return the fingerprint
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Indicates whether the other key varies on the same headers as this key. A request fingerprint
+     * {@linkplain #fingerprint(MultivaluedMap) computed} for either key may be used to match both.
+     *
+     * @param other the other key
+     *
+     * @return {@code true} if both keys vary on the same headers
+     */
+    public boolean hasSameNames(final VaryKey other) {
+        return other == this || (namesHash == other.namesHash && Arrays.equals(lowerNames, other.lowerNames));
+    }
+
+    /**
+     * Computes the fingerprint of the request headers this key varies on. This does not allocate.
+     *
+     * @param headers the request headers
+     *
+     * @return the fingerprint of the request
+     */
+    public long fingerprint(final MultivaluedMap<String, String> headers) {
+        long result = FNV_OFFSET;
+        for (String name : names) {
+            result = mix(result, FIELD);
+            final List<String> current = headers.get(name);
+            result = current == null ? mix(result, ABSENT) : hashValues(result, current);
+        }
+        return result;
+    }
+
+    /**
+     * Indicates whether the request headers have the values of this key.
+     *
+     * @param headers the request headers
+     *
+     * @return {@code true} if the request matches the key
+     */
+    public boolean matches(final MultivaluedMap<String, String> headers) {
+        return matches(headers, fingerprint(headers));
+    }
+
+    /**
+     * Indicates whether the request headers have the values of this key.
+     *
+     * @param headers     the request headers
+     * @param fingerprint the {@linkplain #fingerprint(MultivaluedMap) fingerprint} of the request computed for this
+     *                    key, or a key with the {@linkplain #hasSameNames(VaryKey) same names}
+     *
+     * @return {@code true} if the request matches the key
+     */
+    public boolean matches(final MultivaluedMap<String, String> headers, final long fingerprint) {
+        if (fingerprint != this.fingerprint) {
+            return false;
+        }
+        // The fingerprints are equal, make sure this is not a collision
+        for (int i = 0; i < names.length; i++) {
+            final List<String> current = headers.get(names[i]);
+            if (current == null || !matchesValues(values[i], current)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof VaryKey)) {
+            return false;
+        }
+        final VaryKey other = (VaryKey) obj;
+        return fingerprint == other.fingerprint && hasSameNames(other) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fingerprint ^ namesHash);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("VaryKey[");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(lowerNames[i]).append('=').append(values[i]);
+        }
+        return builder.append(']').toString();
+    }
+
+    private static String normalize(final List<String> values) {
+        if (values == null) {
+            return "";
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            final String value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            int start = 0;
+            while (start <= value.length()) {
+                final int end = elementEnd(value, start);
+                final int first = skipWhitespace(value, start, end);
+                final int last = trimWhitespace(value, first, end);
+                if (last > first) {
+                    if (builder.length() > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(value, first, last);
+                }
+                start = end + 1;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Hashes the values as {@link #normalize(List)} would write them, without creating the normalized form.
+     */
+    private static long hashValues(long hash, final List<String> values) {
+        boolean empty = true;
+        for (int i = 0; i < values.size(); i++) {
+            final String value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            int start = 0;
+            while (start <= value.length()) {
+                final int end = elementEnd(value, start);
+                final int first = skipWhitespace(value, start, end);
+                final int last = trimWhitespace(value, first, end);
+                if (last > first) {
+                    if (!empty) {
+                        hash = mix(hash, ',');
+                    }
+                    for (int c = first; c < last; c++) {
+                        hash = mix(hash, value.charAt(c));
+                    }
+                    empty = false;
+                }
+                start = end + 1;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Compares the values, as {@link #normalize(List)} would write them, with the normalized form.
+     */
+    private static boolean matchesValues(final String normalized, final List<String> values) {
+        int position = 0;
+        for (int i = 0; i < values.size(); i++) {
+            final String value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            int start = 0;
+            while (start <= value.length()) {
+                final int end = elementEnd(value, start);
+                final int first = skipWhitespace(value, start, end);
+                final int last = trimWhitespace(value, first, end);
+                if (last > first) {
+                    if (position > 0) {
+                        if (position >= normalized.length() || normalized.charAt(position++) != ',') {
+                            return false;
+                        }
+                    }
+                    final int length = last - first;
+                    if (!normalized.regionMatches(position, value, first, length)) {
+                        return false;
+                    }
+                    position += length;
+                }
+                start = end + 1;
+            }
+        }
+        return position == normalized.length();
+    }
+
+    private static int elementEnd(final String value, final int start) {
+        final int end = value.indexOf(',', start);
+        return end < 0 ? value.length() : end;
+    }
+
+    private static int skipWhitespace(final String value, int index, final int end) {
+        while (index < end && isWhitespace(value.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int trimWhitespace(final String value, final int start, int end) {
+        while (end > start && isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static long hash(long hash, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = mix(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    private static long mix(final long hash, final char c) {
+        return (hash ^ c) * FNV_PRIME;
+    }
+}
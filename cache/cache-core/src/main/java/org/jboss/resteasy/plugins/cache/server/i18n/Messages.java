@@ -25,4 +25,16 @@ public interface Messages {
 
     @Message(id = 10000, value = "need to specify server.request.cache.infinispan.cache.name")
     String needToSpecifyCacheName();
+
+    @Message(id = 10001, value = "Configuration property %s cannot be converted to type %s")
+    String unsupportedConfigurationType(String name, Class<?> type);
+
+    @Message(id = 10002, value = "Unsupported cache entry format version %d")
+    String unsupportedCacheEntryVersion(int version);
+
+    @Message(id = 10003, value = "Malformed cache entry")
+    String malformedCacheEntry();
+
+    @Message(id = 10004, value = "File %s is not a supported cache snapshot")
+    String unsupportedCacheSnapshot(Object file);
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.CacheAdmission;
+import org.jboss.resteasy.plugins.cache.server.DefaultServerCacheMetrics;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheMetrics;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the default admission policy.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class AdmissionServerCacheTest {
+    private static final String LARGE = "x".repeat(2048);
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final DefaultServerCacheMetrics METRICS = new DefaultServerCacheMetrics();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/admission")
+    public static class AdmissionResource {
+        @GET
+        @Path("large")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String large() {
+            COUNT.incrementAndGet();
+            return LARGE;
+        }
+
+        @GET
+        @Path("unlimited")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        @CacheAdmission(maxSize = Long.MAX_VALUE)
+        public String unlimited() {
+            COUNT.incrementAndGet();
+            return LARGE;
+        }
+
+        @GET
+        @Path("frequent")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        @CacheAdmission(minFrequency = 2)
+        public String frequent() {
+            COUNT.incrementAndGet();
+            return "frequent";
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheMetrics.class.getName(), METRICS);
+        deployment.getProviderFactory().property(ServerCacheFeature.ADMISSION_MAX_ENTRY_SIZE, "1024");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(AdmissionResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testMaxEntrySize() {
+        COUNT.set(0);
+        final long rejected = METRICS.getTotal().getRejectedAdds();
+        Assertions.assertEquals(LARGE, get("/admission/large"));
+        Assertions.assertEquals(LARGE, get("/admission/large"));
+        Assertions.assertEquals(2, COUNT.get());
+        Assertions.assertEquals(rejected + 2L, METRICS.getTotal().getRejectedAdds());
+
+        // The resource overrides the limit
+        COUNT.set(0);
+        Assertions.assertEquals(LARGE, get("/admission/unlimited"));
+        Assertions.assertEquals(LARGE, get("/admission/unlimited"));
+        Assertions.assertEquals(1, COUNT.get());
+    }
+
+    @Test
+    public void testMinFrequency() {
+        COUNT.set(0);
+        // The first request is only recorded, the second is cached
+        Assertions.assertEquals("frequent", get("/admission/frequent"));
+        Assertions.assertEquals("frequent", get("/admission/frequent"));
+        Assertions.assertEquals("frequent", get("/admission/frequent"));
+        Assertions.assertEquals(2, COUNT.get());
+    }
+
+    private static String get(final String path) {
+        try (Response response = client.target(generateURL(path)).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            return response.readEntity(String.class);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.CacheTags;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.cache.server.ServerCached;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the {@link ServerCached} policies with the {@code annotated} mode.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class AnnotatedServerCacheTest {
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/annotated")
+    public static class AnnotatedResource {
+        @GET
+        @Path("ttl")
+        @Produces("text/plain")
+        @ServerCached(maxAge = 30)
+        public String ttl() {
+            return "ttl" + COUNT.incrementAndGet();
+        }
+
+        @GET
+        @Path("not-annotated")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String notAnnotated() {
+            return "not-annotated" + COUNT.incrementAndGet();
+        }
+
+        @GET
+        @Path("vary")
+        @Produces("text/plain")
+        @ServerCached(maxAge = 30, vary = "X-Tenant")
+        public String vary(@HeaderParam("X-Tenant") final String tenant) {
+            return tenant + COUNT.incrementAndGet();
+        }
+
+        @GET
+        @Path("items/{id}")
+        @Produces("text/plain")
+        @ServerCached(maxAge = 30, tags = "item:{id}")
+        public String item(@PathParam("id") final String id) {
+            return id + COUNT.incrementAndGet();
+        }
+
+        @DELETE
+        @Path("items/{id}")
+        @CacheTags("item:{id}")
+        public void deleteItem(@PathParam("id") final String id) {
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheFeature.MODE, "annotated");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(AnnotatedResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testMaxAge() {
+        final String first;
+        try (Response response = client.target(generateURL("/annotated/ttl")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertTrue(response.getHeaderString(HttpHeaders.CACHE_CONTROL).contains("max-age=30"),
+                    response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+            first = response.readEntity(String.class);
+        }
+        Assertions.assertEquals(first, get("/annotated/ttl", null));
+    }
+
+    @Test
+    public void testNotAnnotated() {
+        // Only annotated methods are cached in the annotated mode
+        final String first = get("/annotated/not-annotated", null);
+        Assertions.assertNotEquals(first, get("/annotated/not-annotated", null));
+    }
+
+    @Test
+    public void testVary() {
+        final String a = get("/annotated/vary", "a");
+        final String b = get("/annotated/vary", "b");
+        Assertions.assertTrue(a.startsWith("a"), a);
+        Assertions.assertTrue(b.startsWith("b"), b);
+        Assertions.assertEquals(a, get("/annotated/vary", "a"));
+        Assertions.assertEquals(b, get("/annotated/vary", "b"));
+    }
+
+    @Test
+    public void testTags() {
+        final String first = get("/annotated/items/1", null);
+        Assertions.assertEquals(first, get("/annotated/items/1", null));
+        try (Response response = client.target(generateURL("/annotated/items/1")).request().delete()) {
+            Assertions.assertEquals(204, response.getStatus());
+        }
+        Assertions.assertNotEquals(first, get("/annotated/items/1", null));
+    }
+
+    private static String get(final String path, final String tenant) {
+        try (Response response = client.target(generateURL(path)).request().header("X-Tenant", tenant).get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            return response.readEntity(String.class);
+        }
+    }
+}
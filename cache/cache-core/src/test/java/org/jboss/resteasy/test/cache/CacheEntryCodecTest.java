@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.parsing.ConfigurationBuilderHolder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.jboss.resteasy.plugins.cache.server.HeaderHolder;
+import org.jboss.resteasy.plugins.cache.server.InfinispanCache;
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the serialized form of the {@link InfinispanCache} values, which is written by the codec of the entries.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class CacheEntryCodecTest {
+    private static final String CACHE_NAME = "cache-entry-codec-test";
+    private static final String COPY_NAME = "cache-entry-codec-test-copy";
+    // The codec is package private, its serialized form is what a node of a previous version sends
+    private static final String SERIALIZED_CLASS = "org.jboss.resteasy.plugins.cache.server.CacheEntryCodec$Serialized";
+    private static EmbeddedCacheManager manager;
+    private static Cache<Object, Object> delegate;
+    private static Cache<Object, Object> copyDelegate;
+    private static InfinispanCache cache;
+    private static InfinispanCache copy;
+
+    @BeforeAll
+    public static void createCache() {
+        final ConfigurationBuilderHolder holder = new ConfigurationBuilderHolder();
+        holder.getGlobalConfigurationBuilder()
+                .defaultCacheName(CACHE_NAME)
+                .build();
+        holder.newConfigurationBuilder(CACHE_NAME)
+                .build();
+        holder.newConfigurationBuilder(COPY_NAME)
+                .build();
+        manager = new DefaultCacheManager(holder, true);
+        delegate = manager.getCache(CACHE_NAME);
+        copyDelegate = manager.getCache(COPY_NAME);
+        cache = new InfinispanCache(delegate);
+        copy = new InfinispanCache(copyDelegate);
+    }
+
+    @AfterAll
+    public static void closeCache() throws IOException {
+        manager.close();
+    }
+
+    @AfterEach
+    public void clear() {
+        cache.clear();
+        copy.clear();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final byte[] gzipped = new byte[] { 0x1f, (byte) 0x8b, 8, 0, 1, 2, 3 };
+        add("b", 60, null);
+        // A variant without a max-age, added last so it is not dropped as expired
+        add("a", -1, gzipped);
+        for (Map.Entry<Object, Object> entry : delegate.entrySet()) {
+            copyDelegate.put(roundTrip(entry.getKey()), roundTrip(entry.getValue()));
+        }
+
+        final List<? extends ServerCache.Entry> expected = cache.getVariants("/codec?page=1");
+        final List<? extends ServerCache.Entry> variants = copy.getVariants("/codec?page=1");
+        Assertions.assertEquals(2, variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            final ServerCache.Entry original = expected.get(i);
+            final ServerCache.Entry read = variants.get(i);
+            Assertions.assertEquals(original.getEtag(), read.getEtag());
+            Assertions.assertEquals(original.getMediaType(), read.getMediaType());
+            Assertions.assertArrayEquals(original.getCached(), read.getCached());
+            Assertions.assertEquals(original.getGzipBuffer(), read.getGzipBuffer());
+            // The same timestamp, the time remaining may have crossed a second since it was read
+            Assertions.assertTrue(Math.abs(original.getExpirationInSeconds() - read.getExpirationInSeconds()) <= 1);
+            Assertions.assertEquals(original.getStaleWhileRevalidate(), read.getStaleWhileRevalidate());
+            Assertions.assertEquals(original.getStaleIfError(), read.getStaleIfError());
+            Assertions.assertEquals(original.getVaryHeaders(), read.getVaryHeaders());
+            Assertions.assertEquals(List.of("one", "two"), read.getHeaders().get("X-Codec"));
+        }
+        final ServerCache.Entry negative = variants.get(0);
+        Assertions.assertTrue(negative.getExpirationInSeconds() < 0);
+        Assertions.assertEquals(ByteBuffer.wrap(gzipped), negative.getGzipBuffer());
+        Assertions.assertNull(variants.get(1).getGzipBuffer());
+
+        // The tag and path indexes are read back with the variants
+        copy.removeByTag("codec");
+        Assertions.assertTrue(copy.getVariants("/codec?page=1").isEmpty());
+        copyDelegate.put("/codec?page=1", roundTrip(delegate.get("/codec?page=1")));
+        copy.removeByPath("/codec");
+        Assertions.assertTrue(copy.getVariants("/codec?page=1").isEmpty());
+    }
+
+    @Test
+    public void testReadVersion1() throws Exception {
+        final long timestamp = System.currentTimeMillis();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            // The version and the type of the value, an entry
+            out.writeByte(1);
+            out.writeByte(1);
+            out.writeLong(timestamp);
+            // The max-age, stale-while-revalidate and stale-if-error
+            out.writeByte(60);
+            out.writeByte(0);
+            out.writeByte(0);
+            writeString(out, "\"legacy\"", true);
+            writeString(out, "text/plain", false);
+            // The headers, grouped by name
+            out.writeByte(1);
+            writeString(out, "X-Legacy", false);
+            out.writeByte(1);
+            out.writeByte(HeaderHolder.Type.OTHER.ordinal());
+            writeString(out, "legacy", false);
+            // The vary headers
+            out.writeByte(0);
+            // The entity, version 1 did not contain the compressed entity
+            writeString(out, "legacy entity", false);
+        }
+
+        final InfinispanCache.CacheEntry entry = (InfinispanCache.CacheEntry) deserialize(serialized(bytes.toByteArray()));
+        Assertions.assertEquals("\"legacy\"", entry.getEtag());
+        Assertions.assertEquals(MediaType.TEXT_PLAIN_TYPE, entry.getMediaType());
+        Assertions.assertEquals("legacy entity", new String(entry.getCached(), StandardCharsets.UTF_8));
+        Assertions.assertNull(entry.getGzipBuffer());
+        Assertions.assertFalse(entry.isExpired());
+        Assertions.assertEquals(0, entry.getStaleWhileRevalidate());
+        Assertions.assertEquals("legacy", entry.getHeaders().getFirst("X-Legacy"));
+        Assertions.assertTrue(entry.getVaryHeaders().isEmpty());
+    }
+
+    private static void add(final String variant, final int maxAge, final byte[] gzipped) {
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(maxAge);
+        cc.getCacheExtension().put("stale-while-revalidate", "30");
+        final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        headers.add("X-Codec", "one");
+        headers.add("X-Codec", "two");
+        final MultivaluedMap<String, String> vary = new MultivaluedHashMap<>();
+        vary.add("X-Variant", variant);
+        cache.add("/codec?page=1", MediaType.valueOf("text/plain;charset=UTF-8"), cc, headers,
+                variant.getBytes(StandardCharsets.UTF_8), "\"" + variant + "\"", vary, gzipped, Set.of("codec"));
+    }
+
+    private static Object roundTrip(final Object value) throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return deserialize(bytes.toByteArray());
+    }
+
+    private static Object deserialize(final byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * Wraps the payload in the Java serialization stream of the externalizable form the values are replaced with.
+     */
+    private static byte[] serialized(final byte[] payload) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(ObjectStreamConstants.STREAM_MAGIC);
+            out.writeShort(ObjectStreamConstants.STREAM_VERSION);
+            out.writeByte(ObjectStreamConstants.TC_OBJECT);
+            out.writeByte(ObjectStreamConstants.TC_CLASSDESC);
+            out.writeUTF(SERIALIZED_CLASS);
+            out.writeLong(1L);
+            out.writeByte(ObjectStreamConstants.SC_EXTERNALIZABLE | ObjectStreamConstants.SC_BLOCK_DATA);
+            out.writeShort(0);
+            out.writeByte(ObjectStreamConstants.TC_ENDBLOCKDATA);
+            out.writeByte(ObjectStreamConstants.TC_NULL);
+            out.writeByte(ObjectStreamConstants.TC_BLOCKDATALONG);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeByte(ObjectStreamConstants.TC_ENDBLOCKDATA);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(final DataOutputStream out, final String value, final boolean nullable)
+            throws IOException {
+        // The strings of the fixture are shorter than 127 bytes so the length is a single byte
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(nullable ? bytes.length + 1 : bytes.length);
+        out.write(bytes);
+    }
+}
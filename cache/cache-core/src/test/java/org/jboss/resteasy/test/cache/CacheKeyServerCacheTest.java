@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.CacheKeyParameters;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the normalized cache keys.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class CacheKeyServerCacheTest {
+    private static final AtomicInteger SEARCH = new AtomicInteger();
+    private static final AtomicInteger PAGE = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/keys")
+    public static class KeyResource {
+        @GET
+        @Path("search")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String search() {
+            return "search" + SEARCH.incrementAndGet();
+        }
+
+        @GET
+        @Path("page")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        @CacheKeyParameters(include = "page")
+        public String page() {
+            return "page" + PAGE.incrementAndGet();
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheFeature.KEY_STRATEGY, "normalized");
+        deployment.getProviderFactory().property(ServerCacheFeature.KEY_IGNORED_PARAMETERS, "utm_*, _");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(KeyResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testNormalizedQuery() {
+        Assertions.assertEquals("search1", get("/keys/search?a=1&b=2"));
+        Assertions.assertEquals("search1", get("/keys/search?b=2&a=1"));
+        Assertions.assertEquals("search1", get("/keys/search?b=2&utm_source=mail&a=%31&_=12345"));
+        // The order of the values of the same parameter is significant
+        Assertions.assertEquals("search2", get("/keys/search?a=1&a=2"));
+        Assertions.assertEquals("search3", get("/keys/search?a=2&a=1"));
+        Assertions.assertEquals("search4", get("/keys/search?a=3"));
+    }
+
+    @Test
+    public void testIncludedParameters() {
+        Assertions.assertEquals("page1", get("/keys/page?page=1"));
+        Assertions.assertEquals("page1", get("/keys/page?page=1&sort=name"));
+        Assertions.assertEquals("page2", get("/keys/page?page=2"));
+    }
+
+    private static String get(final String path) {
+        try (Response response = client.target(generateURL(path)).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            return response.readEntity(String.class);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests serving the compressed copy of a cached entity.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class CompressedServerCacheTest {
+    private static final String VALUE = "compressible ".repeat(512);
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final AtomicInteger PRECOMPRESSED_COUNT = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/compressed")
+    public static class CompressedResource {
+        @GET
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String get() {
+            COUNT.incrementAndGet();
+            return VALUE;
+        }
+    }
+
+    @Path("/precompressed")
+    public static class PrecompressedResource {
+        @GET
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public Response get() throws IOException {
+            PRECOMPRESSED_COUNT.incrementAndGet();
+            return Response.ok(gzip(VALUE)).header(HttpHeaders.CONTENT_ENCODING, "gzip").build();
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheFeature.COMPRESSION, "true");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(CompressedResource.class);
+        deployment.getRegistry().addPerRequestResource(PrecompressedResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        final String etag;
+        try (Response response = client.target(generateURL("/compressed")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertTrue(response.getHeaderString(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT_ENCODING));
+            Assertions.assertNull(response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+            Assertions.assertEquals(VALUE, response.readEntity(String.class));
+            etag = response.getHeaderString(HttpHeaders.ETAG);
+        }
+
+        try (Response response = client.target(generateURL("/compressed")).request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate").get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+            Assertions.assertNotEquals(etag, response.getHeaderString(HttpHeaders.ETAG));
+            Assertions.assertEquals(VALUE, gunzip(response.readEntity(byte[].class)));
+        }
+
+        // Clients which do not accept gzip get the identity entity
+        try (Response response = client.target(generateURL("/compressed")).request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0").get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertNull(response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+            Assertions.assertEquals(etag, response.getHeaderString(HttpHeaders.ETAG));
+            Assertions.assertEquals(VALUE, response.readEntity(String.class));
+        }
+
+        // An explicitly refused gzip takes precedence over the wildcard
+        try (Response response = client.target(generateURL("/compressed")).request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *").get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertNull(response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+            Assertions.assertEquals(VALUE, response.readEntity(String.class));
+        }
+
+        // The wildcard accepts gzip when it is not listed
+        try (Response response = client.target(generateURL("/compressed")).request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "deflate, *;q=0.5").get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+            Assertions.assertEquals(VALUE, gunzip(response.readEntity(byte[].class)));
+        }
+        Assertions.assertEquals(1, COUNT.get());
+    }
+
+    @Test
+    public void testPrecompressed() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            // An entity the application compressed is cached as is and never compressed a second time
+            try (Response response = client.target(generateURL("/precompressed")).request()
+                    .header(HttpHeaders.ACCEPT_ENCODING, "gzip").get()) {
+                Assertions.assertEquals(200, response.getStatus());
+                Assertions.assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+                Assertions.assertEquals(VALUE, gunzip(response.readEntity(byte[].class)));
+            }
+        }
+        Assertions.assertEquals(1, PRECOMPRESSED_COUNT.get());
+    }
+
+    private static byte[] gzip(final String value) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static String gunzip(final byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
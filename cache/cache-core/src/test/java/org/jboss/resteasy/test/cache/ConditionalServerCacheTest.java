@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the conditional requests served from the cache.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class ConditionalServerCacheTest {
+    private static final String LAST_MODIFIED = "Sat, 03 Oct 2026 10:00:00 GMT";
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/conditional")
+    public static class ConditionalResource {
+        @GET
+        @Path("dated")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public Response dated() {
+            COUNT.incrementAndGet();
+            // 2026-10-03T10:00:00Z
+            return Response.ok("dated").lastModified(new Date(1791021600000L)).build();
+        }
+
+        @GET
+        @Path("undated")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String undated() {
+            COUNT.incrementAndGet();
+            return "undated";
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(ConditionalResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testLastModified() {
+        COUNT.set(0);
+        final String etag;
+        try (Response response = client.target(generateURL("/conditional/dated")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals(LAST_MODIFIED, response.getHeaderString(HttpHeaders.LAST_MODIFIED));
+            etag = response.getHeaderString(HttpHeaders.ETAG);
+        }
+        Assertions.assertEquals(304, status("/conditional/dated", HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED));
+        Assertions.assertEquals(200,
+                status("/conditional/dated", HttpHeaders.IF_MODIFIED_SINCE, "Sat, 03 Oct 2026 09:59:59 GMT"));
+        Assertions.assertEquals(412,
+                status("/conditional/dated", HttpHeaders.IF_UNMODIFIED_SINCE, "Sat, 03 Oct 2026 09:59:59 GMT"));
+        // The entity tag takes precedence over the date
+        try (Response response = client.target(generateURL("/conditional/dated")).request()
+                .header(HttpHeaders.IF_NONE_MATCH, "\"other\"")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED)
+                .get()) {
+            Assertions.assertEquals(200, response.getStatus());
+        }
+        Assertions.assertEquals(304,
+                status("/conditional/dated", HttpHeaders.IF_NONE_MATCH, "\"other\", W/\"" + unquote(etag) + "\""));
+        Assertions.assertEquals(1, COUNT.get());
+    }
+
+    @Test
+    public void testInsertTime() {
+        COUNT.set(0);
+        final String lastModified;
+        try (Response response = client.target(generateURL("/conditional/undated")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+            Assertions.assertNotNull(lastModified);
+        }
+        Assertions.assertEquals(304, status("/conditional/undated", HttpHeaders.IF_MODIFIED_SINCE, lastModified));
+        Assertions.assertEquals(1, COUNT.get());
+    }
+
+    private static int status(final String path, final String header, final String value) {
+        try (Response response = client.target(generateURL(path)).request().header(header, value).get()) {
+            return response.getStatus();
+        }
+    }
+
+    private static String unquote(final String etag) {
+        return etag.startsWith("\"") ? etag.substring(1, etag.length() - 1) : etag;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jboss.resteasy.plugins.cache.server.EtagGenerator;
+import org.jboss.resteasy.plugins.cache.server.MessageDigestEtagGenerator;
+import org.jboss.resteasy.plugins.cache.server.Murmur3EtagGenerator;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheInterceptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class EtagGeneratorTest {
+
+    @Test
+    public void testMd5() {
+        Assertions.assertEquals("5D41402ABC4B2A76B9719D911017C592", MessageDigestEtagGenerator.MD5.generate(bytes("hello")));
+        // The digest is reused, ensure it's reset between calls
+        Assertions.assertEquals("5D41402ABC4B2A76B9719D911017C592", MessageDigestEtagGenerator.MD5.generate(bytes("hello")));
+        Assertions.assertSame(MessageDigestEtagGenerator.MD5, EtagGenerator.of("md5"));
+    }
+
+    @Test
+    public void testMurmur3() {
+        // Reference values of the x64 128-bit variant with a seed of 0
+        Assertions.assertEquals("CBD8A7B341BD9B025B1E906A48AE1D19", Murmur3EtagGenerator.INSTANCE.generate(bytes("hello")));
+        Assertions.assertEquals("E34BBC7BBC071B6C7A433CA9C49A9347",
+                Murmur3EtagGenerator.INSTANCE.generate(bytes("The quick brown fox jumps over the lazy dog")));
+        Assertions.assertEquals("00000000000000000000000000000000", Murmur3EtagGenerator.INSTANCE.generate(new byte[0]));
+        Assertions.assertSame(Murmur3EtagGenerator.INSTANCE, EtagGenerator.of("murmur3"));
+    }
+
+    @Test
+    public void testOffset() {
+        final byte[] padded = bytes("xxhelloxx");
+        Assertions.assertEquals(Murmur3EtagGenerator.INSTANCE.generate(bytes("hello")),
+                Murmur3EtagGenerator.INSTANCE.generate(padded, 2, 5));
+        Assertions.assertEquals(MessageDigestEtagGenerator.MD5.generate(bytes("hello")),
+                MessageDigestEtagGenerator.MD5.generate(padded, 2, 5));
+    }
+
+    @Test
+    public void testHexString() {
+        Assertions.assertEquals("00017F80FF", ServerCacheInterceptor.byteArrayToHexString(new byte[] { 0, 1, 127, -128, -1 }));
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
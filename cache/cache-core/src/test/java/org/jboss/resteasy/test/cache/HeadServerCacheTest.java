@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HEAD;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the {@code HEAD} requests answered from the cached {@code GET} representation.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class HeadServerCacheTest {
+    private static final String BODY = "0123456789abcdefghijklmnopqrstuvwxyz";
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/head")
+    public static class HeadResource {
+        @GET
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String get() {
+            COUNT.incrementAndGet();
+            return BODY;
+        }
+
+        @GET
+        @Path("explicit")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String getExplicit() {
+            return BODY;
+        }
+
+        @HEAD
+        @Path("explicit")
+        public Response headExplicit() {
+            COUNT.incrementAndGet();
+            return Response.ok().header("X-Explicit", "true").build();
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(HeadResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @BeforeEach
+    public void populate() {
+        for (String path : new String[] { "/head", "/head/explicit" }) {
+            try (Response response = client.target(generateURL(path)).request().get()) {
+                Assertions.assertEquals(200, response.getStatus());
+                Assertions.assertEquals(BODY, response.readEntity(String.class));
+            }
+        }
+        COUNT.set(0);
+    }
+
+    @Test
+    public void testHead() {
+        final String etag;
+        try (Response response = client.target(generateURL("/head")).request().get()) {
+            etag = response.getHeaderString(HttpHeaders.ETAG);
+        }
+        try (Response response = client.target(generateURL("/head")).request().head()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals(Integer.toString(BODY.length()), response.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+            Assertions.assertEquals(etag, response.getHeaderString(HttpHeaders.ETAG));
+            Assertions.assertNotNull(response.getHeaderString("Age"));
+            Assertions.assertFalse(response.hasEntity());
+        }
+        Assertions.assertEquals(0, COUNT.get());
+    }
+
+    @Test
+    public void testConditionalHead() {
+        final String etag;
+        try (Response response = client.target(generateURL("/head")).request().get()) {
+            etag = response.getHeaderString(HttpHeaders.ETAG);
+        }
+        try (Response response = client.target(generateURL("/head")).request()
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .head()) {
+            Assertions.assertEquals(304, response.getStatus());
+        }
+        Assertions.assertEquals(0, COUNT.get());
+    }
+
+    @Test
+    public void testExplicitHead() {
+        // A resource method which handles HEAD itself is always invoked
+        try (Response response = client.target(generateURL("/head/explicit")).request().head()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("true", response.getHeaderString("X-Explicit"));
+        }
+        Assertions.assertEquals(1, COUNT.get());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.parsing.ConfigurationBuilderHolder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.jboss.resteasy.plugins.cache.server.InfinispanCache;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class InfinispanCacheTest {
+    private static final String CACHE_NAME = "infinispan-cache-test";
+    private static EmbeddedCacheManager manager;
+    private static Cache<Object, Object> delegate;
+    private static InfinispanCache cache;
+
+    @BeforeAll
+    public static void createCache() {
+        final ConfigurationBuilderHolder holder = new ConfigurationBuilderHolder();
+        holder.getGlobalConfigurationBuilder()
+                .defaultCacheName(CACHE_NAME)
+                .build();
+        holder.newConfigurationBuilder(CACHE_NAME)
+                .build();
+        manager = new DefaultCacheManager(holder, true);
+        delegate = manager.getCache(CACHE_NAME);
+        cache = new InfinispanCache(delegate);
+    }
+
+    @AfterAll
+    public static void closeCache() throws IOException {
+        manager.close();
+    }
+
+    @AfterEach
+    public void clear() {
+        cache.clear();
+    }
+
+    @Test
+    public void testLifespanOfVariants() {
+        add("/lifespan", "a", 60, Set.of("tag"));
+        // A shorter lived variant must not shorten the lifespan of the longer lived one
+        add("/lifespan", "b", 1, Set.of("tag"));
+        Assertions.assertEquals(2, cache.getVariants("/lifespan").size());
+        Assertions.assertTrue(lifespan("/lifespan") >= TimeUnit.SECONDS.toMillis(59L));
+    }
+
+    @Test
+    public void testConcurrentVariants() throws Exception {
+        final int count = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<?>> adds = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final int variant = i;
+                adds.add(executor.submit(() -> {
+                    start.await();
+                    add("/concurrent", String.valueOf(variant), 10 * (variant + 1), Set.of());
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> add : adds) {
+                add.get(30L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // No variant is lost and the value lives as long as the longest lived variant
+        Assertions.assertEquals(count, cache.getVariants("/concurrent").size());
+        Assertions.assertTrue(lifespan("/concurrent") >= TimeUnit.SECONDS.toMillis((10L * count) - 1L));
+    }
+
+    @Test
+    public void testRemoveByPath() {
+        add("/orders", "a", 60, Set.of());
+        add("/orders?page=1", "a", 60, Set.of());
+        add("/orders?page=2", "a", 60, Set.of());
+        add("/orders2?page=1", "a", 60, Set.of());
+        cache.removeByPath("/orders");
+        Assertions.assertTrue(cache.getVariants("/orders").isEmpty());
+        Assertions.assertTrue(cache.getVariants("/orders?page=1").isEmpty());
+        Assertions.assertTrue(cache.getVariants("/orders?page=2").isEmpty());
+        Assertions.assertEquals(1, cache.getVariants("/orders2?page=1").size());
+        // The path index is removed with the URIs of the path
+        cache.removeByPrefix("/orders2");
+        Assertions.assertTrue(delegate.isEmpty());
+    }
+
+    private static void add(final String uri, final String variant, final int maxAge, final Set<String> tags) {
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(maxAge);
+        final MultivaluedMap<String, String> vary = new MultivaluedHashMap<>();
+        vary.add("X-Variant", variant);
+        cache.add(uri, MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<>(), variant.getBytes(), variant, vary,
+                null, tags);
+    }
+
+    private static long lifespan(final String uri) {
+        return delegate.getAdvancedCache().getCacheEntry(uri).getLifespan();
+    }
+}
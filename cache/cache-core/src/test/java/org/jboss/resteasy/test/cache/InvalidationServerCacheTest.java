@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.CacheTags;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheHitFilter;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the tag based and hierarchical invalidation of the server cache.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class InvalidationServerCacheTest {
+    private static final AtomicInteger ORDERS = new AtomicInteger();
+    private static final AtomicInteger ORDER = new AtomicInteger();
+    private static final AtomicInteger PRODUCTS = new AtomicInteger();
+    private static final AtomicInteger PRICES = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/orders")
+    public static class OrderResource {
+        @GET
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String list() {
+            return "orders" + ORDERS.incrementAndGet();
+        }
+
+        @GET
+        @Path("{id}")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String get(@PathParam("id") final String id) {
+            return "order" + ORDER.incrementAndGet();
+        }
+
+        @POST
+        @Path("{id}/items")
+        public String addItem(@PathParam("id") final String id, final String item) {
+            return item;
+        }
+    }
+
+    @Path("/catalog")
+    public static class CatalogResource {
+        @GET
+        @Path("products/{id}")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        @CacheTags("product:{id}")
+        public String product(@PathParam("id") final String id) {
+            return "product" + PRODUCTS.incrementAndGet();
+        }
+
+        @GET
+        @Path("prices")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public Response prices() {
+            return Response.ok("prices" + PRICES.incrementAndGet())
+                    .header(ServerCacheHitFilter.CACHE_TAGS_HEADER, "product:1, product:2")
+                    .build();
+        }
+
+        @POST
+        @Path("updates/{id}")
+        @CacheTags("product:{id}")
+        public String update(@PathParam("id") final String id) {
+            return id;
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheFeature.HIERARCHICAL_INVALIDATION, "true");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(OrderResource.class);
+        deployment.getRegistry().addPerRequestResource(CatalogResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testHierarchicalInvalidation() {
+        Assertions.assertEquals("orders1", get("/orders?page=1"));
+        Assertions.assertEquals("order1", get("/orders/42"));
+        Assertions.assertEquals("orders1", get("/orders?page=1"));
+        Assertions.assertEquals("order1", get("/orders/42"));
+        Assertions.assertEquals("order2", get("/orders/43"));
+
+        try (Response response = client.target(generateURL("/orders/42/items")).request()
+                .post(Entity.text("item"))) {
+            Assertions.assertEquals(200, response.getStatus());
+        }
+        // The ancestors, with any query, are invalidated but the siblings are not
+        Assertions.assertEquals("orders2", get("/orders?page=1"));
+        Assertions.assertEquals("order3", get("/orders/42"));
+        Assertions.assertEquals("order2", get("/orders/43"));
+    }
+
+    @Test
+    public void testTagInvalidation() {
+        try (Response response = client.target(generateURL("/catalog/prices")).request().get()) {
+            Assertions.assertEquals("prices1", response.readEntity(String.class));
+            Assertions.assertNull(response.getHeaderString(ServerCacheHitFilter.CACHE_TAGS_HEADER));
+        }
+        Assertions.assertEquals("product1", get("/catalog/products/1"));
+        Assertions.assertEquals("product2", get("/catalog/products/2"));
+        Assertions.assertEquals("prices1", get("/catalog/prices"));
+        Assertions.assertEquals("product1", get("/catalog/products/1"));
+
+        try (Response response = client.target(generateURL("/catalog/updates/1")).request().post(Entity.text(""))) {
+            Assertions.assertEquals(200, response.getStatus());
+        }
+        Assertions.assertEquals("prices2", get("/catalog/prices"));
+        Assertions.assertEquals("product3", get("/catalog/products/1"));
+        Assertions.assertEquals("product2", get("/catalog/products/2"));
+    }
+
+    private static String get(final String path) {
+        try (Response response = client.target(generateURL(path)).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            return response.readEntity(String.class);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.DefaultServerCacheMetrics;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the resources created by the {@link ServerCacheFeature}, the snapshot and the metrics MBean, are released when
+ * it is closed or the deployment is stopped.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class LifecycleServerCacheTest {
+    private static final String METRICS_NAME = "lifecycle-test";
+    private NettyJaxrsServer server;
+    private ServerCacheFeature feature;
+    private Path dir;
+
+    @jakarta.ws.rs.Path("/lifecycle")
+    public static class LifecycleResource {
+        @GET
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String get() {
+            return "lifecycle";
+        }
+    }
+
+    @BeforeEach
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("server-cache");
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheFeature.SNAPSHOT_FILE,
+                dir.resolve("cache.snapshot").toString());
+        deployment.getProviderFactory().property(ServerCacheFeature.METRICS, true);
+        deployment.getProviderFactory().property(ServerCacheFeature.METRICS_JMX_NAME, METRICS_NAME);
+        feature = new ServerCacheFeature();
+        deployment.getProviderFactory().register(feature);
+        deployment.getRegistry().addPerRequestResource(LifecycleResource.class);
+        server.start();
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        feature.close();
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+        Files.deleteIfExists(dir.resolve("cache.snapshot"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void testSnapshotWrittenOnClose() throws Exception {
+        final Client client = ClientBuilder.newClient();
+        try (Response response = client.target(generateURL("/lifecycle")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("lifecycle", response.readEntity(String.class));
+        } finally {
+            client.close();
+        }
+        final Path snapshot = dir.resolve("cache.snapshot");
+        Assertions.assertFalse(Files.exists(snapshot));
+        feature.close();
+        Assertions.assertTrue(Files.exists(snapshot));
+        // Closing again does not write the snapshot again
+        Files.delete(snapshot);
+        feature.close();
+        Assertions.assertFalse(Files.exists(snapshot));
+    }
+
+    @Test
+    public void testMetricsUnregisteredOnClose() throws Exception {
+        final ObjectName objectName = new ObjectName(DefaultServerCacheMetrics.OBJECT_NAME_PREFIX
+                + ObjectName.quote(METRICS_NAME));
+        Assertions.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+        feature.close();
+        Assertions.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+
+    @Test
+    public void testReleasedOnUndeploy() throws Exception {
+        final Client client = ClientBuilder.newClient();
+        try (Response response = client.target(generateURL("/lifecycle")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+        } finally {
+            client.close();
+        }
+        final ObjectName objectName = new ObjectName(DefaultServerCacheMetrics.OBJECT_NAME_PREFIX
+                + ObjectName.quote(METRICS_NAME));
+        final Path snapshot = dir.resolve("cache.snapshot");
+        // RESTEasy does not close the feature, the resources are released once the deployment is unreachable
+        server.stop();
+        server = null;
+        final long end = System.currentTimeMillis() + 10000L;
+        while (System.currentTimeMillis() < end
+                && ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(100L);
+        }
+        Assertions.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+        Assertions.assertTrue(Files.exists(snapshot));
+    }
+}
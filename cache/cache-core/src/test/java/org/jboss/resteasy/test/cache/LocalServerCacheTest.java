@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.plugins.cache.server.HeaderSnapshot;
+import org.jboss.resteasy.plugins.cache.server.LocalServerCache;
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class LocalServerCacheTest {
+
+    @Test
+    public void testVariants() {
+        final LocalServerCache cache = new LocalServerCache();
+        add(cache, "/test", MediaType.TEXT_PLAIN_TYPE, "plain", new MultivaluedHashMap<>());
+        add(cache, "/test", MediaType.APPLICATION_JSON_TYPE, "json", new MultivaluedHashMap<>());
+
+        assertCached(cache, "/test", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(), "plain");
+        assertCached(cache, "/test", MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), "json");
+        Assertions.assertEquals(1, cache.count());
+
+        // Replacing a variant should not add a new one
+        add(cache, "/test", MediaType.TEXT_PLAIN_TYPE, "plain2", new MultivaluedHashMap<>());
+        assertCached(cache, "/test", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(), "plain2");
+
+        cache.remove("/test");
+        Assertions.assertNull(cache.get("/test", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>()));
+        Assertions.assertEquals(0L, cache.size());
+    }
+
+    @Test
+    public void testVary() {
+        final LocalServerCache cache = new LocalServerCache();
+        final MultivaluedMap<String, String> vary = new MultivaluedHashMap<>();
+        vary.add("X-Test-Vary", "a");
+        add(cache, "/vary", MediaType.TEXT_PLAIN_TYPE, "a", vary);
+
+        assertCached(cache, "/vary", MediaType.TEXT_PLAIN_TYPE, vary, "a");
+        final MultivaluedMap<String, String> other = new MultivaluedHashMap<>();
+        other.add("X-Test-Vary", "b");
+        Assertions.assertNull(cache.get("/vary", MediaType.TEXT_PLAIN_TYPE, other));
+    }
+
+    @Test
+    public void testVaryNormalized() {
+        final LocalServerCache cache = new LocalServerCache();
+        final MultivaluedMap<String, String> vary = new MultivaluedHashMap<>();
+        vary.add("Accept-Language", "en-US, en;q=0.9");
+        vary.add("X-Tenant", "a");
+        add(cache, "/normalized", MediaType.TEXT_PLAIN_TYPE, "en", vary);
+
+        // The order of the headers, the whitespace and splitting the list across values does not matter
+        final MultivaluedMap<String, String> request = new MultivaluedHashMap<>();
+        request.add("X-Tenant", " a ");
+        request.add("Accept-Language", "en-US");
+        request.add("Accept-Language", "en;q=0.9");
+        assertCached(cache, "/normalized", MediaType.TEXT_PLAIN_TYPE, request, "en");
+        Assertions.assertFalse(ServerCache.mayVary(cache.get("/normalized", MediaType.TEXT_PLAIN_TYPE, request),
+                request));
+
+        // Adding the same, normalized, variant replaces it
+        final MultivaluedMap<String, String> same = new MultivaluedHashMap<>();
+        same.add("X-Tenant", "a");
+        same.add("Accept-Language", "en-US,en;q=0.9");
+        add(cache, "/normalized", MediaType.TEXT_PLAIN_TYPE, "replaced", same);
+        Assertions.assertEquals(1, cache.getVariants("/normalized").size());
+        assertCached(cache, "/normalized", MediaType.TEXT_PLAIN_TYPE, request, "replaced");
+
+        final MultivaluedMap<String, String> subset = new MultivaluedHashMap<>();
+        subset.add("X-Tenant", "a");
+        subset.add("Accept-Language", "en-US");
+        Assertions.assertNull(cache.get("/normalized", MediaType.TEXT_PLAIN_TYPE, subset));
+
+        final MultivaluedMap<String, String> absent = new MultivaluedHashMap<>();
+        absent.add("Accept-Language", "en-US,en;q=0.9");
+        Assertions.assertNull(cache.get("/normalized", MediaType.TEXT_PLAIN_TYPE, absent));
+    }
+
+    @Test
+    public void testOffHeap() {
+        final LocalServerCache cache = new LocalServerCache(LocalServerCache.DEFAULT_MAX_SIZE, -1, true);
+        add(cache, "/offheap", MediaType.TEXT_PLAIN_TYPE, "off-heap", new MultivaluedHashMap<>());
+        final ServerCache.Entry entry = cache.get("/offheap", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>());
+        Assertions.assertNotNull(entry);
+        Assertions.assertTrue(entry.getCachedBuffer().isDirect());
+        Assertions.assertEquals("off-heap", new String(entry.getCached()));
+        // Reading the buffer must not affect later reads
+        entry.getCachedBuffer().get(new byte[3]);
+        Assertions.assertEquals(8, entry.getCachedBuffer().remaining());
+    }
+
+    @Test
+    public void testHeaderSnapshot() {
+        final LocalServerCache cache = new LocalServerCache();
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        headers.add(HttpHeaders.CACHE_CONTROL, cc);
+        headers.add(HttpHeaders.ETAG, new EntityTag("abc"));
+        headers.add("X-Test", "a");
+        headers.add("X-Test", "b");
+        cache.add("/headers", MediaType.TEXT_PLAIN_TYPE, cc, headers, "value".getBytes(), "abc", new MultivaluedHashMap<>());
+        // Changes made after the entry was cached must not be visible
+        headers.add("X-Test", "c");
+
+        final HeaderSnapshot snapshot = cache.get("/headers", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>())
+                .getHeaderSnapshot();
+        Assertions.assertEquals(3, snapshot.size());
+        final MultivaluedMap<String, Object> result = new MultivaluedHashMap<>();
+        snapshot.applyTo(result);
+        Assertions.assertNull(result.get(HttpHeaders.CACHE_CONTROL));
+        Assertions.assertEquals("\"abc\"", result.getFirst(HttpHeaders.ETAG));
+        Assertions.assertEquals(List.of("a", "b"), result.get("X-Test"));
+    }
+
+    @Test
+    public void testExpire() {
+        final LocalServerCache cache = new LocalServerCache();
+        final CacheControl expired = new CacheControl();
+        expired.setMaxAge(0);
+        cache.add("/expired", MediaType.TEXT_PLAIN_TYPE, expired, new MultivaluedHashMap<>(), "a".getBytes(), "a",
+                new MultivaluedHashMap<>());
+        add(cache, "/fresh", MediaType.TEXT_PLAIN_TYPE, "b", new MultivaluedHashMap<>());
+        Assertions.assertEquals(2, cache.count());
+
+        // The expired URI is removed without being looked up
+        Assertions.assertEquals(1, cache.expire());
+        Assertions.assertEquals(1, cache.count());
+        Assertions.assertEquals(0, cache.expire());
+        Assertions.assertFalse(cache.getVariants("/fresh").isEmpty());
+    }
+
+    @Test
+    public void testExpireOnWrite() throws Exception {
+        final LocalServerCache cache = new LocalServerCache();
+        final CacheControl expired = new CacheControl();
+        expired.setMaxAge(0);
+        // Replacing the same URI must not accumulate expiry timers
+        for (int i = 0; i < 1000; i++) {
+            cache.add("/expired", MediaType.TEXT_PLAIN_TYPE, expired, new MultivaluedHashMap<>(), "a".getBytes(), "a",
+                    new MultivaluedHashMap<>());
+        }
+        // Without a background sweep, a later write sweeps the expired URI once the wheel is due
+        TimeUnit.MILLISECONDS.sleep(2100L);
+        add(cache, "/fresh", MediaType.TEXT_PLAIN_TYPE, "b", new MultivaluedHashMap<>());
+        Assertions.assertEquals(1, cache.count());
+        Assertions.assertTrue(cache.getVariants("/expired").isEmpty());
+    }
+
+    @Test
+    public void testMaxStaleSize() {
+        final LocalServerCache cache = new LocalServerCache();
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(0);
+        cc.getCacheExtension().put("stale-while-revalidate", "60");
+        cache.add("/stale1", MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<>(), "a".getBytes(), "a",
+                new MultivaluedHashMap<>());
+        cache.add("/stale2", MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<>(), "b".getBytes(), "b",
+                new MultivaluedHashMap<>());
+        add(cache, "/fresh", MediaType.TEXT_PLAIN_TYPE, "c", new MultivaluedHashMap<>());
+
+        // The stale entries may still be served so they are retained, but accounted
+        Assertions.assertEquals(0, cache.expire());
+        Assertions.assertEquals(3, cache.count());
+        Assertions.assertTrue(cache.staleSize() > 0L);
+
+        cache.setMaxStaleSize(0L);
+        Assertions.assertEquals(1, cache.count());
+        Assertions.assertEquals(0L, cache.staleSize());
+        Assertions.assertFalse(cache.getVariants("/fresh").isEmpty());
+    }
+
+    @Test
+    public void testRemoveByTag() {
+        final LocalServerCache cache = new LocalServerCache();
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        cache.add("/a", MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<>(), "a".getBytes(), "a",
+                new MultivaluedHashMap<>(), null, Set.of("x", "y"));
+        cache.add("/b", MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<>(), "b".getBytes(), "b",
+                new MultivaluedHashMap<>(), null, Set.of("y"));
+        add(cache, "/c", MediaType.TEXT_PLAIN_TYPE, "c", new MultivaluedHashMap<>());
+
+        cache.removeByTag("x");
+        Assertions.assertNull(cache.get("/a", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>()));
+        assertCached(cache, "/b", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(), "b");
+
+        // Replacing the variant drops the tags of the replaced variant
+        add(cache, "/b", MediaType.TEXT_PLAIN_TYPE, "b2", new MultivaluedHashMap<>());
+        cache.removeByTag("y");
+        assertCached(cache, "/b", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(), "b2");
+        assertCached(cache, "/c", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(), "c");
+    }
+
+    @Test
+    public void testRemoveByPrefix() {
+        final LocalServerCache cache = new LocalServerCache();
+        add(cache, "/orders", MediaType.TEXT_PLAIN_TYPE, "orders", new MultivaluedHashMap<>());
+        add(cache, "/orders/1", MediaType.TEXT_PLAIN_TYPE, "1", new MultivaluedHashMap<>());
+        add(cache, "/orders/1/items", MediaType.TEXT_PLAIN_TYPE, "items", new MultivaluedHashMap<>());
+        add(cache, "/orders/10", MediaType.TEXT_PLAIN_TYPE, "10", new MultivaluedHashMap<>());
+
+        cache.removeByPrefix("/orders/1/");
+        Assertions.assertNull(cache.get("/orders/1/items", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>()));
+        assertCached(cache, "/orders/1", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(), "1");
+        assertCached(cache, "/orders/10", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>(), "10");
+
+        cache.removeByPrefix("/orders");
+        Assertions.assertEquals(0, cache.count());
+        Assertions.assertEquals(0L, cache.size());
+    }
+
+    @Test
+    public void testEvictionBySize() {
+        // Each entry weighs at least 1024 bytes, so only a few fit
+        final LocalServerCache cache = new LocalServerCache(4096L, -1);
+        for (int i = 0; i < 10; i++) {
+            add(cache, "/evict/" + i, MediaType.TEXT_PLAIN_TYPE, "x".repeat(1024), new MultivaluedHashMap<>());
+            Assertions.assertTrue(cache.size() <= 4096L, () -> "Cache exceeded its maximum size: " + cache.size());
+        }
+        // The most recently added entry must still be present
+        Assertions.assertNotNull(cache.get("/evict/9", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>()));
+        Assertions.assertNull(cache.get("/evict/0", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>()));
+    }
+
+    @Test
+    public void testEvictionByCount() {
+        final LocalServerCache cache = new LocalServerCache(LocalServerCache.DEFAULT_MAX_SIZE, 5);
+        for (int i = 0; i < 20; i++) {
+            add(cache, "/count/" + i, MediaType.TEXT_PLAIN_TYPE, "value" + i, new MultivaluedHashMap<>());
+            Assertions.assertTrue(cache.count() <= 5, () -> "Cache exceeded its maximum count: " + cache.count());
+        }
+    }
+
+    @Test
+    public void testSnapshot(@TempDir final Path dir) throws Exception {
+        final LocalServerCache cache = new LocalServerCache();
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        headers.add("X-Test", "a");
+        final MultivaluedMap<String, String> vary = new MultivaluedHashMap<>();
+        vary.add("Accept-Language", "en");
+        cache.add("/hot", MediaType.TEXT_PLAIN_TYPE, cc, headers, "hot".getBytes(), "\"hot\"", vary, null, Set.of("t"));
+        add(cache, "/cold", MediaType.TEXT_PLAIN_TYPE, "cold", new MultivaluedHashMap<>());
+        for (int i = 0; i < 3; i++) {
+            assertCached(cache, "/hot", MediaType.TEXT_PLAIN_TYPE, vary, "hot");
+        }
+
+        // Only the most frequently hit URI is written
+        final Path file = dir.resolve("cache.snapshot");
+        Assertions.assertEquals(1, cache.writeSnapshot(file, 1));
+
+        final LocalServerCache restored = new LocalServerCache(LocalServerCache.DEFAULT_MAX_SIZE, -1, true);
+        Assertions.assertEquals(1, restored.restoreSnapshot(file));
+        assertCached(restored, "/hot", MediaType.TEXT_PLAIN_TYPE, vary, "hot");
+        Assertions.assertNull(restored.get("/cold", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>()));
+        final ServerCache.Entry entry = restored.get("/hot", MediaType.TEXT_PLAIN_TYPE, vary);
+        Assertions.assertEquals("\"hot\"", entry.getEtag());
+        Assertions.assertEquals("a", entry.getHeaders().getFirst("X-Test"));
+        Assertions.assertTrue(entry.getExpirationInSeconds() > 0 && entry.getExpirationInSeconds() <= 60);
+        Assertions.assertNull(restored.get("/hot", MediaType.TEXT_PLAIN_TYPE, new MultivaluedHashMap<>()));
+        // The tags are restored with the entry
+        restored.removeByTag("t");
+        Assertions.assertEquals(0, restored.count());
+
+        // A value less than 1 writes every URI
+        Assertions.assertEquals(2, cache.writeSnapshot(file, 0));
+    }
+
+    @Test
+    public void testInvalidSnapshot(@TempDir final Path dir) throws Exception {
+        final Path file = dir.resolve("invalid.snapshot");
+        Files.write(file, "not a snapshot".getBytes());
+        Assertions.assertThrows(IOException.class, () -> new LocalServerCache().restoreSnapshot(file));
+    }
+
+    private static void add(final ServerCache cache, final String uri, final MediaType mediaType, final String value,
+            final MultivaluedMap<String, String> vary) {
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        cache.add(uri, mediaType, cc, new MultivaluedHashMap<>(), value.getBytes(), value, vary);
+    }
+
+    private static void assertCached(final ServerCache cache, final String uri, final MediaType mediaType,
+            final MultivaluedMap<String, String> headers, final String expected) {
+        final ServerCache.Entry entry = cache.get(uri, mediaType, headers);
+        Assertions.assertNotNull(entry, () -> String.format("No entry found for %s %s", uri, mediaType));
+        Assertions.assertEquals(expected, new String(entry.getCached()));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the byte ranges served from the cache.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class RangeServerCacheTest {
+    private static final String BODY = "0123456789abcdefghijklmnopqrstuvwxyz";
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/range")
+    public static class RangeResource {
+        @GET
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String get() {
+            COUNT.incrementAndGet();
+            return BODY;
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(RangeResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @BeforeEach
+    public void populate() {
+        try (Response response = client.target(generateURL("/range")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals(BODY, response.readEntity(String.class));
+        }
+        COUNT.set(0);
+    }
+
+    @Test
+    public void testSingleRange() {
+        try (Response response = range("bytes=10-15", null)) {
+            Assertions.assertEquals(206, response.getStatus());
+            Assertions.assertEquals("bytes 10-15/36", response.getHeaderString("Content-Range"));
+            Assertions.assertEquals("abcdef", response.readEntity(String.class));
+        }
+        try (Response response = range("bytes=-4", null)) {
+            Assertions.assertEquals(206, response.getStatus());
+            Assertions.assertEquals("bytes 32-35/36", response.getHeaderString("Content-Range"));
+            Assertions.assertEquals("wxyz", response.readEntity(String.class));
+        }
+        try (Response response = range("bytes=30-", null)) {
+            Assertions.assertEquals(206, response.getStatus());
+            Assertions.assertEquals("uvwxyz", response.readEntity(String.class));
+        }
+        Assertions.assertEquals(0, COUNT.get());
+    }
+
+    @Test
+    public void testMultipleRanges() {
+        try (Response response = range("bytes=0-1, 34-", null)) {
+            Assertions.assertEquals(206, response.getStatus());
+            final MediaType contentType = response.getMediaType();
+            Assertions.assertEquals("multipart", contentType.getType());
+            Assertions.assertEquals("byteranges", contentType.getSubtype());
+            final String boundary = contentType.getParameters().get("boundary");
+            Assertions.assertNotNull(boundary, contentType.toString());
+            final String body = response.readEntity(String.class);
+            Assertions.assertTrue(body.contains("--" + boundary + "\r\nContent-Type: text/plain;charset=UTF-8\r\n"
+                    + "Content-Range: bytes 0-1/36\r\n\r\n01\r\n"), body);
+            Assertions.assertTrue(body.contains("Content-Range: bytes 34-35/36\r\n\r\nyz\r\n--" + boundary + "--"),
+                    body);
+        }
+        Assertions.assertEquals(0, COUNT.get());
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        try (Response response = range("bytes=100-200", null)) {
+            Assertions.assertEquals(416, response.getStatus());
+            Assertions.assertEquals("bytes */36", response.getHeaderString("Content-Range"));
+        }
+        // A header which is not valid is ignored
+        try (Response response = range("bytes=5-1", null)) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals(BODY, response.readEntity(String.class));
+        }
+        Assertions.assertEquals(0, COUNT.get());
+    }
+
+    @Test
+    public void testIfRange() {
+        final String etag;
+        try (Response response = client.target(generateURL("/range")).request().get()) {
+            Assertions.assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+            etag = response.getHeaderString(HttpHeaders.ETAG);
+        }
+        try (Response response = range("bytes=0-3", etag)) {
+            Assertions.assertEquals(206, response.getStatus());
+            Assertions.assertEquals("0123", response.readEntity(String.class));
+        }
+        // The representation changed, the full entity is sent
+        try (Response response = range("bytes=0-3", "\"other\"")) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals(BODY, response.readEntity(String.class));
+        }
+        // A weak entity tag never matches
+        try (Response response = range("bytes=0-3", "W/" + etag)) {
+            Assertions.assertEquals(200, response.getStatus());
+        }
+        // A date matches if the representation has not been modified since
+        final ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        try (Response response = range("bytes=0-3", now.plusMinutes(1).format(DateTimeFormatter.RFC_1123_DATE_TIME))) {
+            Assertions.assertEquals(206, response.getStatus());
+        }
+        try (Response response = range("bytes=0-3", now.minusDays(1).format(DateTimeFormatter.RFC_1123_DATE_TIME))) {
+            Assertions.assertEquals(200, response.getStatus());
+        }
+        Assertions.assertEquals(0, COUNT.get());
+    }
+
+    private static Response range(final String range, final String ifRange) {
+        return client.target(generateURL("/range")).request()
+                .header("Range", range)
+                .header("If-Range", ifRange)
+                .get();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.jboss.resteasy.plugins.cache.server.DefaultServerCacheMetrics;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheMetrics;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheStatistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class ServerCacheMetricsTest {
+
+    @Test
+    public void testSnapshot() {
+        final DefaultServerCacheMetrics metrics = new DefaultServerCacheMetrics();
+        metrics.recordHit("/orders/{id}", false);
+        metrics.recordHit("/orders/{id}", true);
+        metrics.recordMiss("/orders/{id}", ServerCacheMetrics.Miss.EXPIRED);
+        metrics.recordMiss("/orders/{id}", ServerCacheMetrics.Miss.VARY_MISMATCH);
+        metrics.recordMiss("/items", ServerCacheMetrics.Miss.MEDIA_TYPE_MISMATCH);
+        metrics.recordMiss("/items", ServerCacheMetrics.Miss.NOT_CACHED);
+        metrics.recordAdd("/items", 100L, 3_000L);
+        metrics.recordGet("/items", 500L);
+        metrics.recordEviction(2L, 64L);
+
+        final Map<String, ServerCacheStatistics> snapshot = metrics.snapshot();
+        Assertions.assertEquals(2, snapshot.size());
+        final ServerCacheStatistics orders = snapshot.get("/orders/{id}");
+        Assertions.assertEquals(2L, orders.getHits());
+        Assertions.assertEquals(1L, orders.getStaleHits());
+        Assertions.assertEquals(2L, orders.getMisses());
+        Assertions.assertEquals(1L, orders.getExpired());
+        Assertions.assertEquals(1L, orders.getVaryMismatches());
+        Assertions.assertEquals(0.5d, orders.getHitRatio());
+
+        final ServerCacheStatistics items = snapshot.get("/items");
+        Assertions.assertEquals(1L, items.getMediaTypeMismatches());
+        Assertions.assertEquals(1L, items.getAdds());
+        Assertions.assertEquals(100L, items.getBytesStored());
+        Assertions.assertEquals(4L, items.getP99AddMicros());
+        Assertions.assertEquals(1L, items.getP99GetMicros());
+
+        final ServerCacheStatistics total = metrics.getTotal();
+        Assertions.assertEquals(2L, total.getHits());
+        Assertions.assertEquals(4L, total.getMisses());
+        Assertions.assertEquals(2L, total.getEvictions());
+        Assertions.assertEquals(64L, total.getEvictedBytes());
+
+        metrics.reset();
+        Assertions.assertEquals(0L, metrics.getTotal().getHits());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        final DefaultServerCacheMetrics metrics = new DefaultServerCacheMetrics();
+        final ObjectName objectName = metrics.registerMBean("test");
+        try {
+            metrics.recordHit("/jmx", false);
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final CompositeData total = (CompositeData) server.getAttribute(objectName, "Total");
+            Assertions.assertEquals(1L, total.get("hits"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+    }
+
+    @Test
+    public void testJmxReplaced() throws Exception {
+        final DefaultServerCacheMetrics previous = new DefaultServerCacheMetrics();
+        final DefaultServerCacheMetrics metrics = new DefaultServerCacheMetrics();
+        final ObjectName objectName = previous.registerMBean("replaced");
+        try {
+            Assertions.assertEquals(objectName, metrics.registerMBean("replaced"));
+            // The previous deployment is released after the application was redeployed
+            previous.unregisterMBean();
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assertions.assertTrue(server.isRegistered(objectName));
+            metrics.recordHit("/jmx", false);
+            final CompositeData total = (CompositeData) server.getAttribute(objectName, "Total");
+            Assertions.assertEquals(1L, total.get("hits"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+        Assertions.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+}
@@ -30,6 +30,7 @@ import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.client.Invocation.Builder;
 import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
 import org.jboss.resteasy.annotations.cache.Cache;
@@ -61,6 +62,7 @@ public class ServerCacheTest {
     private static int count = 0;
     private static int plainCount = 0;
     private static int htmlCount = 0;
+    private static int negotiatedCount = 0;
     private static Client client;
 
     @BeforeAll
@@ -131,6 +133,15 @@ public class ServerCacheTest {
             return "stuff";
         }
 
+        @GET
+        @Produces({ "text/xml", "text/csv" })
+        @Path("negotiated")
+        @Cache(maxAge = 2)
+        public String getNegotiated() {
+            negotiatedCount++;
+            return "negotiated" + negotiatedCount;
+        }
+
         @GET
         @Produces("text/plain")
         @Path("vary")
@@ -393,6 +404,29 @@ public class ServerCacheTest {
         }
     }
 
+    @Test
+    public void testNegotiatedAccepts() {
+        negotiatedCount = 0;
+        try (Response response = client.target(generateURL("/cache/negotiated")).request().accept("text/csv").get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("negotiated1", response.readEntity(String.class));
+        }
+        // The cached csv variant is acceptable, even though xml is preferred
+        try (Response response = client.target(generateURL("/cache/negotiated")).request()
+                .header(HttpHeaders.ACCEPT, "text/xml, text/csv;q=0.9, text/plain;q=0.1").get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertTrue(response.getMediaType().isCompatible(MediaType.valueOf("text/csv")));
+            Assertions.assertEquals("negotiated1", response.readEntity(String.class));
+        }
+        // A variant the client does not accept must not be served
+        try (Response response = client.target(generateURL("/cache/negotiated")).request()
+                .header(HttpHeaders.ACCEPT, "text/xml, text/csv;q=0").get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("negotiated2", response.readEntity(String.class));
+        }
+        Assertions.assertEquals(2, negotiatedCount);
+    }
+
     @Test
     public void testVary() {
         int cachedCount;
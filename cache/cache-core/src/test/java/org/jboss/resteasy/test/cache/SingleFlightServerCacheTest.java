@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.cache.server.ServerCached;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests that concurrent misses for the same URI only invoke the resource once when single-flight is enabled.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class SingleFlightServerCacheTest {
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final AtomicInteger TENANT_COUNT = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/slow")
+    public static class SlowResource {
+        @GET
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public String get() throws InterruptedException {
+            final int count = COUNT.incrementAndGet();
+            TimeUnit.MILLISECONDS.sleep(500L);
+            return "slow" + count;
+        }
+    }
+
+    @Path("/tenant")
+    public static class TenantResource {
+        @GET
+        @Produces("text/plain")
+        @ServerCached(maxAge = 30, vary = "X-Tenant")
+        public String get(@HeaderParam("X-Tenant") final String tenant) throws InterruptedException {
+            TENANT_COUNT.incrementAndGet();
+            TimeUnit.MILLISECONDS.sleep(500L);
+            return tenant;
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheFeature.SINGLE_FLIGHT_TIMEOUT, "10000");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(SlowResource.class);
+        deployment.getRegistry().addPerRequestResource(TenantResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testConcurrentMisses() throws Exception {
+        final int requests = 5;
+        final ExecutorService executor = Executors.newFixedThreadPool(requests);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    try (Response response = client.target(generateURL("/slow")).request().get()) {
+                        Assertions.assertEquals(200, response.getStatus());
+                        return response.readEntity(String.class);
+                    }
+                }, executor));
+            }
+            final long started = System.nanoTime();
+            start.countDown();
+            for (CompletableFuture<String> result : results) {
+                Assertions.assertEquals("slow1", result.get(30, TimeUnit.SECONDS));
+            }
+            Assertions.assertEquals(1, COUNT.get());
+            // The waiting requests are released when the leader populates the cache, not when the flight times out
+            Assertions.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) < 5L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVaryingMisses() throws Exception {
+        final int requests = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(requests);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                // Two requests for each tenant, the tenants must not wait for each other
+                final String tenant = "tenant" + (i % 2);
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    try (Response response = client.target(generateURL("/tenant")).request()
+                            .header("X-Tenant", tenant).get()) {
+                        Assertions.assertEquals(200, response.getStatus());
+                        return response.readEntity(String.class);
+                    }
+                }, executor));
+            }
+            start.countDown();
+            for (int i = 0; i < requests; i++) {
+                Assertions.assertEquals("tenant" + (i % 2), results.get(i).get(30, TimeUnit.SECONDS));
+            }
+            Assertions.assertEquals(2, TENANT_COUNT.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the {@code stale-while-revalidate} and {@code stale-if-error} extensions.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class StaleServerCacheTest {
+    private static final AtomicInteger REVALIDATE_COUNT = new AtomicInteger();
+    private static final AtomicInteger ERROR_COUNT = new AtomicInteger();
+    private static final AtomicInteger HOST_COUNT = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/")
+    public static class StaleResource {
+        @GET
+        @Path("revalidate")
+        @Produces("text/plain")
+        public Response revalidate() {
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(1);
+            cc.getCacheExtension().put("stale-while-revalidate", "60");
+            return Response.ok("revalidate" + REVALIDATE_COUNT.incrementAndGet()).cacheControl(cc).build();
+        }
+
+        @GET
+        @Path("host")
+        @Produces("text/plain")
+        public Response host() {
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(1);
+            cc.getCacheExtension().put("stale-while-revalidate", "60");
+            return Response.ok("host" + HOST_COUNT.incrementAndGet()).cacheControl(cc).build();
+        }
+
+        @GET
+        @Path("authorized")
+        @Produces("text/plain")
+        public Response authorized(@HeaderParam(HttpHeaders.AUTHORIZATION) final String authorization) {
+            if (!"Bearer valid".equals(authorization)) {
+                return Response.status(Response.Status.FORBIDDEN).build();
+            }
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(1);
+            cc.getCacheExtension().put("stale-while-revalidate", "60");
+            return Response.ok("authorized").cacheControl(cc).build();
+        }
+
+        @GET
+        @Path("error")
+        @Produces("text/plain")
+        public Response error() {
+            if (ERROR_COUNT.incrementAndGet() > 1) {
+                throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+            }
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(1);
+            cc.getCacheExtension().put("stale-if-error", "60");
+            return Response.ok("error1").cacheControl(cc).build();
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheFeature.REVALIDATION_BASE_URI,
+                "http://localhost:" + TestPortProvider.getPort());
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(StaleResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        Assertions.assertEquals("revalidate1", get("/revalidate"));
+        TimeUnit.MILLISECONDS.sleep(1500L);
+        // The stale entry is served while it is refreshed in the background
+        Assertions.assertEquals("revalidate1", get("/revalidate"));
+        final long end = System.currentTimeMillis() + 10000L;
+        String value = null;
+        while (System.currentTimeMillis() < end) {
+            value = get("/revalidate");
+            if (!"revalidate1".equals(value)) {
+                break;
+            }
+            TimeUnit.MILLISECONDS.sleep(100L);
+        }
+        Assertions.assertEquals("revalidate2", value);
+    }
+
+    @Test
+    public void testRevalidateIgnoresHost() throws Exception {
+        // The refresh is sent to the configured base URI, not to the authority sent by the client
+        final String host = "attacker.invalid:" + TestPortProvider.getPort();
+        Assertions.assertEquals("host1", get("/host", HttpHeaders.HOST, host));
+        TimeUnit.MILLISECONDS.sleep(1500L);
+        Assertions.assertEquals("host1", get("/host", HttpHeaders.HOST, host));
+        final long end = System.currentTimeMillis() + 10000L;
+        String value = null;
+        while (System.currentTimeMillis() < end) {
+            value = get("/host", HttpHeaders.HOST, host);
+            if (!"host1".equals(value)) {
+                break;
+            }
+            TimeUnit.MILLISECONDS.sleep(100L);
+        }
+        Assertions.assertEquals("host2", value);
+    }
+
+    @Test
+    public void testRevalidateRejected() throws Exception {
+        Assertions.assertEquals("authorized", get("/authorized", HttpHeaders.AUTHORIZATION, "Bearer valid"));
+        TimeUnit.MILLISECONDS.sleep(1500L);
+        // The credentials are replayed, the rejected refresh removes the stale entry
+        Assertions.assertEquals("authorized", get("/authorized", HttpHeaders.AUTHORIZATION, "Bearer expired"));
+        final long end = System.currentTimeMillis() + 10000L;
+        int status = 200;
+        while (System.currentTimeMillis() < end) {
+            try (Response response = client.target(generateURL("/authorized")).request()
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer expired")
+                    .get()) {
+                status = response.getStatus();
+            }
+            if (status != 200) {
+                break;
+            }
+            TimeUnit.MILLISECONDS.sleep(100L);
+        }
+        Assertions.assertEquals(403, status);
+    }
+
+    @Test
+    public void testStaleIfError() throws Exception {
+        Assertions.assertEquals("error1", get("/error"));
+        TimeUnit.MILLISECONDS.sleep(1500L);
+        // The resource fails, the stale entry is served in its place
+        Assertions.assertEquals("error1", get("/error"));
+        Assertions.assertEquals(2, ERROR_COUNT.get());
+    }
+
+    private static String get(final String path) {
+        try (Response response = client.target(generateURL(path)).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            return response.readEntity(String.class);
+        }
+    }
+
+    private static String get(final String path, final String header, final String value) {
+        try (Response response = client.target(generateURL(path)).request().header(header, value).get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            return response.readEntity(String.class);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests the responses written through to the client while they are cached, and the maximum size of a cached entity.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class StreamingServerCacheTest {
+    private static final int MAX_ENTITY_SIZE = 1024;
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'",
+            Locale.US);
+    private static final AtomicInteger STREAMED = new AtomicInteger();
+    private static final AtomicInteger LARGE = new AtomicInteger();
+    private static final AtomicInteger NONE_MATCH = new AtomicInteger();
+    private static final AtomicInteger MODIFIED_SINCE = new AtomicInteger();
+    private static final AtomicInteger MATCH = new AtomicInteger();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    @Path("/stream")
+    public static class StreamResource {
+        @GET
+        @Produces("text/plain")
+        @Path("streamed")
+        @Cache(maxAge = 30)
+        public String streamed() {
+            return "streamed" + STREAMED.incrementAndGet();
+        }
+
+        @GET
+        @Produces("text/plain")
+        @Path("large")
+        @Cache(maxAge = 30)
+        public String large() {
+            LARGE.incrementAndGet();
+            return createEntity(MAX_ENTITY_SIZE * 4);
+        }
+
+        @GET
+        @Produces("text/plain")
+        @Path("none-match")
+        @Cache(maxAge = 30)
+        public String noneMatch() {
+            return "none-match" + NONE_MATCH.incrementAndGet();
+        }
+
+        @GET
+        @Produces("text/plain")
+        @Path("modified-since")
+        @Cache(maxAge = 30)
+        public String modifiedSince() {
+            return "modified-since" + MODIFIED_SINCE.incrementAndGet();
+        }
+
+        @GET
+        @Produces("text/plain")
+        @Path("match")
+        @Cache(maxAge = 30)
+        public String match() {
+            return "match" + MATCH.incrementAndGet();
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCacheFeature.CACHE_TYPE, "local");
+        deployment.getProviderFactory().property(ServerCacheFeature.STREAMING, true);
+        deployment.getProviderFactory().property(ServerCacheFeature.MAX_ENTITY_SIZE, (long) MAX_ENTITY_SIZE);
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(StreamResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testStreamed() {
+        try (Response response = client.target(generateURL("/stream/streamed")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("streamed1", response.readEntity(String.class));
+        }
+        final String etag;
+        try (Response response = client.target(generateURL("/stream/streamed")).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("streamed1", response.readEntity(String.class));
+            // The ETag generated while the first response was streamed is sent with the hits
+            etag = response.getHeaderString(HttpHeaders.ETAG);
+            Assertions.assertNotNull(etag);
+        }
+        try (Response response = client.target(generateURL("/stream/streamed")).request()
+                .header(HttpHeaders.IF_NONE_MATCH, etag).get()) {
+            Assertions.assertEquals(304, response.getStatus());
+        }
+        Assertions.assertEquals(1, STREAMED.get());
+    }
+
+    @Test
+    public void testMaxEntitySize() {
+        for (int i = 1; i <= 2; i++) {
+            try (Response response = client.target(generateURL("/stream/large")).request().get()) {
+                Assertions.assertEquals(200, response.getStatus());
+                Assertions.assertEquals(createEntity(MAX_ENTITY_SIZE * 4), response.readEntity(String.class));
+            }
+            // The entity is too large to be cached
+            Assertions.assertEquals(i, LARGE.get());
+        }
+    }
+
+    @Test
+    public void testBufferedIfNoneMatch() {
+        final String etag;
+        try (Response response = client.target(generateURL("/stream/none-match")).request()
+                .header(HttpHeaders.IF_NONE_MATCH, "\"other\"").get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("none-match1", response.readEntity(String.class));
+            // The response was buffered so the generated ETag is sent
+            etag = response.getHeaderString(HttpHeaders.ETAG);
+            Assertions.assertNotNull(etag);
+        }
+        try (Response response = client.target(generateURL("/stream/none-match")).request()
+                .header(HttpHeaders.IF_NONE_MATCH, etag).get()) {
+            Assertions.assertEquals(304, response.getStatus());
+        }
+        Assertions.assertEquals(1, NONE_MATCH.get());
+    }
+
+    @Test
+    public void testBufferedIfModifiedSince() {
+        final String tomorrow = HTTP_DATE.format(ZonedDateTime.now(ZoneOffset.UTC).plusDays(1L));
+        try (Response response = client.target(generateURL("/stream/modified-since")).request()
+                .header(HttpHeaders.IF_MODIFIED_SINCE, tomorrow).get()) {
+            // Streamed, the precondition could not be evaluated and the entity would be sent
+            Assertions.assertEquals(304, response.getStatus());
+        }
+        Assertions.assertEquals(1, MODIFIED_SINCE.get());
+    }
+
+    @Test
+    public void testBufferedIfMatch() {
+        try (Response response = client.target(generateURL("/stream/match")).request()
+                .header(HttpHeaders.IF_MATCH, "\"other\"").get()) {
+            Assertions.assertEquals(412, response.getStatus());
+        }
+        Assertions.assertEquals(1, MATCH.get());
+    }
+
+    private static String createEntity(final int size) {
+        final StringBuilder builder = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            builder.append((char) ('a' + (i % 26)));
+        }
+        return builder.toString();
+    }
+}
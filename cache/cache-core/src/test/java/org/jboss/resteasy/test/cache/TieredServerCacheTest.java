@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+
+import org.jboss.resteasy.plugins.cache.server.LocalServerCache;
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.jboss.resteasy.plugins.cache.server.TieredServerCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+public class TieredServerCacheTest {
+
+    @Test
+    public void testNearHit() {
+        final CountingCache shared = new CountingCache();
+        final TieredServerCache cache = new TieredServerCache(shared, 10, 60, TimeUnit.SECONDS);
+        add(cache, "/a", "a", Set.of());
+
+        final ServerCache.Entry entry = get(cache, "/a");
+        Assertions.assertEquals("a", new String(entry.getCached()));
+        Assertions.assertEquals(1, shared.reads.get());
+        // The same entry is returned by the near cache without reading the shared cache
+        Assertions.assertSame(entry, get(cache, "/a"));
+        Assertions.assertEquals(1, shared.reads.get());
+        Assertions.assertEquals(1, cache.getNearSize());
+
+        // Adding a variant invalidates the near cache
+        add(cache, "/a", "b", Set.of());
+        Assertions.assertEquals(0, cache.getNearSize());
+        Assertions.assertEquals("b", new String(get(cache, "/a").getCached()));
+        Assertions.assertEquals(2, shared.reads.get());
+    }
+
+    @Test
+    public void testSharedInvalidation() {
+        final CountingCache shared = new CountingCache();
+        final TieredServerCache cache = new TieredServerCache(shared, 10, 60, TimeUnit.SECONDS);
+        add(cache, "/a", "a", Set.of("tag"));
+        add(cache, "/b", "b", Set.of());
+        Assertions.assertNotNull(get(cache, "/a"));
+        Assertions.assertNotNull(get(cache, "/b"));
+        Assertions.assertEquals(2, cache.getNearSize());
+
+        // Removals made directly on the shared cache, as another node would, must be seen by the near cache
+        shared.remove("/b");
+        Assertions.assertTrue(cache.getVariants("/b").isEmpty());
+        cache.removeByTag("tag");
+        Assertions.assertTrue(cache.getVariants("/a").isEmpty());
+        Assertions.assertEquals(0, cache.getNearSize());
+    }
+
+    @Test
+    public void testNearMaxAge() {
+        final CountingCache shared = new CountingCache();
+        final TieredServerCache cache = new TieredServerCache(shared, 10, 0, TimeUnit.SECONDS);
+        add(cache, "/a", "a", Set.of());
+        Assertions.assertNotNull(get(cache, "/a"));
+        Assertions.assertNotNull(get(cache, "/a"));
+        Assertions.assertEquals(2, shared.reads.get());
+    }
+
+    @Test
+    public void testNearMaxEntries() {
+        final TieredServerCache cache = new TieredServerCache(new CountingCache(), 10, 60, TimeUnit.SECONDS);
+        for (int i = 0; i < 20; i++) {
+            add(cache, "/" + i, Integer.toString(i), Set.of());
+            Assertions.assertNotNull(get(cache, "/" + i));
+        }
+        Assertions.assertTrue(cache.getNearSize() <= 10, () -> "Near cache size " + cache.getNearSize());
+        // Every entry is still in the shared cache
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertNotNull(get(cache, "/" + i));
+        }
+    }
+
+    private static void add(final ServerCache cache, final String uri, final String value, final Set<String> tags) {
+        final CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        cache.add(uri, MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<>(), value.getBytes(), value,
+                new MultivaluedHashMap<>(), null, tags);
+    }
+
+    private static ServerCache.Entry get(final ServerCache cache, final String uri) {
+        final List<? extends ServerCache.Entry> variants = cache.getVariants(uri);
+        Assertions.assertEquals(1, variants.size(), () -> "Expected a single variant for " + uri);
+        return variants.get(0);
+    }
+
+    private static class CountingCache extends LocalServerCache {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public List<? extends Entry> getVariants(final String uri) {
+            reads.incrementAndGet();
+            return super.getVariants(uri);
+        }
+    }
+}
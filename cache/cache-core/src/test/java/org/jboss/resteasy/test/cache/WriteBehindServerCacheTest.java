@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021 Red Hat, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.jboss.resteasy.test.cache;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.cache.Cache;
+import org.jboss.resteasy.plugins.cache.server.DefaultServerCacheMetrics;
+import org.jboss.resteasy.plugins.cache.server.LocalServerCache;
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheMetrics;
+import org.jboss.resteasy.plugins.server.netty.NettyJaxrsServer;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests adding entries with the write-behind queue.
+ *
+ * @author <a href="mailto:jperkins@redhat.com">James R. Perkins</a>
+ */
+@EnabledOnJre({
+        JRE.JAVA_11,
+        JRE.JAVA_17,
+        JRE.JAVA_21,
+})
+public class WriteBehindServerCacheTest {
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final CountDownLatch RELEASE = new CountDownLatch(1);
+    private static final DefaultServerCacheMetrics METRICS = new DefaultServerCacheMetrics();
+    private static NettyJaxrsServer server;
+    private static Client client;
+
+    /**
+     * A cache with a store which does not complete a write until released.
+     */
+    public static class SlowCache extends LocalServerCache {
+        @Override
+        public CompletionStage<Entry> addAsync(final String uri, final MediaType mediaType, final CacheControl cc,
+                final MultivaluedMap<String, Object> headers, final byte[] entity, final String etag,
+                final MultivaluedMap<String, String> varyHeaders, final byte[] gzipped, final Set<String> tags) {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    RELEASE.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }).thenCompose(v -> super.addAsync(uri, mediaType, cc, headers, entity, etag, varyHeaders, gzipped, tags));
+        }
+    }
+
+    @Path("/write-behind")
+    public static class AsyncResource {
+        @GET
+        @Path("{name}")
+        @Produces("text/plain")
+        @Cache(maxAge = 30)
+        public CompletionStage<String> get(@PathParam("name") final String name) {
+            return CompletableFuture.supplyAsync(() -> name + COUNT.incrementAndGet());
+        }
+    }
+
+    @BeforeAll
+    public static void beforeClass() {
+        server = new NettyJaxrsServer();
+        server.setPort(TestPortProvider.getPort());
+        server.setRootResourcePath("/");
+        final ResteasyDeployment deployment = server.getDeployment();
+        deployment.start();
+        deployment.getProviderFactory().property(ServerCache.class.getName(), new SlowCache());
+        deployment.getProviderFactory().property(ServerCacheMetrics.class.getName(), METRICS);
+        deployment.getProviderFactory().property(ServerCacheFeature.WRITE_BEHIND_CAPACITY, "1");
+        deployment.getProviderFactory().register(ServerCacheFeature.class);
+        deployment.getRegistry().addPerRequestResource(AsyncResource.class);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void afterClass() {
+        client.close();
+        server.stop();
+        server = null;
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        // The response must not wait for the slow store
+        Assertions.assertEquals("a1", get("/write-behind/a"));
+        // The queue is full, the entry is dropped
+        Assertions.assertEquals("b2", get("/write-behind/b"));
+        Assertions.assertEquals(1L, METRICS.getTotal().getDroppedAdds());
+
+        RELEASE.countDown();
+        final long end = System.currentTimeMillis() + 5000L;
+        while (METRICS.getTotal().getAdds() < 1L && System.currentTimeMillis() < end) {
+            TimeUnit.MILLISECONDS.sleep(10L);
+        }
+        Assertions.assertEquals(1L, METRICS.getTotal().getAdds());
+        Assertions.assertEquals("a1", get("/write-behind/a"));
+        Assertions.assertEquals("b3", get("/write-behind/b"));
+    }
+
+    private static String get(final String path) {
+        try (Response response = client.target(generateURL(path)).request().get()) {
+            Assertions.assertEquals(200, response.getStatus());
+            return response.readEntity(String.class);
+        }
+    }
+}